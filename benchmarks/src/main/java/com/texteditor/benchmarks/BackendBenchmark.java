@@ -0,0 +1,88 @@
+package com.texteditor.benchmarks;
+
+import com.texteditor.editor.PieceTable;
+import com.texteditor.editor.Rope;
+import com.texteditor.editor.TextBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the TextBuffer backends on the same documents and edit patterns.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class BackendBenchmark {
+
+    @Param({"rope", "piecetable"})
+    public String backend;
+
+    @Param({"1KB", "1MB", "64MB"})
+    public String documentSize;
+
+    @Param({"SEQUENTIAL", "RANDOM", "APPEND"})
+    public EditLocality locality;
+
+    private TextBuffer original;
+    private TextBuffer buffer;
+    private EditOffsets offsets;
+
+    @Setup(Level.Trial)
+    public void buildDocument() {
+        String text = Documents.text(Documents.parseSize(documentSize), 42);
+        original = createBuffer(text).snapshot();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetDocument() {
+        buffer = createBuffer("");
+        buffer.restore(original);
+        offsets = new EditOffsets(locality, buffer.length(), 7);
+    }
+
+    private TextBuffer createBuffer(String text) {
+        return "piecetable".equals(backend) ? new PieceTable(text) : new Rope(text);
+    }
+
+    @Benchmark
+    public void insert() {
+        buffer.insert(offsets.next(buffer.length()), "x");
+    }
+
+    @Benchmark
+    public void delete() {
+        // Start over before deletes drain a small document
+        if (buffer.length() < original.length() / 2) {
+            buffer.restore(original);
+        }
+
+        int at = offsets.next(buffer.length() - 1);
+        buffer.delete(at, at + 1);
+    }
+
+    @Benchmark
+    public char charAt() {
+        return buffer.charAt(offsets.next(buffer.length() - 1));
+    }
+
+    @Benchmark
+    public int lineStartOffset() {
+        return buffer.lineStartOffset(offsets.next(buffer.lineCount() - 1));
+    }
+}
@@ -0,0 +1,103 @@
+package com.texteditor.benchmarks;
+
+import com.texteditor.editor.LeafPolicy;
+import com.texteditor.editor.Rope;
+import com.texteditor.editor.commands.Command;
+import com.texteditor.editor.commands.CommandManager;
+import com.texteditor.editor.commands.DeleteCommand;
+import com.texteditor.editor.commands.InsertCommand;
+import com.texteditor.editor.commands.MultiEditCommand;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures executing, undoing and redoing commands through the CommandManager.
+ * Each iteration starts from a fresh history of {@code historyDepth} edits on the generated document. Merging is
+ * turned off, so every edit is its own step and executing measures adding a step rather than merging into one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class CommandBenchmark {
+    // Number of cursors of the multi-cursor edit, spread evenly over the document
+    private static final int CURSORS = 10_000;
+
+    @Param({"1KB", "1MB", "64MB"})
+    public String documentSize;
+
+    @Param({"SEQUENTIAL", "RANDOM"})
+    public EditLocality locality;
+
+    @Param({"100", "10000"})
+    public int historyDepth;
+
+    @Param({"STACKS", "TREE"})
+    public HistoryMode historyMode;
+
+    private Rope original;
+    private Rope rope;
+    private CommandManager commandManager;
+    private EditOffsets offsets;
+    private int[] cursorOffsets;
+
+    @Setup(Level.Trial)
+    public void buildDocument() {
+        original = Documents.rope(Documents.parseSize(documentSize), LeafPolicy.DEFAULT, 42).snapshot();
+    }
+
+    @Setup(Level.Iteration)
+    public void buildHistory() {
+        rope = new Rope("");
+        rope.restore(original);
+        commandManager = historyMode == HistoryMode.TREE ? new CommandManager(rope, 0) : new CommandManager(0);
+        offsets = new EditOffsets(locality, rope.length(), 7);
+
+        for (int i = 0; i < historyDepth; i++) {
+            int at = offsets.next(rope.length() - 1);
+            Command command = i % 4 == 3
+                    ? new DeleteCommand(rope, at, at + 1)
+                    : new InsertCommand(rope, "x", at);
+            commandManager.executeCommand(command);
+        }
+
+        int cursors = Math.min(CURSORS, rope.length());
+        cursorOffsets = new int[cursors];
+        for (int i = 0; i < cursors; i++) {
+            cursorOffsets[i] = (int) ((long) i * rope.length() / cursors);
+        }
+    }
+
+    @Benchmark
+    public void executeInsert() {
+        commandManager.executeCommand(new InsertCommand(rope, "x", offsets.next(rope.length())));
+    }
+
+    @Benchmark
+    public Command undoRedo() {
+        commandManager.undo();
+        return commandManager.redo();
+    }
+
+    @Benchmark
+    public Command multiCursorEdit() {
+        // Type at every cursor and take it back, so the document keeps its size
+        commandManager.executeCommand(new MultiEditCommand(rope, cursorOffsets, 0, "x"));
+        return commandManager.undo();
+    }
+}
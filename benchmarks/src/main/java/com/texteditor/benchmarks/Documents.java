@@ -0,0 +1,117 @@
+package com.texteditor.benchmarks;
+
+import com.texteditor.editor.LeafPolicy;
+import com.texteditor.editor.Rope;
+import com.texteditor.editor.RopeBuilder;
+
+import java.util.Random;
+
+/**
+ * Builds the documents the benchmarks work on, and parses the size and leaf policy parameters.
+ * <p>
+ * The text is made of short English words, spaces and a newline every few dozen words, so it has the line
+ * structure and the character mix of ordinary prose rather than a single repeated character.
+ */
+final class Documents {
+    private static final String[] WORDS = {
+            "the", "rope", "editor", "keeps", "text", "in", "a", "balanced", "tree", "of", "small", "leaves",
+            "so", "that", "insert", "and", "delete", "only", "touch", "path", "to", "one", "leaf", "while",
+            "undo", "redo", "commands", "record", "every", "change", "made", "document"
+    };
+
+    // Text is generated and appended in chunks of this size, so even a 1 GB document never exists as one String
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private Documents() {
+    }
+
+    /**
+     * Parses a size such as "1KB", "64MB" or "1GB" into a number of characters.
+     *
+     * @param size The size, with a KB, MB or GB suffix.
+     * @return The number of characters.
+     */
+    static int parseSize(String size) {
+        String value = size.trim().toUpperCase();
+        long multiplier = 1;
+        if (value.endsWith("KB")) {
+            multiplier = 1L << 10;
+        } else if (value.endsWith("MB")) {
+            multiplier = 1L << 20;
+        } else if (value.endsWith("GB")) {
+            multiplier = 1L << 30;
+        }
+        if (multiplier > 1) {
+            value = value.substring(0, value.length() - 2);
+        }
+
+        long characters = Long.parseLong(value) * multiplier;
+        if (characters > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Document size is too large: " + size);
+        }
+        return (int) characters;
+    }
+
+    /**
+     * Parses a leaf policy written as "min-max", e.g. "256-1024".
+     *
+     * @param policy The policy.
+     * @return The leaf policy.
+     */
+    static LeafPolicy parsePolicy(String policy) {
+        String[] sizes = policy.split("-");
+        return new LeafPolicy(Integer.parseInt(sizes[0].trim()), Integer.parseInt(sizes[1].trim()));
+    }
+
+    /**
+     * Builds a Rope holding a generated document of the given size.
+     *
+     * @param size The number of characters.
+     * @param policy The leaf policy of the Rope.
+     * @param seed The seed of the text generator.
+     * @return The document.
+     */
+    static Rope rope(int size, LeafPolicy policy, long seed) {
+        RopeBuilder builder = new RopeBuilder(policy);
+        Random random = new Random(seed);
+        StringBuilder chunk = new StringBuilder(CHUNK_SIZE);
+
+        for (int written = 0; written < size; written += chunk.length()) {
+            fill(chunk, Math.min(CHUNK_SIZE, size - written), random);
+            builder.append(chunk);
+        }
+        return builder.toRope();
+    }
+
+    /**
+     * Builds a generated document of the given size as a String.
+     *
+     * @param size The number of characters.
+     * @param seed The seed of the text generator.
+     * @return The document.
+     */
+    static String text(int size, long seed) {
+        StringBuilder text = new StringBuilder(size);
+        fill(text, size, new Random(seed));
+        return text.toString();
+    }
+
+    private static void fill(StringBuilder out, int length, Random random) {
+        out.setLength(0);
+        int wordsOnLine = 0;
+
+        while (out.length() < length) {
+            if (wordsOnLine == 12) {
+                out.append('\n');
+                wordsOnLine = 0;
+            } else {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                out.append(word, 0, Math.min(word.length(), length - out.length()));
+                if (out.length() < length) {
+                    out.append(' ');
+                }
+                wordsOnLine++;
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.texteditor.benchmarks;
+
+/**
+ * Where in the document a benchmark makes its edits.
+ */
+public enum EditLocality {
+    // One caret moving forward through the document, like typing
+    SEQUENTIAL,
+    // Uniformly random offsets, like jumping around a large file
+    RANDOM,
+    // Always at the end of the document, like a log being written
+    APPEND
+}
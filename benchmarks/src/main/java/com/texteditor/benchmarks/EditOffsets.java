@@ -0,0 +1,50 @@
+package com.texteditor.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Hands out the offsets a benchmark edits at, following an {@link EditLocality}.
+ * Random offsets are drawn up front, so generating them costs nothing during the measurement.
+ */
+final class EditOffsets {
+    private static final int RANDOM_OFFSETS = 1 << 16;
+
+    private final EditLocality locality;
+    private final int[] random;
+    private int next;
+    private int caret;
+
+    EditOffsets(EditLocality locality, int documentLength, long seed) {
+        this.locality = locality;
+        this.random = new int[RANDOM_OFFSETS];
+        this.caret = documentLength / 2;
+
+        Random generator = new Random(seed);
+        for (int i = 0; i < random.length; i++) {
+            random[i] = generator.nextInt(Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Returns the next offset, between 0 and max inclusive.
+     *
+     * @param max The largest allowed offset, usually the current length of the document.
+     * @return The offset to edit at.
+     */
+    int next(int max) {
+        switch (locality) {
+            case SEQUENTIAL -> {
+                if (caret > max) {
+                    caret = 0;
+                }
+                return caret++;
+            }
+            case RANDOM -> {
+                return random[next++ & (RANDOM_OFFSETS - 1)] % (max + 1);
+            }
+            default -> {
+                return max;
+            }
+        }
+    }
+}
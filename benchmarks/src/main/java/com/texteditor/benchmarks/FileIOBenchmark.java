@@ -0,0 +1,66 @@
+package com.texteditor.benchmarks;
+
+import com.texteditor.editor.LeafPolicy;
+import com.texteditor.editor.Rope;
+import com.texteditor.editor.io.FileIO;
+import com.texteditor.editor.io.FileType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures saving a document with {@link FileIO#saveFile}. The file is written to a temporary directory that is
+ * removed when the trial ends.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class FileIOBenchmark {
+
+    @Param({"1MB", "64MB", "1GB"})
+    public String documentSize;
+
+    private Rope rope;
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void buildDocument() throws IOException {
+        rope = Documents.rope(Documents.parseSize(documentSize), LeafPolicy.DEFAULT, 42);
+        directory = Files.createTempDirectory("texteditor-benchmark");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public void saveFile() {
+        FileIO.saveFile(directory.toString(), rope, FileType.TXT, "benchmark");
+    }
+}
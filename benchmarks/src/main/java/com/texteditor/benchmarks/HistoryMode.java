@@ -0,0 +1,11 @@
+package com.texteditor.benchmarks;
+
+/**
+ * How the CommandManager of a benchmark keeps its history.
+ */
+public enum HistoryMode {
+    // Undo and redo stacks that run the commands, spilling old steps to disk
+    STACKS,
+    // An undo tree of snapshots, as the editor uses
+    TREE
+}
@@ -0,0 +1,95 @@
+package com.texteditor.benchmarks;
+
+import com.texteditor.editor.LeafPolicy;
+import com.texteditor.editor.Rope;
+import com.texteditor.editor.RopeNode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures single edits and lookups on a Rope, across document sizes, edit localities and leaf policies.
+ * <p>
+ * The document is built once per trial. Every iteration starts again from that document through
+ * {@link Rope#restore}, which is O(1), so the edits of one iteration do not pile up into the next.
+ * The 1 GB documents need a heap of a few GB; lower the sizes with {@code -p documentSize=...} on smaller machines.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class RopeBenchmark {
+    private static final int SUBSTRING_LENGTH = 64;
+
+    @Param({"1KB", "1MB", "64MB", "1GB"})
+    public String documentSize;
+
+    @Param({"SEQUENTIAL", "RANDOM", "APPEND"})
+    public EditLocality locality;
+
+    @Param({"256-1024", "1024-4096"})
+    public String leafPolicy;
+
+    private Rope original;
+    private Rope rope;
+    private EditOffsets offsets;
+
+    @Setup(Level.Trial)
+    public void buildDocument() {
+        original = Documents.rope(Documents.parseSize(documentSize), Documents.parsePolicy(leafPolicy), 42).snapshot();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetDocument() {
+        LeafPolicy policy = Documents.parsePolicy(leafPolicy);
+        rope = new Rope("", policy);
+        rope.restore(original);
+        offsets = new EditOffsets(locality, rope.length(), 7);
+    }
+
+    @Benchmark
+    public void insert() {
+        rope.insert(offsets.next(rope.length()), "x");
+    }
+
+    @Benchmark
+    public void delete() {
+        // Start over before deletes drain a small document
+        if (rope.length() < original.length() / 2) {
+            rope.restore(original);
+        }
+
+        int at = offsets.next(rope.length() - 1);
+        rope.delete(at, at + 1);
+    }
+
+    @Benchmark
+    public RopeNode[] split() {
+        return rope.split(offsets.next(rope.length()));
+    }
+
+    @Benchmark
+    public char search() {
+        return rope.search(offsets.next(rope.length() - 1));
+    }
+
+    @Benchmark
+    public Rope substring() {
+        int at = offsets.next(rope.length() - SUBSTRING_LENGTH);
+        return rope.substring(at, at + SUBSTRING_LENGTH);
+    }
+}
@@ -0,0 +1,49 @@
+package com.texteditor.benchmarks;
+
+import com.texteditor.editor.Rope;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading a whole Rope back as a String. This does not depend on where edits happen, so it only
+ * varies the document size and the leaf policy.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Thread)
+public class RopeReadBenchmark {
+
+    @Param({"1KB", "1MB", "64MB", "1GB"})
+    public String documentSize;
+
+    @Param({"256-1024", "1024-4096"})
+    public String leafPolicy;
+
+    private Rope rope;
+
+    @Setup(Level.Trial)
+    public void buildDocument() {
+        rope = Documents.rope(Documents.parseSize(documentSize), Documents.parsePolicy(leafPolicy), 42);
+    }
+
+    @Benchmark
+    public String getRopeData() {
+        return rope.getRopeData();
+    }
+}
@@ -0,0 +1,170 @@
+package com.texteditor.benchmarks.trace;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recorded editing session: the inserts and deletes a user made, in order, with the time of each.
+ * <p>
+ * A trace file is plain UTF-8 text with one operation per line. Blank lines and lines starting with '#' are ignored.
+ * <pre>
+ * &lt;time&gt; I &lt;offset&gt; &lt;text&gt;     inserts text at offset
+ * &lt;time&gt; D &lt;offset&gt; &lt;length&gt;   deletes length characters starting at offset
+ * </pre>
+ * The time is in milliseconds from any fixed origin. The inserted text runs to the end of the line and may contain
+ * spaces; newlines and other special characters are escaped as {@code \n}, {@code \r}, {@code \t}, {@code \\}
+ * and {@code \}{@code uXXXX}.
+ */
+public final class EditTrace {
+    private final long[] times;
+    private final boolean[] inserts;
+    private final int[] offsets;
+    private final int[] deleteLengths;
+    private final String[] texts;
+
+    private EditTrace(List<Long> times, List<Boolean> inserts, List<Integer> offsets,
+                      List<Integer> deleteLengths, List<String> texts) {
+        int size = times.size();
+        this.times = new long[size];
+        this.inserts = new boolean[size];
+        this.offsets = new int[size];
+        this.deleteLengths = new int[size];
+        this.texts = new String[size];
+
+        for (int i = 0; i < size; i++) {
+            this.times[i] = times.get(i);
+            this.inserts[i] = inserts.get(i);
+            this.offsets[i] = offsets.get(i);
+            this.deleteLengths[i] = deleteLengths.get(i);
+            this.texts[i] = texts.get(i);
+        }
+    }
+
+    /**
+     * Reads a trace file.
+     *
+     * @param path The trace file.
+     * @return The trace.
+     * @throws IOException If the file cannot be read.
+     * @throws IllegalArgumentException If a line is not a valid operation.
+     */
+    public static EditTrace read(Path path) throws IOException {
+        List<Long> times = new ArrayList<>();
+        List<Boolean> inserts = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+        List<Integer> deleteLengths = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+
+                // time, kind and offset are separated by single spaces; the rest of the line is the argument
+                String[] fields = line.split(" ", 4);
+                if (fields.length < 4 && !(fields.length == 3 && fields[1].equals("I"))) {
+                    throw new IllegalArgumentException("Malformed trace line " + lineNumber + ": " + line);
+                }
+
+                try {
+                    times.add(Long.parseLong(fields[0]));
+                    offsets.add(Integer.parseInt(fields[2]));
+
+                    switch (fields[1]) {
+                        case "I" -> {
+                            inserts.add(true);
+                            deleteLengths.add(0);
+                            texts.add(fields.length == 4 ? unescape(fields[3]) : "");
+                        }
+                        case "D" -> {
+                            inserts.add(false);
+                            deleteLengths.add(Integer.parseInt(fields[3]));
+                            texts.add(null);
+                        }
+                        default -> throw new IllegalArgumentException(
+                                "Unknown operation on trace line " + lineNumber + ": " + fields[1]);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Malformed number on trace line " + lineNumber + ": " + line, e);
+                }
+            }
+        }
+
+        return new EditTrace(times, inserts, offsets, deleteLengths, texts);
+    }
+
+    private static String unescape(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\\' || i + 1 == text.length()) {
+                builder.append(c);
+                continue;
+            }
+
+            char escaped = text.charAt(++i);
+            switch (escaped) {
+                case 'n' -> builder.append('\n');
+                case 'r' -> builder.append('\r');
+                case 't' -> builder.append('\t');
+                case 'u' -> {
+                    builder.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                    i += 4;
+                }
+                default -> builder.append(escaped);
+            }
+        }
+        return builder.toString();
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    public boolean isInsert(int index) {
+        return inserts[index];
+    }
+
+    public int getOffset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * Returns the number of characters a delete removes, or 0 for an insert.
+     */
+    public int getDeleteLength(int index) {
+        return deleteLengths[index];
+    }
+
+    /**
+     * Returns the text an insert adds, or null for a delete.
+     */
+    public String getText(int index) {
+        return texts[index];
+    }
+
+    /**
+     * Returns the number of milliseconds between the first and the last operation.
+     *
+     * @return The recorded duration of the session.
+     */
+    public long getDuration() {
+        return times.length == 0 ? 0 : times[times.length - 1] - times[0];
+    }
+}
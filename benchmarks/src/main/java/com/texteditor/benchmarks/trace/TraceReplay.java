@@ -0,0 +1,160 @@
+package com.texteditor.benchmarks.trace;
+
+import com.texteditor.editor.Rope;
+import com.texteditor.editor.RopeMemoryReport;
+import com.texteditor.editor.commands.Command;
+import com.texteditor.editor.commands.CommandManager;
+import com.texteditor.editor.commands.DeleteCommand;
+import com.texteditor.editor.commands.InsertCommand;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Replays a recorded editing session ({@link EditTrace}) against a Rope, headless, and reports how the Rope held up.
+ * <p>
+ * Every operation goes through the CommandManager as an InsertCommand or a DeleteCommand, exactly as typing in the
+ * editor does. The trace is replayed as fast as possible (the recorded times are only used to report the length of
+ * the session), after some warm-up replays on throwaway Ropes so the JIT has compiled the hot paths.
+ * <p>
+ * Usage: {@code TraceReplay <trace> [--initial <file>] [--reference <file>] [--warmup <count>]}
+ * <ul>
+ *     <li>{@code --initial}: the UTF-8 document the session started from (empty by default).</li>
+ *     <li>{@code --reference}: the UTF-8 document the session ended with; the replayed text is checked against it
+ *     and the exit code is 1 if they differ.</li>
+ *     <li>{@code --warmup}: the number of warm-up replays (3 by default).</li>
+ * </ul>
+ */
+public class TraceReplay {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: TraceReplay <trace> [--initial <file>] [--reference <file>] [--warmup <count>]");
+            System.exit(2);
+        }
+
+        Path tracePath = Path.of(args[0]);
+        String initial = "";
+        String reference = null;
+        int warmup = 3;
+
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "--initial" -> initial = Files.readString(Path.of(args[i + 1]), StandardCharsets.UTF_8);
+                case "--reference" -> reference = Files.readString(Path.of(args[i + 1]), StandardCharsets.UTF_8);
+                case "--warmup" -> warmup = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        EditTrace trace = EditTrace.read(tracePath);
+        System.out.printf(Locale.ROOT, "Trace: %s, %d operations over %.1f s of editing%n",
+                tracePath, trace.size(), trace.getDuration() / 1000.0);
+
+        for (int i = 0; i < warmup; i++) {
+            replay(trace, new Rope(initial), new long[trace.size()]);
+        }
+
+        long[] latencies = new long[trace.size()];
+        Rope rope = new Rope(initial);
+        long start = System.nanoTime();
+        replay(trace, rope, latencies);
+        long elapsed = System.nanoTime() - start;
+
+        printReport(trace, rope, latencies, elapsed);
+
+        if (reference != null) {
+            int mismatch = firstMismatch(rope, reference);
+            if (mismatch >= 0) {
+                System.out.printf(Locale.ROOT, "Final text: DIFFERS from the reference at offset %d (length %d, expected %d)%n",
+                        mismatch, rope.length(), reference.length());
+                System.exit(1);
+            }
+            System.out.println("Final text: matches the reference");
+        }
+    }
+
+    /**
+     * Applies every operation of the trace to the Rope through a CommandManager, recording each one's latency.
+     *
+     * @param trace The trace to replay.
+     * @param rope The Rope to edit.
+     * @param latencies Receives the latency of every operation, in nanoseconds.
+     */
+    static void replay(EditTrace trace, Rope rope, long[] latencies) {
+        CommandManager commandManager = new CommandManager();
+
+        for (int i = 0; i < trace.size(); i++) {
+            int offset = trace.getOffset(i);
+            Command command = trace.isInsert(i)
+                    ? new InsertCommand(rope, trace.getText(i), offset)
+                    : new DeleteCommand(rope, offset, offset + trace.getDeleteLength(i));
+
+            long start = System.nanoTime();
+            commandManager.executeCommand(command);
+            latencies[i] = System.nanoTime() - start;
+        }
+    }
+
+    private static void printReport(EditTrace trace, Rope rope, long[] latencies, long elapsed) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+
+        RopeMemoryReport memory = rope.memoryReport();
+        int leaves = memory.getLatin1Leaves() + memory.getUtf16Leaves() + memory.getMappedLeaves();
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+
+        System.out.printf(Locale.ROOT, "Throughput: %.0f ops/s (%.1f ms total)%n",
+                trace.size() / (elapsed / 1e9), elapsed / 1e6);
+        System.out.printf(Locale.ROOT, "Latency: p50 %s, p99 %s, max %s%n",
+                formatNanos(percentile(sorted, 0.50)), formatNanos(percentile(sorted, 0.99)),
+                formatNanos(sorted.length > 0 ? sorted[sorted.length - 1] : 0));
+        System.out.printf(Locale.ROOT, "Rope: %d chars, depth %d, %d nodes (%d internal, %d leaves)%n",
+                rope.length(), rope.getDepth(), memory.getInternalNodes() + leaves, memory.getInternalNodes(), leaves);
+        System.out.printf(Locale.ROOT, "Memory: ~%d bytes in the rope (%.2f bytes/char), %d bytes of heap in use after GC%n",
+                memory.getEstimatedBytes(), memory.getBytesPerCharacter(), heapUsed);
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 10_000) {
+            return nanos + " ns";
+        }
+        if (nanos < 10_000_000) {
+            return String.format(Locale.ROOT, "%.1f us", nanos / 1e3);
+        }
+        return String.format(Locale.ROOT, "%.1f ms", nanos / 1e6);
+    }
+
+    // Compares the Rope with the reference chunk by chunk, without building the whole text as a String
+    private static int firstMismatch(Rope rope, String reference) {
+        int offset = 0;
+        for (Iterator<CharSequence> it = rope.chunks(); it.hasNext(); ) {
+            CharSequence chunk = it.next();
+            for (int i = 0; i < chunk.length(); i++, offset++) {
+                if (offset >= reference.length() || chunk.charAt(i) != reference.charAt(offset)) {
+                    return offset;
+                }
+            }
+        }
+        return offset == reference.length() ? -1 : offset;
+    }
+}
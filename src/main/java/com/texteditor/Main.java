@@ -1,18 +1,34 @@
 package com.texteditor;
 
+import com.texteditor.editor.PieceTable;
 import com.texteditor.editor.Rope;
+import com.texteditor.editor.RopeMonitor;
+import com.texteditor.editor.TextBuffer;
 import com.texteditor.ui.Page;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.stage.Stage;
 
+import java.util.concurrent.TimeUnit;
+
 public class Main extends Application {
     @Override
     public void start(Stage primaryStage) {
-        Rope rope = new Rope("");
-        new Page(rope, primaryStage);
+        // The text buffer backend can be switched with -Dtexteditor.buffer=piecetable (the default is rope)
+        TextBuffer buffer = "piecetable".equals(System.getProperty("texteditor.buffer"))
+                ? new PieceTable("")
+                : new Rope("");
+        new Page(buffer, primaryStage);
+
+        // Sample the rope's shape in the background and keep it compact; the stats are exposed over JMX
+        if (buffer instanceof Rope rope) {
+            RopeMonitor monitor = new RopeMonitor(rope, Platform::runLater);
+            monitor.register("com.texteditor:type=Rope");
+            monitor.start(10, TimeUnit.SECONDS);
+        }
     }
 
     public static void main(String[] args) {
         launch(args);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,182 @@
+package com.texteditor.editor;
+
+import java.util.Arrays;
+
+/**
+ * A mutable run of text with a gap at the edit position, used by {@link Rope} for the leaf under the caret
+ * while the user is typing. Inserting at the gap and deleting next to it are plain array writes; moving the gap
+ * elsewhere in the buffer copies only the characters between the old and the new position.
+ * <p>
+ * The buffer is small (about one leaf), so the newline, word, code point and UTF-8 length queries simply scan it.
+ */
+final class GapBuffer {
+    private char[] chars;
+    private int gapStart;
+    private int gapEnd;
+    private int newlines;
+
+    /**
+     * Creates a gap buffer holding a copy of the given text, with room for the given number of extra characters.
+     *
+     * @param text The initial text.
+     * @param capacity The number of characters that can be inserted before the array has to grow.
+     */
+    GapBuffer(CharSequence text, int capacity) {
+        int length = text.length();
+        this.chars = new char[length + Math.max(capacity, 16)];
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            chars[i] = c;
+            if (c == '\n') newlines++;
+        }
+        this.gapStart = length;
+        this.gapEnd = chars.length;
+    }
+
+    int length() {
+        return chars.length - (gapEnd - gapStart);
+    }
+
+    int getNewlineCount() {
+        return newlines;
+    }
+
+    char charAt(int index) {
+        return index < gapStart ? chars[index] : chars[index + (gapEnd - gapStart)];
+    }
+
+    /**
+     * Inserts a string at the given index, moving the gap there first.
+     */
+    void insert(int index, String text) {
+        moveGap(index);
+        if (text.length() > gapEnd - gapStart) {
+            grow(text.length());
+        }
+
+        text.getChars(0, text.length(), chars, gapStart);
+        gapStart += text.length();
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+            newlines++;
+        }
+    }
+
+    /**
+     * Deletes the characters in [start, end) by widening the gap over them.
+     */
+    void delete(int start, int end) {
+        moveGap(end);
+        for (int i = start; i < end; i++) {
+            if (chars[i] == '\n') newlines--;
+        }
+        gapStart = start;
+    }
+
+    /**
+     * Copies the characters in [start, end) into an array, like {@link String#getChars}.
+     */
+    void getChars(int start, int end, char[] dst, int dstBegin) {
+        if (start < gapStart) {
+            int beforeGap = Math.min(end, gapStart);
+            System.arraycopy(chars, start, dst, dstBegin, beforeGap - start);
+            dstBegin += beforeGap - start;
+            start = beforeGap;
+        }
+        if (start < end) {
+            System.arraycopy(chars, start + (gapEnd - gapStart), dst, dstBegin, end - start);
+        }
+    }
+
+    /**
+     * Returns the number of newlines in [0, offset).
+     */
+    int newlinesBefore(int offset) {
+        int count = 0;
+        for (int i = 0; i < offset; i++) {
+            if (charAt(i) == '\n') count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the offset of the n-th newline (1-based) in the buffer.
+     */
+    int newlineOffset(int n) {
+        int index = -1;
+        for (int found = 0; found < n; ) {
+            if (charAt(++index) == '\n') found++;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the number of whitespace-separated words in the buffer.
+     */
+    int wordCount() {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0, length = length(); i < length; i++) {
+            boolean wordChar = WordCounts.isWordChar(charAt(i));
+            if (wordChar && !inWord) words++;
+            inWord = wordChar;
+        }
+        return words;
+    }
+
+    /**
+     * Returns the number of code points in the buffer, counting each surrogate pair once.
+     */
+    int codePointCount() {
+        int length = length();
+        int codePoints = length;
+        for (int i = 1; i < length; i++) {
+            if (Character.isLowSurrogate(charAt(i)) && Character.isHighSurrogate(charAt(i - 1))) codePoints--;
+        }
+        return codePoints;
+    }
+
+    /**
+     * Returns the number of bytes the buffer takes when encoded as UTF-8.
+     */
+    long utf8Length() {
+        return Utf8.encodedLength(getText(), 0, length());
+    }
+
+    /**
+     * Returns the estimated heap size of the buffer, including the spare room of the gap.
+     */
+    long sizeInBytes() {
+        return RopeNode.NODE_BYTES + RopeNode.ARRAY_HEADER_BYTES + 2L * chars.length;
+    }
+
+    /**
+     * Returns the text of the buffer, without the gap.
+     */
+    String getText() {
+        char[] text = new char[length()];
+        getChars(0, text.length, text, 0);
+        return new String(text);
+    }
+
+    private void moveGap(int index) {
+        if (index < gapStart) {
+            int count = gapStart - index;
+            System.arraycopy(chars, index, chars, gapEnd - count, count);
+            gapStart -= count;
+            gapEnd -= count;
+        } else if (index > gapStart) {
+            int count = index - gapStart;
+            System.arraycopy(chars, gapEnd, chars, gapStart, count);
+            gapStart += count;
+            gapEnd += count;
+        }
+    }
+
+    private void grow(int needed) {
+        int afterGap = chars.length - gapEnd;
+        char[] grown = Arrays.copyOf(chars, Math.max(chars.length * 2, length() + needed + 16));
+        System.arraycopy(chars, gapEnd, grown, grown.length - afterGap, afterGap);
+        chars = grown;
+        gapEnd = grown.length - afterGap;
+    }
+}
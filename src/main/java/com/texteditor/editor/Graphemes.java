@@ -0,0 +1,101 @@
+package com.texteditor.editor;
+
+/**
+ * Finds grapheme cluster boundaries, i.e. the places where the caret may stop: a surrogate pair, a letter with its
+ * combining marks, an emoji with its modifiers and variation selectors, a zero-width-joiner sequence or a pair of
+ * regional indicators (a flag) is always one cluster.
+ * <p>
+ * This covers the extended grapheme cluster rules of Unicode UAX #29 that matter for editing, without the full
+ * property tables (e.g. Hangul jamo sequences and prepended marks are not joined). It does not rely on
+ * {@link java.text.BreakIterator}, whose character instance only follows those rules from Java 20 on.
+ */
+public final class Graphemes {
+    private static final int ZERO_WIDTH_JOINER = 0x200D;
+
+    private Graphemes() {
+    }
+
+    /**
+     * Returns the end of the grapheme cluster that starts at an index.
+     *
+     * @param text The text to read.
+     * @param index The start of a cluster, lower than the length of the text.
+     * @return The offset just past the cluster.
+     */
+    public static int next(CharSequence text, int index) {
+        int length = text.length();
+        int codePoint = Character.codePointAt(text, index);
+        int end = index + Character.charCount(codePoint);
+
+        if (codePoint == '\r') {
+            return end < length && text.charAt(end) == '\n' ? end + 1 : end;
+        }
+        if (Character.isISOControl(codePoint)) {
+            return end;
+        }
+        if (isRegionalIndicator(codePoint) && end < length) {
+            int second = Character.codePointAt(text, end);
+            if (isRegionalIndicator(second)) {
+                end += Character.charCount(second);
+            }
+        }
+
+        boolean afterJoiner = false;
+        while (end < length) {
+            int following = Character.codePointAt(text, end);
+            boolean joined = afterJoiner ? !Character.isISOControl(following) && !Character.isWhitespace(following) : isExtend(following);
+            if (!joined) {
+                break;
+            }
+            afterJoiner = following == ZERO_WIDTH_JOINER;
+            end += Character.charCount(following);
+        }
+        return end;
+    }
+
+    /**
+     * Returns the start of the grapheme cluster that ends at an index. Clusters are only well defined when read
+     * from a known boundary, so this scans forward from the start of the text, which should therefore be a
+     * boundary too (or far enough back that the scan has fallen into step by the time it reaches the index).
+     *
+     * @param text The text to read.
+     * @param index The end of a cluster, greater than 0.
+     * @return The offset the cluster starts at.
+     */
+    public static int previous(CharSequence text, int index) {
+        int start = 0;
+        for (int end = next(text, 0); end < index; end = next(text, end)) {
+            start = end;
+        }
+        return start;
+    }
+
+    /**
+     * Returns the number of grapheme clusters in a text.
+     *
+     * @param text The text to read.
+     * @return The number of clusters.
+     */
+    public static int count(CharSequence text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i = next(text, i)) {
+            count++;
+        }
+        return count;
+    }
+
+    // Code points that attach to the one before them
+    private static boolean isExtend(int codePoint) {
+        if (codePoint == ZERO_WIDTH_JOINER) return true;
+        if (codePoint >= 0x1F3FB && codePoint <= 0x1F3FF) return true;  // emoji skin tone modifiers
+        if (codePoint >= 0xE0020 && codePoint <= 0xE007F) return true;  // tag sequences (subdivision flags)
+
+        int type = Character.getType(codePoint);
+        return type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                || type == Character.COMBINING_SPACING_MARK;
+    }
+
+    private static boolean isRegionalIndicator(int codePoint) {
+        return codePoint >= 0x1F1E6 && codePoint <= 0x1F1FF;
+    }
+}
@@ -0,0 +1,42 @@
+package com.texteditor.editor;
+
+/**
+ * Controls how large the leaves of a Rope are allowed to get.
+ * <p>
+ * Small inserts are merged into a neighbouring leaf as long as it stays under {@code maxLeafSize},
+ * large strings are cut into chunks of at most {@code maxLeafSize} characters, and leaves shorter than
+ * {@code minLeafSize} are coalesced with their neighbour whenever two trees are joined.
+ */
+public final class LeafPolicy {
+    public static final LeafPolicy DEFAULT = new LeafPolicy(256, 1024);
+
+    private final int minLeafSize;
+    private final int maxLeafSize;
+
+    /**
+     * Creates a leaf policy.
+     *
+     * @param minLeafSize Leaves shorter than this are merged with a neighbour when possible.
+     * @param maxLeafSize The largest leaf the Rope will build on its own.
+     * @throws IllegalArgumentException If maxLeafSize is not positive or minLeafSize is not in [0, maxLeafSize / 2].
+     */
+    public LeafPolicy(int minLeafSize, int maxLeafSize) {
+        if (maxLeafSize <= 0) {
+            throw new IllegalArgumentException("maxLeafSize must be positive.");
+        }
+        if (minLeafSize < 0 || minLeafSize > maxLeafSize / 2) {
+            throw new IllegalArgumentException("minLeafSize must be between 0 and maxLeafSize / 2.");
+        }
+
+        this.minLeafSize = minLeafSize;
+        this.maxLeafSize = maxLeafSize;
+    }
+
+    public int getMinLeafSize() {
+        return minLeafSize;
+    }
+
+    public int getMaxLeafSize() {
+        return maxLeafSize;
+    }
+}
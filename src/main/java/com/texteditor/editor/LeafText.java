@@ -0,0 +1,75 @@
+package com.texteditor.editor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A read-only CharSequence view over the characters of a leaf, in its Latin-1 ({@code byte[]}), UTF-16
+ * ({@code char[]}) or buffer view ({@code ByteBuffer}) form. Creating a view or a sub-view never copies the characters.
+ */
+final class LeafText implements CharSequence {
+    private final byte[] latin1;
+    private final char[] utf16;
+    private final ByteBuffer mapped;
+    private final int start;
+    private final int end;
+
+    LeafText(byte[] latin1, int start, int end) {
+        this.latin1 = latin1;
+        this.utf16 = null;
+        this.mapped = null;
+        this.start = start;
+        this.end = end;
+    }
+
+    LeafText(char[] utf16, int start, int end) {
+        this.latin1 = null;
+        this.utf16 = utf16;
+        this.mapped = null;
+        this.start = start;
+        this.end = end;
+    }
+
+    LeafText(ByteBuffer mapped, int start, int end) {
+        this.latin1 = null;
+        this.utf16 = null;
+        this.mapped = mapped;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= end - start) {
+            throw new IndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+        if (latin1 != null) return (char) (latin1[start + index] & 0xFF);
+        if (utf16 != null) return utf16[start + index];
+        return (char) (mapped.get(start + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to > end - start || from > to) {
+            throw new IndexOutOfBoundsException("Invalid range: " + from + ", " + to);
+        }
+        if (latin1 != null) return new LeafText(latin1, start + from, start + to);
+        if (utf16 != null) return new LeafText(utf16, start + from, start + to);
+        return new LeafText(mapped, start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+        if (latin1 != null) return new String(latin1, start, end - start, StandardCharsets.ISO_8859_1);
+        if (utf16 != null) return new String(utf16, start, end - start);
+
+        byte[] bytes = new byte[end - start];
+        mapped.get(start, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,224 @@
+package com.texteditor.editor;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * One of the two buffers a {@link PieceTable} reads from: the immutable original text, or the append-only
+ * buffer that receives every inserted string. Characters are never changed once they are in a buffer, so
+ * pieces can point into it by offset for as long as they live.
+ * <p>
+ * The buffer also keeps the sorted offsets of its newlines, so the number of newlines in any range, and the
+ * position of the n-th one, are found by binary search instead of by scanning the text. Word starts are indexed
+ * more coarsely, per block of characters, so counting the words of a piece only scans the partial blocks at
+ * its two ends.
+ */
+final class PieceBuffer {
+    private static final int WORD_BLOCK = 256;
+
+    // The original text: a String, or a read-only TextBuffer such as a Rope snapshot of an opened file
+    private final CharSequence original;
+
+    // The add buffer: chars[0, size) is written, the rest is spare capacity
+    private char[] chars;
+    private int size;
+
+    private int[] newlineOffsets;
+    private int newlineCount;
+
+    // wordBlocks[k] is the number of word starts in [0, k * WORD_BLOCK): a word starts at every word character
+    // that is not preceded by another one
+    private int[] wordBlocks = new int[16];
+    private int wordStarts;
+    private boolean inWord;
+
+    /**
+     * Creates an original buffer over the given text. Text that is not a String or a TextBuffer is copied
+     * into a String first, so the buffer cannot change under the pieces.
+     *
+     * @param text The original text.
+     */
+    PieceBuffer(CharSequence text) {
+        if (text instanceof TextBuffer buffer) {
+            this.original = buffer.snapshot();
+        } else {
+            this.original = text.toString();
+        }
+        this.size = original.length();
+        this.newlineOffsets = new int[16];
+
+        if (original instanceof TextBuffer buffer) {
+            int offset = 0;
+            for (Iterator<CharSequence> it = buffer.chunks(); it.hasNext(); ) {
+                CharSequence chunk = it.next();
+                for (int i = 0; i < chunk.length(); i++) {
+                    char c = chunk.charAt(i);
+                    if (c == '\n') addNewline(offset + i);
+                    countWord(c, offset + i);
+                }
+                offset += chunk.length();
+            }
+        } else {
+            String string = (String) original;
+            for (int i = string.indexOf('\n'); i >= 0; i = string.indexOf('\n', i + 1)) {
+                addNewline(i);
+            }
+            for (int i = 0; i < string.length(); i++) {
+                countWord(string.charAt(i), i);
+            }
+        }
+    }
+
+    /**
+     * Creates an empty add buffer.
+     */
+    PieceBuffer() {
+        this.original = null;
+        this.chars = new char[256];
+        this.newlineOffsets = new int[16];
+    }
+
+    int length() {
+        return size;
+    }
+
+    /**
+     * Appends a string to an add buffer.
+     *
+     * @param text The string to append.
+     * @return The offset the string starts at.
+     */
+    int append(String text) {
+        int start = size;
+        if (start + text.length() > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, start + text.length()));
+        }
+
+        text.getChars(0, text.length(), chars, start);
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+            addNewline(start + i);
+        }
+        for (int i = 0; i < text.length(); i++) {
+            countWord(text.charAt(i), start + i);
+        }
+        size = start + text.length();
+        return start;
+    }
+
+    char charAt(int index) {
+        return original != null ? original.charAt(index) : chars[index];
+    }
+
+    /**
+     * Copies the characters in [start, end) into an array, like {@link String#getChars}.
+     */
+    void getChars(int start, int end, char[] dst, int dstBegin) {
+        if (original == null) {
+            System.arraycopy(chars, start, dst, dstBegin, end - start);
+        } else if (original instanceof String string) {
+            string.getChars(start, end, dst, dstBegin);
+        } else {
+            ((TextBuffer) original).charsInRange(start, end, dst, dstBegin);
+        }
+    }
+
+    /**
+     * Returns a read-only view of the characters in [start, end) that does not copy them.
+     */
+    CharSequence chunk(int start, int end) {
+        if (original == null) return new LeafText(chars, start, end);
+        if (original instanceof String) return CharBuffer.wrap(original, start, end);
+        return original.subSequence(start, end);
+    }
+
+    /**
+     * Returns the number of newlines before an offset, in O(log n).
+     *
+     * @param offset The offset in the buffer.
+     * @return The number of newlines in [0, offset).
+     */
+    int newlinesBefore(int offset) {
+        int low = 0;
+        int high = newlineCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (newlineOffsets[mid] < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the offset of a newline by its rank in the buffer.
+     *
+     * @param rank The zero-based rank of the newline.
+     * @return The offset of the newline.
+     */
+    int newlineOffset(int rank) {
+        return newlineOffsets[rank];
+    }
+
+    /**
+     * Counts the words in [start, end), a non-empty range of the buffer, packed as in {@link WordCounts}.
+     * A word that starts before the range counts as one of its words when the range starts inside it.
+     * Costs O(log n) plus a scan of at most two blocks.
+     */
+    long wordStats(int start, int end) {
+        int words = wordStartsBefore(end) - wordStartsBefore(start);
+        char first = charAt(start);
+        if (start > 0 && WordCounts.isWordChar(first) && WordCounts.isWordChar(charAt(start - 1))) {
+            words++;
+        }
+        return WordCounts.of(words, first, charAt(end - 1));
+    }
+
+    private int wordStartsBefore(int offset) {
+        if (offset == size) {
+            return wordStarts;
+        }
+
+        int blockStart = offset - offset % WORD_BLOCK;
+        int count = wordBlocks[blockStart / WORD_BLOCK];
+        if (offset == blockStart) {
+            return count;
+        }
+
+        // Read the partial block in one go, with the character before it to tell where words start
+        int from = Math.max(blockStart - 1, 0);
+        char[] text = new char[offset - from];
+        getChars(from, offset, text, 0);
+        boolean previousInWord = blockStart > 0 && WordCounts.isWordChar(text[0]);
+        for (int i = blockStart - from; i < text.length; i++) {
+            boolean wordChar = WordCounts.isWordChar(text[i]);
+            if (wordChar && !previousInWord) count++;
+            previousInWord = wordChar;
+        }
+        return count;
+    }
+
+    // Called for every character in order as it is added to the buffer
+    private void countWord(char c, int offset) {
+        if (offset % WORD_BLOCK == 0) {
+            int block = offset / WORD_BLOCK;
+            if (block == wordBlocks.length) {
+                wordBlocks = Arrays.copyOf(wordBlocks, block * 2);
+            }
+            wordBlocks[block] = wordStarts;
+        }
+
+        boolean wordChar = WordCounts.isWordChar(c);
+        if (wordChar && !inWord) wordStarts++;
+        inWord = wordChar;
+    }
+
+    private void addNewline(int offset) {
+        if (newlineCount == newlineOffsets.length) {
+            newlineOffsets = Arrays.copyOf(newlineOffsets, newlineCount * 2);
+        }
+        newlineOffsets[newlineCount++] = offset;
+    }
+}
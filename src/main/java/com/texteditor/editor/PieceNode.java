@@ -0,0 +1,64 @@
+package com.texteditor.editor;
+
+/**
+ * A node of the balanced piece index of a {@link PieceTable}.
+ * <p>
+ * Every node holds one piece, i.e. a range of one of the two buffers, and the pieces read in order from the
+ * leftmost node to the rightmost one make up the document. Like {@link RopeNode}, nodes are immutable and cache
+ * the length, the newline and word counts and the height of their subtree, so offsets and lines are found in O(log n)
+ * and an edit only rebuilds the path it touches.
+ */
+final class PieceNode {
+    final PieceNode left;
+    final PieceNode right;
+
+    // The piece: [start, start + pieceLength) of the add buffer or of the original buffer
+    final boolean added;
+    final int start;
+    final int pieceLength;
+    final int pieceNewlines;
+    final long pieceWords;
+
+    // Totals over the whole subtree
+    final int length;
+    final int newlines;
+    final long words;
+    final int height;
+
+    PieceNode(PieceNode left, PieceNode right, boolean added, int start, int pieceLength, int pieceNewlines, long pieceWords) {
+        this.left = left;
+        this.right = right;
+        this.added = added;
+        this.start = start;
+        this.pieceLength = pieceLength;
+        this.pieceNewlines = pieceNewlines;
+        this.pieceWords = pieceWords;
+        this.length = lengthOf(left) + pieceLength + lengthOf(right);
+        this.newlines = newlinesOf(left) + pieceNewlines + newlinesOf(right);
+        this.words = WordCounts.join(WordCounts.join(wordsOf(left), pieceWords), wordsOf(right));
+        this.height = Math.max(heightOf(left), heightOf(right)) + 1;
+    }
+
+    /**
+     * Returns a node holding the same piece with other children.
+     */
+    PieceNode withChildren(PieceNode left, PieceNode right) {
+        return new PieceNode(left, right, added, start, pieceLength, pieceNewlines, pieceWords);
+    }
+
+    static int lengthOf(PieceNode node) {
+        return node != null ? node.length : 0;
+    }
+
+    static int newlinesOf(PieceNode node) {
+        return node != null ? node.newlines : 0;
+    }
+
+    static long wordsOf(PieceNode node) {
+        return node != null ? node.words : WordCounts.EMPTY;
+    }
+
+    static int heightOf(PieceNode node) {
+        return node != null ? node.height : 0;
+    }
+}
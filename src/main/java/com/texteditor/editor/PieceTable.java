@@ -0,0 +1,499 @@
+package com.texteditor.editor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * The PieceTable class implements a piece table, the other TextBuffer backend next to Rope.
+ * The text is never copied or moved after it is loaded: the original text stays in one immutable buffer,
+ * every inserted string is appended to an add buffer, and the document is the ordered list of pieces
+ * (ranges of either buffer) that make it up. Deleting only cuts pieces, so memory grows with what was typed,
+ * not with the size of the document, which suits large pasted or opened files with sparse edits.
+ * <p>
+ * The pieces are kept in a balanced tree ({@link PieceNode}) indexed by length and newline count, so finding an
+ * offset or a line is O(log p) for p pieces. Consecutive typing at the same place extends the last piece instead
+ * of adding one, so a burst of keystrokes costs one piece.
+ * <p>
+ * Like Rope, the tree is immutable and {@link #snapshot()} is O(1). Unlike Rope snapshots, PieceTable snapshots
+ * share the add buffer with the live table, so they should be read on the thread that edits the table.
+ */
+public class PieceTable implements TextBuffer {
+    private PieceBuffer original;
+    private PieceBuffer added;
+    private PieceNode root;
+    private final boolean readOnly;
+
+    public PieceTable(String text) {
+        this((CharSequence) (text != null ? text : ""));
+    }
+
+    /**
+     * Creates a piece table whose original buffer holds the given text. A TextBuffer (such as a Rope of an opened
+     * file) is used through a snapshot instead of being copied; any other CharSequence is copied once.
+     *
+     * @param text The initial text.
+     */
+    public PieceTable(CharSequence text) {
+        this.original = new PieceBuffer(text);
+        this.added = new PieceBuffer();
+        this.readOnly = false;
+        this.root = original.length() > 0 ? piece(false, 0, original.length()) : null;
+    }
+
+    private PieceTable(PieceBuffer original, PieceBuffer added, PieceNode root, boolean readOnly) {
+        this.original = original;
+        this.added = added;
+        this.root = root;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Returns a read-only view of the current text in O(1). The snapshot shares the piece tree and both
+     * buffers with this table and is not affected by later edits.
+     *
+     * @return An immutable snapshot of this table.
+     */
+    @Override
+    public PieceTable snapshot() {
+        return readOnly ? this : new PieceTable(original, added, root, true);
+    }
+
+    /**
+     * Replaces the text of this table with the text of another buffer. Another PieceTable is adopted in O(1);
+     * any other buffer becomes the new original buffer.
+     *
+     * @param other The buffer whose text this table should hold.
+     * @throws UnsupportedOperationException If this table is read-only.
+     */
+    @Override
+    public void restore(TextBuffer other) {
+        ensureWritable();
+        if (other instanceof PieceTable table) {
+            this.original = table.original;
+            this.added = table.added;
+            this.root = table.root;
+            return;
+        }
+
+        this.original = new PieceBuffer(other);
+        this.added = new PieceBuffer();
+        this.root = original.length() > 0 ? piece(false, 0, original.length()) : null;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    private void ensureWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("PieceTable snapshot is read-only.");
+        }
+    }
+
+    /**
+     * Inserts a string at a specified index. The string is appended to the add buffer and a piece pointing at it
+     * is linked into the tree, or the piece just before the index is extended when it ends where the add buffer
+     * ends (the usual case while typing).
+     *
+     * @param index The index where the string should be inserted.
+     * @param text The string to insert.
+     * @throws IndexOutOfBoundsException If the index is out of bounds.
+     */
+    @Override
+    public void insert(int index, String text) {
+        ensureWritable();
+        if (index < 0 || index > length()) {
+            throw new IndexOutOfBoundsException("IndexToInsert out of bounds.");
+        }
+
+        if (text.isEmpty()) return;
+
+        int addEnd = added.length();
+        int start = added.append(text);
+        PieceNode[] halves = split(root, index);
+        PieceNode before = halves[0];
+
+        PieceNode last = before != null ? lastPiece(before) : null;
+        if (last != null && last.added && last.start + last.pieceLength == addEnd) {
+            PieceNode extended = piece(true, last.start, last.pieceLength + text.length());
+            root = join(removeLast(before), extended, halves[1]);
+        } else {
+            root = join(before, piece(true, start, text.length()), halves[1]);
+        }
+    }
+
+    /**
+     * Deletes a range of characters. Only the pieces at the two ends of the range are cut; the buffers are
+     * left as they are.
+     *
+     * @param start The starting index of the range.
+     * @param end The ending index of the range.
+     * @throws IndexOutOfBoundsException If the range is invalid.
+     */
+    @Override
+    public void delete(int start, int end) {
+        ensureWritable();
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("Invalid index range");
+        }
+
+        if (start == end) return;
+
+        PieceNode[] prefix = split(root, start);
+        PieceNode[] suffix = split(prefix[1], end - start);
+        root = concat(prefix[0], suffix[1]);
+    }
+
+    /**
+     * Extracts a range as a new PieceTable in O(log p). The new table shares the buffers with this one,
+     * so no text is copied.
+     *
+     * @param start The starting index of the range.
+     * @param end The ending index of the range.
+     * @return A new PieceTable containing the range.
+     * @throws IndexOutOfBoundsException If the range is invalid.
+     */
+    public PieceTable substring(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("Invalid index range to perform substring.");
+        }
+
+        PieceNode suffix = split(root, start)[1];
+        return new PieceTable(original, added, split(suffix, end - start)[0], false);
+    }
+
+    @Override
+    public void charsInRange(int start, int end, char[] dst, int dstBegin) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("Invalid index range to copy.");
+        }
+        if (dstBegin < 0 || dstBegin + (end - start) > dst.length) {
+            throw new IndexOutOfBoundsException("Destination array is too small.");
+        }
+
+        if (start < end) {
+            charsInRangeRecursive(root, start, end, dst, dstBegin);
+        }
+    }
+
+    private void charsInRangeRecursive(PieceNode node, int start, int end, char[] dst, int dstBegin) {
+        int leftLength = PieceNode.lengthOf(node.left);
+        if (start < leftLength) {
+            charsInRangeRecursive(node.left, start, Math.min(end, leftLength), dst, dstBegin);
+        }
+
+        int pieceStart = Math.max(start, leftLength);
+        int pieceEnd = Math.min(end, leftLength + node.pieceLength);
+        if (pieceStart < pieceEnd) {
+            bufferOf(node).getChars(node.start + pieceStart - leftLength, node.start + pieceEnd - leftLength,
+                    dst, dstBegin + (pieceStart - start));
+        }
+
+        int rightStart = leftLength + node.pieceLength;
+        if (end > rightStart) {
+            int from = Math.max(start, rightStart);
+            charsInRangeRecursive(node.right, from - rightStart, end - rightStart, dst, dstBegin + (from - start));
+        }
+    }
+
+    /**
+     * Returns an iterator over the pieces of the text, in document order. Each chunk is a view into one of
+     * the buffers, so nothing is copied.
+     *
+     * @return An iterator over the non-empty pieces.
+     */
+    @Override
+    public Iterator<CharSequence> chunks() {
+        return new Iterator<>() {
+            private PieceNode[] stack = new PieceNode[PieceNode.heightOf(root) + 1];
+            private int size;
+
+            {
+                pushLeftSpine(root);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return size > 0;
+            }
+
+            @Override
+            public CharSequence next() {
+                if (size == 0) {
+                    throw new NoSuchElementException();
+                }
+
+                PieceNode node = stack[--size];
+                pushLeftSpine(node.right);
+                return bufferOf(node).chunk(node.start, node.start + node.pieceLength);
+            }
+
+            private void pushLeftSpine(PieceNode node) {
+                for (; node != null; node = node.left) {
+                    stack[size++] = node;
+                }
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(Writer writer) throws IOException {
+        char[] buffer = new char[Math.min(length(), 8192)];
+
+        for (int start = 0; start < length(); start += buffer.length) {
+            int end = Math.min(length(), start + buffer.length);
+            charsInRange(start, end, buffer, 0);
+            writer.write(buffer, 0, end - start);
+        }
+    }
+
+    @Override
+    public int lineCount() {
+        return PieceNode.newlinesOf(root) + 1;
+    }
+
+    @Override
+    public int wordCount() {
+        return WordCounts.count(PieceNode.wordsOf(root));
+    }
+
+    /**
+     * Returns the offset of the first character of a line, in O(log p + log n).
+     *
+     * @param line The zero-based line number.
+     * @return The offset where the line starts.
+     * @throws IndexOutOfBoundsException If the line does not exist.
+     */
+    @Override
+    public int lineStartOffset(int line) {
+        if (line < 0 || line >= lineCount()) {
+            throw new IndexOutOfBoundsException("Line out of bounds: " + line);
+        }
+        if (line == 0) return 0;
+
+        // Find the piece holding the line-th newline, then the newline inside the piece
+        PieceNode node = root;
+        int rank = line;
+        int offset = 0;
+        while (true) {
+            int leftNewlines = PieceNode.newlinesOf(node.left);
+            if (rank <= leftNewlines) {
+                node = node.left;
+                continue;
+            }
+
+            rank -= leftNewlines;
+            offset += PieceNode.lengthOf(node.left);
+            if (rank <= node.pieceNewlines) {
+                PieceBuffer buffer = bufferOf(node);
+                int newline = buffer.newlineOffset(buffer.newlinesBefore(node.start) + rank - 1);
+                return offset + (newline - node.start) + 1;
+            }
+
+            rank -= node.pieceNewlines;
+            offset += node.pieceLength;
+            node = node.right;
+        }
+    }
+
+    /**
+     * Returns the line that contains the given offset, in O(log p + log n).
+     *
+     * @param offset The offset, between 0 and the length of the table.
+     * @return The zero-based line number.
+     * @throws IndexOutOfBoundsException If the offset is out of bounds.
+     */
+    @Override
+    public int lineOf(int offset) {
+        if (offset < 0 || offset > length()) {
+            throw new IndexOutOfBoundsException("Offset out of bounds: " + offset);
+        }
+
+        PieceNode node = root;
+        int count = 0;
+        while (node != null) {
+            int leftLength = PieceNode.lengthOf(node.left);
+            if (offset <= leftLength) {
+                node = node.left;
+                continue;
+            }
+
+            count += PieceNode.newlinesOf(node.left);
+            offset -= leftLength;
+            if (offset <= node.pieceLength) {
+                PieceBuffer buffer = bufferOf(node);
+                return count + buffer.newlinesBefore(node.start + offset) - buffer.newlinesBefore(node.start);
+            }
+
+            count += node.pieceNewlines;
+            offset -= node.pieceLength;
+            node = node.right;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of pieces the text is currently made of.
+     *
+     * @return The piece count.
+     */
+    public int getPieceCount() {
+        return countPieces(root);
+    }
+
+    private static int countPieces(PieceNode node) {
+        return node == null ? 0 : countPieces(node.left) + 1 + countPieces(node.right);
+    }
+
+    @Override
+    public int length() {
+        return PieceNode.lengthOf(root);
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+
+        PieceNode node = root;
+        while (true) {
+            int leftLength = PieceNode.lengthOf(node.left);
+            if (index < leftLength) {
+                node = node.left;
+                continue;
+            }
+
+            index -= leftLength;
+            if (index < node.pieceLength) {
+                return bufferOf(node).charAt(node.start + index);
+            }
+            index -= node.pieceLength;
+            node = node.right;
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return getText(0, length());
+    }
+
+    private PieceBuffer bufferOf(PieceNode node) {
+        return node.added ? added : original;
+    }
+
+    // Creates a single-piece node, counting its newlines and words from the buffer's indexes
+    private PieceNode piece(boolean inAddBuffer, int start, int length) {
+        PieceBuffer buffer = inAddBuffer ? added : original;
+        int newlines = buffer.newlinesBefore(start + length) - buffer.newlinesBefore(start);
+        return new PieceNode(null, null, inAddBuffer, start, length, newlines, buffer.wordStats(start, start + length));
+    }
+
+    /**
+     * Splits a tree into the pieces before and after an offset, cutting the piece that contains it in two.
+     * Both halves are rebuilt with {@link #join}, so they come out balanced.
+     *
+     * @param node The root of the tree.
+     * @param offset The split offset, relative to node.
+     * @return The trees before and after the offset (either may be null).
+     */
+    private PieceNode[] split(PieceNode node, int offset) {
+        if (node == null) {
+            return new PieceNode[]{null, null};
+        }
+
+        int leftLength = PieceNode.lengthOf(node.left);
+        if (offset <= leftLength) {
+            PieceNode[] halves = split(node.left, offset);
+            return new PieceNode[]{halves[0], join(halves[1], node, node.right)};
+        }
+
+        int pieceEnd = leftLength + node.pieceLength;
+        if (offset >= pieceEnd) {
+            PieceNode[] halves = split(node.right, offset - pieceEnd);
+            return new PieceNode[]{join(node.left, node, halves[0]), halves[1]};
+        }
+
+        int cut = offset - leftLength;
+        PieceNode head = piece(node.added, node.start, cut);
+        PieceNode tail = piece(node.added, node.start + cut, node.pieceLength - cut);
+        return new PieceNode[]{join(node.left, head, null), join(null, tail, node.right)};
+    }
+
+    /**
+     * Joins two trees and the piece of a middle node between them, rebalancing along the way like an AVL tree.
+     * Costs O(|height(left) - height(right)| + 1).
+     */
+    private static PieceNode join(PieceNode left, PieceNode middle, PieceNode right) {
+        int leftHeight = PieceNode.heightOf(left);
+        int rightHeight = PieceNode.heightOf(right);
+
+        if (leftHeight > rightHeight + 1) {
+            return balance(left.withChildren(left.left, join(left.right, middle, right)));
+        }
+        if (rightHeight > leftHeight + 1) {
+            return balance(right.withChildren(join(left, middle, right.left), right.right));
+        }
+        return middle.withChildren(left, right);
+    }
+
+    // Joins two trees with nothing in between
+    private static PieceNode concat(PieceNode left, PieceNode right) {
+        if (left == null) return right;
+        if (right == null) return left;
+
+        return join(removeLast(left), lastPiece(left), right);
+    }
+
+    private static PieceNode lastPiece(PieceNode node) {
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    private static PieceNode removeLast(PieceNode node) {
+        if (node.right == null) {
+            return node.left;
+        }
+        return balance(node.withChildren(node.left, removeLast(node.right)));
+    }
+
+    private static PieceNode balance(PieceNode node) {
+        int difference = PieceNode.heightOf(node.left) - PieceNode.heightOf(node.right);
+
+        if (difference > 1) {
+            PieceNode left = node.left;
+            if (PieceNode.heightOf(left.left) < PieceNode.heightOf(left.right)) {
+                node = node.withChildren(rotateLeft(left), node.right);
+            }
+            return rotateRight(node);
+        }
+        if (difference < -1) {
+            PieceNode right = node.right;
+            if (PieceNode.heightOf(right.right) < PieceNode.heightOf(right.left)) {
+                node = node.withChildren(node.left, rotateRight(right));
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static PieceNode rotateRight(PieceNode node) {
+        PieceNode left = node.left;
+        return left.withChildren(left.left, node.withChildren(left.right, node.right));
+    }
+
+    private static PieceNode rotateLeft(PieceNode node) {
+        PieceNode right = node.right;
+        return right.withChildren(node.withChildren(node.left, right.left), right.right);
+    }
+}
@@ -1,19 +1,243 @@
 package com.texteditor.editor;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Iterator;
+
 /*
  * The Rope class implements a rope data structure for efficient string manipulation.
  * It supports operations like search, insert, delete, split, and concatenation.
+ * The tree is rebalanced after every concat, split, insert and delete, so its depth stays O(log n).
+ * A Rope is also a CharSequence, so its text can be read leaf by leaf without building a full String.
+ * <p>
+ * Nodes are never modified after they are built: every edit creates a new root that shares all untouched
+ * subtrees with the previous one. That makes {@link #snapshot()} O(1), and a snapshot can be read from any
+ * thread while the Rope keeps being edited. A Rope itself should only be edited from one thread.
+ * <p>
+ * Small edits are typed into a {@link GapBuffer} that stands in for the leaf under the caret, so a burst of
+ * keystrokes and backspaces at one place costs a few array writes each, whatever the size of the document.
+ * The gap buffer is folded back into the tree as an ordinary leaf when an edit lands somewhere else, and
+ * before anything that needs the tree itself, such as a snapshot, a cursor or the chunk iterators.
  */
-public class Rope {
-    RopeNode root;
+public class Rope implements TextBuffer {
+    volatile RopeNode root;
+    private final LeafPolicy leafPolicy;
+    private final boolean readOnly;
+
+    // The leaf being typed into, if any. While it is set, root holds the rest of the text and the gap buffer's
+    // text sits between offsets gapOffset and gapOffset + gap.length() of the document. It is volatile so that
+    // stats() can sample it from another thread
+    private volatile GapBuffer gap;
+    private int gapOffset;
+    private int newlinesBeforeGap = -1;
 
     public Rope(String text){
-        root = new RopeNode(text != null ? text : "");
+        this(text, LeafPolicy.DEFAULT);
+    }
+
+    /**
+     * Creates a Rope holding the given text, cut into leaves according to the given policy.
+     *
+     * @param text The initial text.
+     * @param leafPolicy The leaf size policy used for every edit on this Rope.
+     */
+    public Rope(String text, LeafPolicy leafPolicy){
+        this.leafPolicy = leafPolicy;
+        this.readOnly = false;
+        this.root = buildBalanced(text != null ? text : "", leafPolicy);
     }
 
     @SuppressWarnings("all")
     public Rope(RopeNode node){
+        this(node, LeafPolicy.DEFAULT, false);
+    }
+
+    Rope(RopeNode node, LeafPolicy leafPolicy, boolean readOnly){
         this.root = node;
+        this.leafPolicy = leafPolicy;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Returns a read-only view of the current text in O(1). The snapshot shares the whole tree with this Rope
+     * and is not affected by later edits, so it can be handed to a background thread (for saving, searching or
+     * computing stats) without locks and without copying the document.
+     *
+     * @return An immutable snapshot of this Rope.
+     */
+    public Rope snapshot(){
+        return readOnly ? this : new Rope(tree(), leafPolicy, true);
+    }
+
+    /**
+     * Replaces the text of this Rope with the text of another buffer. Another Rope (typically an earlier snapshot)
+     * is adopted in O(1), sharing its tree; any other buffer is copied in, one chunk at a time.
+     *
+     * @param other The buffer whose text this Rope should hold.
+     * @throws UnsupportedOperationException If this Rope is read-only.
+     */
+    public void restore(TextBuffer other){
+        ensureWritable();
+        if (other instanceof Rope rope){
+            RopeNode node = rope.tree();
+            this.gap = null;
+            this.root = node;
+            return;
+        }
+
+        RopeBuilder builder = new RopeBuilder(leafPolicy);
+        for (Iterator<CharSequence> it = other.chunks(); it.hasNext(); ) {
+            builder.append(it.next());
+        }
+        this.gap = null;
+        this.root = builder.build();
+    }
+
+    /**
+     * Returns a new Rope with a string inserted, leaving this Rope unchanged.
+     * The two Ropes share every subtree the insert did not touch.
+     *
+     * @param indexToInsert The index where the string should be inserted.
+     * @param newString The string to insert.
+     * @return A new Rope holding the edited text.
+     * @throws IndexOutOfBoundsException If the index is out of bounds.
+     */
+    public Rope withInserted(int indexToInsert, String newString){
+        Rope edited = new Rope(tree(), leafPolicy, false);
+        edited.insert(indexToInsert, newString);
+        return edited;
+    }
+
+    /**
+     * Returns a new Rope with a range of characters removed, leaving this Rope unchanged.
+     * The two Ropes share every subtree the delete did not touch.
+     *
+     * @param startingIndex The starting index of the range.
+     * @param endingIndex The ending index of the range.
+     * @return A new Rope holding the edited text.
+     * @throws IndexOutOfBoundsException If the range is invalid.
+     */
+    public Rope withDeleted(int startingIndex, int endingIndex){
+        Rope edited = new Rope(tree(), leafPolicy, false);
+        edited.delete(startingIndex, endingIndex);
+        return edited;
+    }
+
+    public boolean isReadOnly(){
+        return readOnly;
+    }
+
+    private void ensureWritable(){
+        if (readOnly){
+            throw new UnsupportedOperationException("Rope snapshot is read-only.");
+        }
+    }
+
+    /**
+     * Folds the text being typed into the gap buffer back into the tree as an ordinary leaf. This happens on its
+     * own whenever it is needed, so calling it is only useful to release the gap buffer early, e.g. when the
+     * caret leaves the document. Costs O(log n).
+     */
+    public void freeze(){
+        if (gap == null){
+            return;
+        }
+
+        RopeNode typed = buildBalanced(gap.getText(), leafPolicy);
+        RopeNode tree = typed;
+        if (root != null){
+            RopeNode[] halves = splitRecursive(root, gapOffset);
+            tree = joinAndCoalesce(joinAndCoalesce(halves[0], typed, leafPolicy), halves[1], leafPolicy);
+        }
+        gap = null;
+        root = tree;
+    }
+
+    // Returns the whole tree, folding the gap buffer back into it first
+    private RopeNode tree(){
+        freeze();
+        return root;
+    }
+
+    /**
+     * Takes the leaf around the index out of the tree and loads it into a gap buffer.
+     * At a boundary between two leaves, the left one is taken, so typing at the end of a leaf appends to it.
+     *
+     * @param index The document offset the edit happens at.
+     * @return False if the leaf is too large to be worth copying (e.g. a view of a mapped file).
+     */
+    private boolean openGap(int index){
+        if (root == null || root.getTotalWeight() == 0){
+            root = null;
+            gapOffset = 0;
+            newlinesBeforeGap = 0;
+            gap = new GapBuffer("", leafPolicy.getMaxLeafSize());
+            return true;
+        }
+
+        RopeNode node = root;
+        int leafStart = 0;
+        while (!node.isLeaf()){
+            int weight = node.getWeight();
+            if (index - leafStart <= weight && weight > 0){
+                node = node.getLeftNode();
+            } else {
+                leafStart += weight;
+                node = node.getRightNode();
+            }
+        }
+
+        if (node.isMapped() || node.getTotalWeight() > leafPolicy.getMaxLeafSize()){
+            return false;
+        }
+
+        RopeNode before = splitRecursive(root, leafStart)[0];
+        RopeNode after = splitRecursive(root, leafStart + node.getTotalWeight())[1];
+        root = join(before, after);
+        gapOffset = leafStart;
+        newlinesBeforeGap = -1;
+        gap = new GapBuffer(node.getText(), leafPolicy.getMaxLeafSize());
+        return true;
+    }
+
+    /**
+     * Inserts a short string through the gap buffer, opening one at the index if the current one does not
+     * cover it. The buffer is frozen once it has grown past two leaves' worth of text.
+     *
+     * @return False if the string has to be inserted into the tree instead.
+     */
+    private boolean insertIntoGap(int index, String newString){
+        if (gap == null || index < gapOffset || index > gapOffset + gap.length()){
+            freeze();
+            if (newString.length() > leafPolicy.getMaxLeafSize() || !openGap(index)){
+                return false;
+            }
+        }
+
+        gap.insert(index - gapOffset, newString);
+        if (gap.length() > 2 * leafPolicy.getMaxLeafSize()){
+            freeze();
+        }
+        return true;
+    }
+
+    /**
+     * Deletes a short range through the gap buffer, opening one at the end of the range if the current one
+     * does not cover it.
+     *
+     * @return False if the range has to be deleted from the tree instead.
+     */
+    private boolean deleteFromGap(int start, int end){
+        if (gap == null || start < gapOffset || end > gapOffset + gap.length()){
+            freeze();
+            if (end - start > leafPolicy.getMinLeafSize() || !openGap(end) || start < gapOffset){
+                return false;
+            }
+        }
+
+        gap.delete(start - gapOffset, end - gapOffset);
+        return true;
     }
 
     /**
@@ -24,11 +248,12 @@ public class Rope {
      * @throws IndexOutOfBoundsException If the index is out of bounds.
      */
     public char search(int cursorIndex){
-        if (cursorIndex < 0 || cursorIndex > root.getTotalWeight()){
+        if (cursorIndex < 0 || cursorIndex > getStringSize()){
             throw new IndexOutOfBoundsException("Cursor position out of bounds.");
         }
 
-        return searchCharRecursive(root, cursorIndex);
+        RopeNode node = tree();
+        return searchCharRecursive(node, cursorIndex);
     }
 
     /**
@@ -40,7 +265,7 @@ public class Rope {
      */
     private char searchCharRecursive(RopeNode node, int idx){
         if (node.isLeaf()){
-            return node.getData().charAt(idx);
+            return node.charAt(idx);
         }
 
         if (idx < node.getWeight()){
@@ -54,13 +279,155 @@ public class Rope {
 
     /**
      * Concatenates two RopeNodes and returns a new RopeNode.
+     * The result is rebalanced, so concatenating two balanced trees gives a balanced tree in O(log n).
      *
      * @param node_1 The first RopeNode.
      * @param node_2 The second RopeNode.
      * @return A new RopeNode resulting from concatenating the two nodes.
      */
     public static RopeNode concat(RopeNode node_1, RopeNode node_2){
-        return new RopeNode(node_1, node_2);
+        if (node_1 == null) return node_2 != null ? node_2 : new RopeNode("");
+        if (node_2 == null) return node_1;
+
+        return joinAndCoalesce(node_1, node_2, LeafPolicy.DEFAULT);
+    }
+
+    /**
+     * Joins two trees like {@link #join}, but first merges the two leaves that meet at the seam
+     * when one of them is shorter than the policy's minimum and both fit into a single leaf.
+     * This keeps split and delete from leaving tiny leaves behind.
+     *
+     * @param left The left tree.
+     * @param right The right tree.
+     * @param policy The leaf size policy.
+     * @return A balanced tree holding the text of left followed by right.
+     */
+    static RopeNode joinAndCoalesce(RopeNode left, RopeNode right, LeafPolicy policy){
+        if (left.getTotalWeight() == 0) return right;
+        if (right.getTotalWeight() == 0) return left;
+
+        RopeNode lastLeaf = lastLeaf(left);
+        RopeNode firstLeaf = firstLeaf(right);
+        int lastLength = lastLeaf.getTotalWeight();
+        int firstLength = firstLeaf.getTotalWeight();
+
+        boolean hasTinyLeaf = lastLength < policy.getMinLeafSize() || firstLength < policy.getMinLeafSize();
+        if (!hasTinyLeaf || lastLength + firstLength > policy.getMaxLeafSize()){
+            return join(left, right);
+        }
+
+        RopeNode leftRest = splitRecursive(left, left.getTotalWeight() - lastLength)[0];
+        RopeNode rightRest = splitRecursive(right, firstLength)[1];
+        RopeNode merged = lastLeaf.concatLeaf(firstLeaf);
+
+        return join(join(leftRest, merged), rightRest);
+    }
+
+    private static RopeNode firstLeaf(RopeNode node){
+        while (!node.isLeaf()){
+            node = node.getLeftNode();
+        }
+        return node;
+    }
+
+    private static RopeNode lastLeaf(RopeNode node){
+        while (!node.isLeaf()){
+            node = node.getRightNode();
+        }
+        return node;
+    }
+
+    /**
+     * Cuts a string into leaves of at most the policy's maximum size and arranges them into a perfectly
+     * balanced tree. The chunks are evenly sized, so none of them ends up much shorter than the others.
+     * A chunk boundary never falls between the two halves of a surrogate pair.
+     *
+     * @param text The text to store.
+     * @param policy The leaf size policy.
+     * @return The root of the new tree.
+     */
+    static RopeNode buildBalanced(CharSequence text, LeafPolicy policy){
+        int maxLeafSize = policy.getMaxLeafSize();
+        if (text.length() <= maxLeafSize){
+            return new RopeNode(text, 0, text.length());
+        }
+
+        int chunkCount = (text.length() + maxLeafSize - 1) / maxLeafSize;
+        return buildBalancedRecursive(text, 0, chunkCount, chunkCount);
+    }
+
+    private static RopeNode buildBalancedRecursive(CharSequence text, int firstChunk, int endChunk, int chunkCount){
+        if (endChunk - firstChunk == 1){
+            return new RopeNode(text, chunkBoundary(text, firstChunk, chunkCount), chunkBoundary(text, endChunk, chunkCount));
+        }
+
+        int middle = (firstChunk + endChunk) >>> 1;
+        return new RopeNode(buildBalancedRecursive(text, firstChunk, middle, chunkCount),
+                buildBalancedRecursive(text, middle, endChunk, chunkCount));
+    }
+
+    // Returns where the given chunk starts, moved past the low surrogate if it would start between a pair
+    private static int chunkBoundary(CharSequence text, int chunk, int chunkCount){
+        int boundary = (int) ((long) text.length() * chunk / chunkCount);
+        if (boundary > 0 && boundary < text.length()
+                && Character.isHighSurrogate(text.charAt(boundary - 1)) && Character.isLowSurrogate(text.charAt(boundary))){
+            boundary++;
+        }
+        return boundary;
+    }
+
+    /**
+     * Joins two balanced trees. Walks down the spine of the taller tree until both sides have
+     * a similar depth and rebalances on the way back up, like an AVL join.
+     *
+     * @param left The left tree.
+     * @param right The right tree.
+     * @return A balanced tree holding the text of left followed by right.
+     */
+    private static RopeNode join(RopeNode left, RopeNode right){
+        if (left.getTotalWeight() == 0) return right;
+        if (right.getTotalWeight() == 0) return left;
+
+        if (left.getDepth() > right.getDepth() + 1){
+            return balance(left.getLeftNode(), join(left.getRightNode(), right));
+        }
+        if (right.getDepth() > left.getDepth() + 1){
+            return balance(join(left, right.getLeftNode()), right.getRightNode());
+        }
+
+        return new RopeNode(left, right);
+    }
+
+    /**
+     * Builds an internal node from two balanced subtrees whose depths differ by at most two,
+     * rotating once or twice if needed so the result is balanced again.
+     *
+     * @param left The left subtree.
+     * @param right The right subtree.
+     * @return A balanced node holding both subtrees.
+     */
+    private static RopeNode balance(RopeNode left, RopeNode right){
+        if (left.getDepth() > right.getDepth() + 1){
+            RopeNode outer = left.getLeftNode();
+            RopeNode inner = left.getRightNode();
+
+            if (outer.getDepth() >= inner.getDepth()){
+                return new RopeNode(outer, new RopeNode(inner, right));
+            }
+            return new RopeNode(new RopeNode(outer, inner.getLeftNode()), new RopeNode(inner.getRightNode(), right));
+        }
+
+        if (right.getDepth() > left.getDepth() + 1){
+            RopeNode inner = right.getLeftNode();
+            RopeNode outer = right.getRightNode();
+
+            if (outer.getDepth() >= inner.getDepth()){
+                return new RopeNode(new RopeNode(left, inner), outer);
+            }
+            return new RopeNode(new RopeNode(left, inner.getLeftNode()), new RopeNode(inner.getRightNode(), outer));
+        }
+
+        return new RopeNode(left, right);
     }
 
     /**
@@ -69,7 +436,8 @@ public class Rope {
      * @param other The other Rope to concatenate.
      */
     public void concat(Rope other){
-        this.root = new RopeNode(this.root, other.root);
+        ensureWritable();
+        this.root = joinAndCoalesce(tree(), other.tree(), leafPolicy);
     }
 
     /**
@@ -80,22 +448,101 @@ public class Rope {
      * @throws IndexOutOfBoundsException If the index is out of bounds.
      */
     public void insert(int indexToInsert, String newString){
+        ensureWritable();
         if (indexToInsert < 0 || indexToInsert > getStringSize()){
             throw new IndexOutOfBoundsException("IndexToInsert out of bounds.");
         }
 
         if (newString.isEmpty()) return;
 
+        // Keystrokes go into the gap buffer, which costs O(1) per character once it is open
+        if (insertIntoGap(indexToInsert, newString)) return;
+        freeze();
+
         if (root == null) {
-            root = new RopeNode(newString);
+            root = buildBalanced(newString, leafPolicy);
             return;
         }
 
+        // Small inserts are written straight into the leaf under the index when it has room
+        if (newString.length() <= leafPolicy.getMaxLeafSize()){
+            RopeNode updated = insertIntoLeaf(root, indexToInsert, newString);
+            if (updated != null){
+                root = updated;
+                return;
+            }
+        }
+
         RopeNode[] splitRopes = split(indexToInsert);
-        RopeNode newStringRopeNode = new RopeNode(newString);
+        RopeNode newStringRopeNode = buildBalanced(newString, leafPolicy);
 
-        RopeNode rightSideRope = concat(newStringRopeNode, splitRopes[1]);
-        root = concat(splitRopes[0], rightSideRope);
+        root = joinAndCoalesce(joinAndCoalesce(splitRopes[0], newStringRopeNode, leafPolicy), splitRopes[1], leafPolicy);
+    }
+
+    /**
+     * Rebuilds the path down to the leaf under the index with the string inserted into that leaf.
+     * At a boundary between two leaves, the end of the left leaf is tried before the start of the right one.
+     * The shape of the tree does not change, so it stays balanced.
+     *
+     * @param node The current RopeNode.
+     * @param idx The index to insert at, relative to node.
+     * @param newString The string to insert.
+     * @return The rebuilt node, or null if no leaf under the index has room for the string.
+     */
+    private RopeNode insertIntoLeaf(RopeNode node, int idx, String newString){
+        if (node.isLeaf()){
+            if (node.getTotalWeight() + newString.length() > leafPolicy.getMaxLeafSize()){
+                return null;
+            }
+
+            return node.insertText(idx, newString);
+        }
+
+        int weight = node.getWeight();
+        if (idx <= weight){
+            RopeNode left = insertIntoLeaf(node.getLeftNode(), idx, newString);
+            if (left != null){
+                return new RopeNode(left, node.getRightNode());
+            }
+            if (idx < weight){
+                return null;
+            }
+        }
+
+        RopeNode right = insertIntoLeaf(node.getRightNode(), idx - weight, newString);
+        return right != null ? new RopeNode(node.getLeftNode(), right) : null;
+    }
+
+    /**
+     * Rebuilds the path down to the leaf that fully contains the range with the range removed from it.
+     *
+     * @param node The current RopeNode.
+     * @param start The start of the range, relative to node.
+     * @param end The end of the range, relative to node.
+     * @return The rebuilt node, or null if the range crosses a leaf boundary or would leave an undersized leaf.
+     */
+    private RopeNode deleteFromLeaf(RopeNode node, int start, int end){
+        if (node.isLeaf()){
+            // Mapped leaves are split into narrower views instead of being copied onto the heap
+            int remaining = node.getTotalWeight() - (end - start);
+            if (node.isMapped() || (remaining < leafPolicy.getMinLeafSize() && node != root)){
+                return null;
+            }
+
+            return node.deleteRange(start, end);
+        }
+
+        int weight = node.getWeight();
+        if (end <= weight){
+            RopeNode left = deleteFromLeaf(node.getLeftNode(), start, end);
+            return left != null ? new RopeNode(left, node.getRightNode()) : null;
+        }
+        if (start >= weight){
+            RopeNode right = deleteFromLeaf(node.getRightNode(), start - weight, end - weight);
+            return right != null ? new RopeNode(node.getLeftNode(), right) : null;
+        }
+
+        return null;
     }
 
     /**
@@ -106,18 +553,113 @@ public class Rope {
      * @throws IndexOutOfBoundsException If the range is invalid.
      */
     public void delete(int startingIndex, int endingIndex){
-        if (startingIndex < 0 || endingIndex > root.getTotalWeight() || startingIndex > endingIndex){
+        ensureWritable();
+        if (startingIndex < 0 || endingIndex > getStringSize() || startingIndex > endingIndex){
             throw new IndexOutOfBoundsException("Invalid index range");
         }
 
+        if (startingIndex == endingIndex) return;
+
+        if (deleteFromGap(startingIndex, endingIndex)) return;
+        freeze();
+
+        RopeNode updated = deleteFromLeaf(root, startingIndex, endingIndex);
+        if (updated != null){
+            root = updated;
+            return;
+        }
+
         RopeNode[] rope1 = split(startingIndex);
-        RopeNode[] rope2 = split(endingIndex);
+        RopeNode[] rope2 = splitRecursive(rope1[1], endingIndex - startingIndex);
 
-        root = concat(rope1[0], rope2[1]);
+        root = joinAndCoalesce(rope1[0], rope2[1], leafPolicy);
+    }
+
+    /**
+     * Replaces every match with the same string in a single left-to-right pass.
+     * The untouched text between the matches is shared with the old tree and the new tree is built once,
+     * so k matches cost O(k log n) instead of k separate splits and concatenations.
+     *
+     * @param matchOffsets The start offsets of the matches, sorted and non-overlapping.
+     * @param matchLength The length of every match.
+     * @param replacement The string each match is replaced with.
+     * @throws IllegalArgumentException If the offsets are not sorted or the matches overlap.
+     * @throws IndexOutOfBoundsException If a match lies outside the Rope.
+     */
+    public void replaceAll(int[] matchOffsets, int matchLength, String replacement) {
+        String[] replacements = new String[matchOffsets.length];
+        Arrays.fill(replacements, replacement);
+        replaceAll(matchOffsets, matchLength, replacements);
+    }
+
+    /**
+     * Replaces every match with its own string in a single left-to-right pass.
+     *
+     * @param matchOffsets The start offsets of the matches, sorted and non-overlapping.
+     * @param matchLength The length of every match.
+     * @param replacements The string each match is replaced with, one per offset.
+     * @throws IllegalArgumentException If the offsets are not sorted, the matches overlap,
+     *                                  or there is not one replacement per offset.
+     * @throws IndexOutOfBoundsException If a match lies outside the Rope.
+     */
+    public void replaceAll(int[] matchOffsets, int matchLength, String[] replacements) {
+        int[] deleteLengths = new int[matchOffsets.length];
+        Arrays.fill(deleteLengths, matchLength);
+        applyEdits(matchOffsets, deleteLengths, replacements);
+    }
+
+    /**
+     * Applies a sorted batch of edits, each deleting a range and inserting a string at its start,
+     * by rebuilding the tree once from the untouched slices and the inserted text. However many edits there
+     * are, the untouched text is only shared, never copied, and no edit splits the tree on its own.
+     * All offsets refer to the text before any of the edits.
+     *
+     * @param offsets The start offset of each edit, sorted.
+     * @param deleteLengths The number of characters each edit removes.
+     * @param inserts The string each edit inserts; null inserts nothing.
+     * @throws IllegalArgumentException If the arrays differ in length, or the edits are not sorted or overlap.
+     * @throws IndexOutOfBoundsException If an edit lies outside the Rope.
+     */
+    @Override
+    public void applyEdits(int[] offsets, int[] deleteLengths, String[] inserts) {
+        ensureWritable();
+        if (offsets.length != deleteLengths.length || offsets.length != inserts.length) {
+            throw new IllegalArgumentException("Every edit needs an offset, a delete length and an insert.");
+        }
+
+        int length = getStringSize();
+        int previousEnd = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            if (offsets[i] < previousEnd) {
+                throw new IllegalArgumentException("Edits must be sorted and must not overlap.");
+            }
+            if (deleteLengths[i] < 0 || offsets[i] + deleteLengths[i] > length) {
+                throw new IndexOutOfBoundsException("Edit out of bounds at offset " + offsets[i]);
+            }
+            previousEnd = offsets[i] + deleteLengths[i];
+        }
+
+        if (offsets.length == 0) return;
+
+        RopeNode source = tree();
+        RopeBuilder builder = new RopeBuilder(leafPolicy);
+        int copiedUpTo = 0;
+
+        for (int i = 0; i < offsets.length; i++) {
+            builder.appendRange(source, copiedUpTo, offsets[i]);
+            String insert = inserts[i] != null ? inserts[i] : "";
+            builder.append(insert, 0, insert.length());
+            copiedUpTo = offsets[i] + deleteLengths[i];
+        }
+        builder.appendRange(source, copiedUpTo, length);
+
+        root = builder.build();
     }
 
     /**
      * Extracts a substring from the Rope.
+     * The new Rope shares every leaf inside the range with this one; only the two leaves at the
+     * boundaries of the range are copied, so this is O(log n).
      *
      * @param startingIndex The starting index of the substring.
      * @param endingIndex The ending index of the substring.
@@ -125,16 +667,467 @@ public class Rope {
      * @throws IndexOutOfBoundsException If the range is invalid.
      */
     public Rope substring(int startingIndex, int endingIndex) {
-        if (startingIndex < 0 || endingIndex > root.getTotalWeight() || startingIndex > endingIndex) {
+        if (startingIndex < 0 || endingIndex > getStringSize() || startingIndex > endingIndex) {
             throw new IndexOutOfBoundsException("Invalid index range to perform substring.");
         }
 
-        if (root == null) {
-            return new Rope("");
+        RopeNode tree = tree();
+        if (tree == null) {
+            return new Rope(new RopeNode(""), leafPolicy, false);
+        }
+
+        RopeNode suffix = splitRecursive(tree, startingIndex)[1];
+        RopeNode range = splitRecursive(suffix, endingIndex - startingIndex)[0];
+        return new Rope(range, leafPolicy, false);
+    }
+
+    /**
+     * Copies the characters in a range into a caller-supplied array, like {@link String#getChars}.
+     * Only the leaves overlapping the range are visited, so this is O(log n + k) for k characters.
+     *
+     * @param startingIndex The starting index of the range.
+     * @param endingIndex The ending index of the range.
+     * @param dst The destination array.
+     * @param dstBegin The index in dst to copy the first character to.
+     * @throws IndexOutOfBoundsException If the range is invalid or does not fit in dst.
+     */
+    public void charsInRange(int startingIndex, int endingIndex, char[] dst, int dstBegin) {
+        if (startingIndex < 0 || endingIndex > getStringSize() || startingIndex > endingIndex) {
+            throw new IndexOutOfBoundsException("Invalid index range to copy.");
+        }
+        if (dstBegin < 0 || dstBegin + (endingIndex - startingIndex) > dst.length) {
+            throw new IndexOutOfBoundsException("Destination array is too small.");
+        }
+
+        if (startingIndex >= endingIndex) {
+            return;
+        }
+        if (gap == null) {
+            charsInRangeRecursive(root, startingIndex, endingIndex, dst, dstBegin);
+            return;
+        }
+
+        // The range can cover the text before the gap buffer, the gap buffer and the text after it
+        int gapEnd = gapOffset + gap.length();
+        if (startingIndex < gapOffset) {
+            int end = Math.min(endingIndex, gapOffset);
+            charsInRangeRecursive(root, startingIndex, end, dst, dstBegin);
+        }
+        if (startingIndex < gapEnd && endingIndex > gapOffset) {
+            int start = Math.max(startingIndex, gapOffset);
+            int end = Math.min(endingIndex, gapEnd);
+            gap.getChars(start - gapOffset, end - gapOffset, dst, dstBegin + (start - startingIndex));
+        }
+        if (endingIndex > gapEnd) {
+            int start = Math.max(startingIndex, gapEnd);
+            charsInRangeRecursive(root, start - gap.length(), endingIndex - gap.length(), dst, dstBegin + (start - startingIndex));
+        }
+    }
+
+    /**
+     * Recursive helper for copying a non-empty range of characters.
+     *
+     * @param node The current RopeNode.
+     * @param start The start of the range, relative to node.
+     * @param end The end of the range, relative to node.
+     * @param dst The destination array.
+     * @param dstBegin The index in dst for the character at start.
+     */
+    private void charsInRangeRecursive(RopeNode node, int start, int end, char[] dst, int dstBegin) {
+        if (node.isLeaf()) {
+            node.getChars(start, end, dst, dstBegin);
+            return;
+        }
+
+        int weight = node.getWeight();
+        if (start < weight) {
+            charsInRangeRecursive(node.getLeftNode(), start, Math.min(end, weight), dst, dstBegin);
+        }
+        if (end > weight) {
+            int rightStart = Math.max(start, weight);
+            charsInRangeRecursive(node.getRightNode(), rightStart - weight, end - weight, dst, dstBegin + (rightStart - start));
+        }
+    }
+
+    /**
+     * Returns the number of lines in the Rope. An empty Rope has one (empty) line, and a trailing
+     * newline starts a new, empty last line.
+     *
+     * @return The number of lines.
+     */
+    public int lineCount() {
+        int newlines = root != null ? root.getNewlineCount() : 0;
+        return newlines + (gap != null ? gap.getNewlineCount() : 0) + 1;
+    }
+
+    /**
+     * Returns the number of whitespace-separated words. Every node caches the word count of its subtree, so this
+     * is O(log n) (O(1) when no gap buffer is open), not a scan of the document.
+     *
+     * @return The number of words.
+     */
+    public int wordCount() {
+        int words = root != null ? root.getWordCount() : 0;
+        if (gap == null || gap.length() == 0) {
+            return words;
         }
 
-        String data = getRopeData();
-        return new Rope(data.substring(startingIndex, endingIndex));
+        // The gap buffer sits between the characters before and after gapOffset in the tree: a word running
+        // across that seam in the tree is split in two, and words may run across the gap buffer's two ends
+        boolean wordBefore = gapOffset > 0 && WordCounts.isWordChar(searchCharRecursive(root, gapOffset - 1));
+        boolean wordAfter = root != null && gapOffset < root.getTotalWeight() && WordCounts.isWordChar(searchCharRecursive(root, gapOffset));
+        if (wordBefore && wordAfter) words++;
+        if (wordBefore && WordCounts.isWordChar(gap.charAt(0))) words--;
+        if (wordAfter && WordCounts.isWordChar(gap.charAt(gap.length() - 1))) words--;
+        return words + gap.wordCount();
+    }
+
+    /**
+     * Returns the number of Unicode code points, counting each surrogate pair once. Every node caches the count of
+     * its subtree, so this is O(log n) (O(1) when no gap buffer is open) rather than a scan of the document.
+     *
+     * @return The number of code points.
+     */
+    public int codePointCount() {
+        int codePoints = root != null ? root.getCodePointCount() : 0;
+        if (gap == null || gap.length() == 0) {
+            return codePoints;
+        }
+
+        // Same seams as in wordCount(): a pair the tree holds across gapOffset is split by the gap buffer, and
+        // the gap buffer's ends may complete a pair with the characters next to it
+        boolean highBefore = gapOffset > 0 && Character.isHighSurrogate(searchCharRecursive(root, gapOffset - 1));
+        boolean lowAfter = root != null && gapOffset < root.getTotalWeight() && Character.isLowSurrogate(searchCharRecursive(root, gapOffset));
+        if (highBefore && lowAfter) codePoints++;
+        if (highBefore && Character.isLowSurrogate(gap.charAt(0))) codePoints--;
+        if (lowAfter && Character.isHighSurrogate(gap.charAt(gap.length() - 1))) codePoints--;
+        return codePoints + gap.codePointCount();
+    }
+
+    /**
+     * Converts a UTF-16 offset into a code point index, i.e. counts the code points before the offset, in
+     * O(log n). Like {@link String#codePointCount}, an unpaired surrogate counts as one code point.
+     *
+     * @param offset The offset, between 0 and the length of the Rope.
+     * @return The number of code points in [0, offset).
+     * @throws IndexOutOfBoundsException If the offset is out of bounds.
+     */
+    public int codePointIndex(int offset) {
+        if (offset < 0 || offset > getStringSize()) {
+            throw new IndexOutOfBoundsException("Offset out of bounds: " + offset);
+        }
+
+        RopeNode tree = tree();
+        return tree != null ? codePointsBefore(tree, offset) : 0;
+    }
+
+    /**
+     * Converts a code point index into a UTF-16 offset, in O(log n). The offset never falls between the two
+     * halves of a surrogate pair.
+     *
+     * @param codePointIndex The index, between 0 and {@link #codePointCount()}.
+     * @return The offset where the code point starts, or the length of the Rope for the index just past the end.
+     * @throws IndexOutOfBoundsException If the index is out of bounds.
+     */
+    public int offsetOfCodePoint(int codePointIndex) {
+        RopeNode tree = tree();
+        if (codePointIndex < 0 || codePointIndex > (tree != null ? tree.getCodePointCount() : 0)) {
+            throw new IndexOutOfBoundsException("Code point index out of bounds: " + codePointIndex);
+        }
+
+        return tree != null ? offsetOfCodePointRecursive(tree, codePointIndex) : 0;
+    }
+
+    private static int codePointsBefore(RopeNode node, int offset) {
+        if (offset == node.getTotalWeight()) {
+            return node.getCodePointCount();
+        }
+        if (node.isLeaf()) {
+            return Character.codePointCount(node.getText(), 0, offset);
+        }
+
+        int weight = node.getWeight();
+        if (offset <= weight) {
+            return codePointsBefore(node.getLeftNode(), offset);
+        }
+
+        // A pair across the two children is counted by both, as an unpaired half on each side
+        int pairAcross = RopeNode.splitsSurrogatePair(node.getLeftNode(), node.getRightNode()) ? 1 : 0;
+        return node.getLeftNode().getCodePointCount() + codePointsBefore(node.getRightNode(), offset - weight) - pairAcross;
+    }
+
+    private static int offsetOfCodePointRecursive(RopeNode node, int codePointIndex) {
+        if (node.isLeaf()) {
+            return Character.offsetByCodePoints(node.getText(), 0, codePointIndex);
+        }
+
+        RopeNode left = node.getLeftNode();
+        boolean pairAcross = RopeNode.splitsSurrogatePair(left, node.getRightNode());
+        int inLeft = left.getCodePointCount();
+        if (codePointIndex < inLeft || (codePointIndex == inLeft && !pairAcross)) {
+            return offsetOfCodePointRecursive(left, codePointIndex);
+        }
+        return node.getWeight() + offsetOfCodePointRecursive(node.getRightNode(), codePointIndex - inLeft + (pairAcross ? 1 : 0));
+    }
+
+    /**
+     * Returns the number of bytes the text takes when encoded as UTF-8, with unpaired surrogates written as '?'.
+     * Every node caches the encoded length of its subtree, so this is O(log n) (O(1) when no gap buffer is open)
+     * instead of an encoding pass over the document.
+     *
+     * @return The UTF-8 length in bytes.
+     */
+    @Override
+    public long utf8Length() {
+        long bytes = root != null ? root.getUtf8Length() : 0;
+        if (gap == null || gap.length() == 0) {
+            return bytes;
+        }
+
+        // A pair the tree holds across gapOffset is split by the gap buffer (four bytes become two lone '?'),
+        // and the gap buffer's ends may complete a pair with the characters next to it
+        boolean highBefore = gapOffset > 0 && Character.isHighSurrogate(searchCharRecursive(root, gapOffset - 1));
+        boolean lowAfter = root != null && gapOffset < root.getTotalWeight() && Character.isLowSurrogate(searchCharRecursive(root, gapOffset));
+        if (highBefore && lowAfter) bytes -= 2;
+        if (highBefore && Character.isLowSurrogate(gap.charAt(0))) bytes += 2;
+        if (lowAfter && Character.isHighSurrogate(gap.charAt(gap.length() - 1))) bytes += 2;
+        return bytes + gap.utf8Length();
+    }
+
+    /**
+     * Converts a char offset into the byte offset the same position has in the UTF-8 encoding of the text,
+     * in O(log n).
+     *
+     * @param charOffset The offset, between 0 and the length of the Rope.
+     * @return The number of UTF-8 bytes in [0, charOffset).
+     * @throws IndexOutOfBoundsException If the offset is out of bounds.
+     */
+    public long utf8OffsetOf(int charOffset) {
+        if (charOffset < 0 || charOffset > getStringSize()) {
+            throw new IndexOutOfBoundsException("Offset out of bounds: " + charOffset);
+        }
+
+        RopeNode tree = tree();
+        return tree != null ? utf8BytesBefore(tree, charOffset) : 0;
+    }
+
+    /**
+     * Converts a byte offset in the UTF-8 encoding of the text into a char offset, in O(log n). A byte offset
+     * inside the encoding of a character maps to the start of that character.
+     *
+     * @param byteOffset The byte offset, between 0 and {@link #utf8Length()}.
+     * @return The offset of the character whose encoding contains the byte, or the length of the Rope for the
+     *         offset just past the end.
+     * @throws IndexOutOfBoundsException If the byte offset is out of bounds.
+     */
+    public int charOffsetOfUtf8(long byteOffset) {
+        RopeNode tree = tree();
+        if (byteOffset < 0 || byteOffset > (tree != null ? tree.getUtf8Length() : 0)) {
+            throw new IndexOutOfBoundsException("Byte offset out of bounds: " + byteOffset);
+        }
+
+        return tree != null ? charOffsetOfUtf8Recursive(tree, byteOffset) : 0;
+    }
+
+    private static long utf8BytesBefore(RopeNode node, int offset) {
+        if (offset == node.getTotalWeight()) {
+            return node.getUtf8Length();
+        }
+        if (node.isLeaf()) {
+            return Utf8.encodedLength(node.getText(), 0, offset);
+        }
+
+        int weight = node.getWeight();
+        if (offset <= weight) {
+            return utf8BytesBefore(node.getLeftNode(), offset);
+        }
+
+        // Both children count their half of a pair across them as a lone one-byte '?'; together they take four
+        int pairAcross = RopeNode.splitsSurrogatePair(node.getLeftNode(), node.getRightNode()) ? 2 : 0;
+        return node.getLeftNode().getUtf8Length() + utf8BytesBefore(node.getRightNode(), offset - weight) + pairAcross;
+    }
+
+    private static int charOffsetOfUtf8Recursive(RopeNode node, long byteOffset) {
+        if (node.isLeaf()) {
+            CharSequence text = node.getText();
+            long bytes = 0;
+            int index = 0;
+            while (index < text.length()) {
+                int length = Utf8.charLength(text, index, text.length());
+                if (bytes + length > byteOffset) {
+                    break;
+                }
+                bytes += length;
+                index += length == 4 ? 2 : 1;
+            }
+            return index;
+        }
+
+        RopeNode left = node.getLeftNode();
+        long inLeft = left.getUtf8Length();
+        if (!RopeNode.splitsSurrogatePair(left, node.getRightNode())) {
+            return byteOffset < inLeft ? charOffsetOfUtf8Recursive(left, byteOffset)
+                    : node.getWeight() + charOffsetOfUtf8Recursive(node.getRightNode(), byteOffset - inLeft);
+        }
+
+        // The pair across the children takes the four bytes [inLeft - 1, inLeft + 3)
+        if (byteOffset < inLeft - 1) {
+            return charOffsetOfUtf8Recursive(left, byteOffset);
+        }
+        if (byteOffset < inLeft + 3) {
+            return node.getWeight() - 1;
+        }
+        return node.getWeight() + charOffsetOfUtf8Recursive(node.getRightNode(), byteOffset - inLeft - 2);
+    }
+
+    /**
+     * Returns the offset of the first character of a line, in O(log n).
+     *
+     * @param line The zero-based line number.
+     * @return The offset where the line starts.
+     * @throws IndexOutOfBoundsException If the line does not exist.
+     */
+    public int lineStartOffset(int line) {
+        if (line < 0 || line >= lineCount()) {
+            throw new IndexOutOfBoundsException("Line out of bounds: " + line);
+        }
+
+        return line == 0 ? 0 : newlineOffset(line) + 1;
+    }
+
+    /**
+     * Returns the offset just past the last character of a line, excluding its newline, in O(log n).
+     *
+     * @param line The zero-based line number.
+     * @return The offset where the line ends.
+     * @throws IndexOutOfBoundsException If the line does not exist.
+     */
+    public int lineEndOffset(int line) {
+        if (line < 0 || line >= lineCount()) {
+            throw new IndexOutOfBoundsException("Line out of bounds: " + line);
+        }
+
+        return line == lineCount() - 1 ? getStringSize() : newlineOffset(line + 1);
+    }
+
+    /**
+     * Returns the line that contains the given offset, in O(log n). The offset of a newline belongs to the line it ends.
+     *
+     * @param offset The offset, between 0 and the length of the Rope.
+     * @return The zero-based line number.
+     * @throws IndexOutOfBoundsException If the offset is out of bounds.
+     */
+    public int lineOf(int offset) {
+        if (offset < 0 || offset > getStringSize()) {
+            throw new IndexOutOfBoundsException("Offset out of bounds: " + offset);
+        }
+
+        return newlinesBefore(offset);
+    }
+
+    /**
+     * Finds the offset of the n-th newline (1-based) in the document, looking into the gap buffer if one is open.
+     */
+    private int newlineOffset(int n) {
+        if (gap == null) {
+            return newlineOffsetRecursive(root, n);
+        }
+
+        int before = newlinesBeforeGap();
+        if (n <= before) {
+            return newlineOffsetRecursive(root, n);
+        }
+        if (n <= before + gap.getNewlineCount()) {
+            return gapOffset + gap.newlineOffset(n - before);
+        }
+        return newlineOffsetRecursive(root, n - gap.getNewlineCount()) + gap.length();
+    }
+
+    /**
+     * Counts the newlines before an offset of the document, looking into the gap buffer if one is open.
+     */
+    private int newlinesBefore(int offset) {
+        if (gap == null) {
+            return root != null ? newlinesBeforeRecursive(root, offset) : 0;
+        }
+
+        if (offset <= gapOffset) {
+            return root != null ? newlinesBeforeRecursive(root, offset) : 0;
+        }
+        if (offset <= gapOffset + gap.length()) {
+            return newlinesBeforeGap() + gap.newlinesBefore(offset - gapOffset);
+        }
+        return newlinesBeforeRecursive(root, offset - gap.length()) + gap.getNewlineCount();
+    }
+
+    // The tree does not change while the gap buffer is open, so this is counted once per gap buffer
+    private int newlinesBeforeGap() {
+        if (newlinesBeforeGap < 0) {
+            newlinesBeforeGap = root != null ? newlinesBeforeRecursive(root, gapOffset) : 0;
+        }
+        return newlinesBeforeGap;
+    }
+
+    /**
+     * Returns the text of a line, without its newline. Costs O(log n + k) for a line of k characters.
+     *
+     * @param line The zero-based line number.
+     * @return The text of the line.
+     * @throws IndexOutOfBoundsException If the line does not exist.
+     */
+    public String line(int line) {
+        int start = lineStartOffset(line);
+        int end = lineEndOffset(line);
+
+        char[] chars = new char[end - start];
+        charsInRange(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Recursive helper that finds the offset of the n-th newline (1-based) in a subtree.
+     *
+     * @param node The current RopeNode.
+     * @param n The rank of the newline to find, between 1 and the node's newline count.
+     * @return The offset of the newline, relative to node.
+     */
+    private int newlineOffsetRecursive(RopeNode node, int n) {
+        if (node.isLeaf()) {
+            int idx = -1;
+            for (int found = 0; found < n; ) {
+                if (node.charAt(++idx) == '\n') found++;
+            }
+            return idx;
+        }
+
+        RopeNode left = node.getLeftNode();
+        if (n <= left.getNewlineCount()) {
+            return newlineOffsetRecursive(left, n);
+        }
+        return node.getWeight() + newlineOffsetRecursive(node.getRightNode(), n - left.getNewlineCount());
+    }
+
+    /**
+     * Recursive helper that counts the newlines before an offset in a subtree.
+     *
+     * @param node The current RopeNode.
+     * @param offset The offset, relative to node.
+     * @return The number of newlines in [0, offset).
+     */
+    private int newlinesBeforeRecursive(RopeNode node, int offset) {
+        if (node.isLeaf()) {
+            int count = 0;
+            for (int i = 0; i < offset; i++) {
+                if (node.charAt(i) == '\n') count++;
+            }
+            return count;
+        }
+
+        if (offset <= node.getWeight()) {
+            return newlinesBeforeRecursive(node.getLeftNode(), offset);
+        }
+        return node.getLeftNode().getNewlineCount()
+                + newlinesBeforeRecursive(node.getRightNode(), offset - node.getWeight());
     }
 
     /**
@@ -145,39 +1138,40 @@ public class Rope {
      * @throws IndexOutOfBoundsException If the index is out of bounds.
      */
     public RopeNode[] split(int splitIndex){
-        if (splitIndex < 0 || splitIndex > root.getTotalWeight()){
+        if (splitIndex < 0 || splitIndex > getStringSize()){
             throw new IndexOutOfBoundsException("SplitIndex out of bounds");
         }
 
-        return splitRecursive(root, splitIndex);
+        return splitRecursive(tree(), splitIndex);
     }
 
     /**
      * Recursive helper for splitting a RopeNode.
+     * Both halves are rebuilt with {@link #join}, so they come out balanced.
      *
      * @param node The current RopeNode.
      * @param idx The split index.
      * @return An array containing the left and right RopeNodes.
      */
-    private RopeNode[] splitRecursive(RopeNode node, int idx){
+    private static RopeNode[] splitRecursive(RopeNode node, int idx){
         if (node.isLeaf()){
-            String leftPartString = node.getData().substring(0, idx);
-            String rightPartString = node.getData().substring(idx);
-
-            return new RopeNode[]{new RopeNode(leftPartString), new RopeNode(rightPartString)};
+            return new RopeNode[]{node.slice(0, idx), node.slice(idx, node.getTotalWeight())};
 
         }
 
         if (idx < node.getWeight()){
             RopeNode[] leftSplit = splitRecursive(node.getLeftNode(), idx);
 
-            return new RopeNode[]{leftSplit[0], new RopeNode(leftSplit[1], node.getRightNode())};
+            return new RopeNode[]{leftSplit[0], join(leftSplit[1], node.getRightNode())};
+
+        } else if (idx == node.getWeight()){
+            return new RopeNode[]{node.getLeftNode(), node.getRightNode()};
 
         } else{
             idx -= node.getWeight();
             RopeNode[] rightSplit = splitRecursive(node.getRightNode(), idx);
 
-            return new RopeNode[]{new RopeNode(node.getLeftNode(), rightSplit[0]), rightSplit[1]};
+            return new RopeNode[]{join(node.getLeftNode(), rightSplit[0]), rightSplit[1]};
         }
 
     }
@@ -188,25 +1182,212 @@ public class Rope {
      * @return The string representation of the Rope.
      */
     public String getRopeData(){
-        return root != null ? getRopeDataRecursive(root) : "";
+        RopeNode tree = tree();
+        if (tree == null) {
+            return "";
+        }
+
+        StringBuilder builder = new StringBuilder(tree.getTotalWeight());
+        for (RopeChunkIterator it = new RopeChunkIterator(tree, false); it.hasNext(); ) {
+            it.nextLeaf().appendTo(builder);
+        }
+        return builder.toString();
     }
 
     /**
-     * Recursive helper for retrieving the string stored in a RopeNode.
+     * Returns an iterator over the text of the leaves, from the start of the Rope to the end.
+     * The chunks are the leaves' own data, so nothing is copied.
      *
-     * @param node The current RopeNode.
-     * @return The string stored in the node.
+     * @return An iterator over the non-empty leaf chunks in document order.
      */
-    private String getRopeDataRecursive(RopeNode node) {
-        if (node == null) {
-            return "";
+    public Iterator<CharSequence> chunks(){
+        return new RopeChunkIterator(tree(), false);
+    }
+
+    /**
+     * Returns an iterator over the text of the leaves, from the end of the Rope to the start.
+     * Each chunk itself is still in reading order.
+     *
+     * @return An iterator over the non-empty leaf chunks in reverse document order.
+     */
+    public Iterator<CharSequence> chunksReversed(){
+        return new RopeChunkIterator(tree(), true);
+    }
+
+    /**
+     * Appends the whole text of the Rope to the given Appendable, one leaf at a time.
+     *
+     * @param out The destination.
+     * @return The destination, for chaining.
+     * @throws IOException If the destination fails to append.
+     */
+    public <A extends Appendable> A appendTo(A out) throws IOException {
+        for (Iterator<CharSequence> it = chunks(); it.hasNext(); ) {
+            out.append(it.next());
         }
+        return out;
+    }
 
-        if (node.isLeaf()) {
-            return node.getData();
+    /**
+     * Writes the whole text of the Rope to the given Writer, one leaf at a time.
+     *
+     * @param writer The destination.
+     * @throws IOException If writing fails.
+     */
+    public void writeTo(Writer writer) throws IOException {
+        char[] buffer = new char[Math.min(getStringSize(), 8192)];
+
+        for (RopeChunkIterator it = new RopeChunkIterator(tree(), false); it.hasNext(); ) {
+            RopeNode leaf = it.nextLeaf();
+            for (int start = 0; start < leaf.getTotalWeight(); start += buffer.length) {
+                int end = Math.min(leaf.getTotalWeight(), start + buffer.length);
+                leaf.getChars(start, end, buffer, 0);
+                writer.write(buffer, 0, end - start);
+            }
         }
+    }
 
-        return getRopeDataRecursive(node.getLeftNode()) + getRopeDataRecursive(node.getRightNode());
+    /**
+     * Walks the tree and reports how much heap it takes and how its leaves are stored.
+     * This visits every node, so it is O(number of nodes).
+     *
+     * @return A report of the Rope's memory use.
+     */
+    public RopeMemoryReport memoryReport(){
+        RopeMemoryReport report = new RopeMemoryReport();
+        RopeNode tree = tree();
+        if (tree != null) {
+            collectMemory(tree, report);
+        }
+        return report;
+    }
+
+    private static void collectMemory(RopeNode node, RopeMemoryReport report){
+        report.addNode(node);
+        if (!node.isLeaf()) {
+            collectMemory(node.getLeftNode(), report);
+            collectMemory(node.getRightNode(), report);
+        }
+    }
+
+    /**
+     * Walks the tree and reports its shape: depth, node and leaf counts, leaf sizes and retained bytes.
+     * This visits every node, so it is O(number of nodes), but unlike {@link #memoryReport()} it never changes
+     * the Rope: the leaf being typed into is counted as it is. That makes it safe to sample from a monitoring
+     * thread while the Rope is being edited; the result is then a close approximation of the current state.
+     * A leaf that moves between the tree and the gap buffer during the sample may be left out of it, but it is
+     * never counted twice.
+     *
+     * @return The stats of the current tree.
+     */
+    public RopeStats stats(){
+        // The gap buffer is read on both sides of the tree: a leaf leaving the tree is only in the gap buffer
+        // once the tree without it is published, and one going back is out of the gap buffer before the tree
+        // with it is, so the tree and a gap buffer read before and after it never share a leaf
+        GapBuffer typing;
+        RopeNode tree;
+        do {
+            typing = gap;
+            tree = root;
+        } while (gap != typing);
+
+        RopeStats stats = new RopeStats(tree != null ? tree.getDepth() : 0, leafPolicy);
+        if (tree != null) {
+            collectStats(tree, stats);
+        }
+        if (typing != null) {
+            stats.addLeaf(typing.length());
+            stats.addBytes(typing.sizeInBytes());
+        }
+        return stats;
+    }
+
+    private static void collectStats(RopeNode node, RopeStats stats){
+        stats.addNode(node);
+        if (!node.isLeaf()) {
+            collectStats(node.getLeftNode(), stats);
+            collectStats(node.getRightNode(), stats);
+        }
+    }
+
+    /**
+     * Rebuilds the tree as a perfectly balanced tree over the same leaves. No text is copied, so this costs
+     * O(number of leaves). Edits keep the tree balanced on their own; this only tightens it.
+     */
+    public void rebalance(){
+        ensureWritable();
+        RopeNode tree = tree();
+        if (tree == null || tree.isLeaf()) {
+            return;
+        }
+
+        RopeNode[] leaves = new RopeNode[countLeaves(tree)];
+        int count = 0;
+        for (RopeChunkIterator it = new RopeChunkIterator(tree, false); it.hasNext(); ) {
+            leaves[count++] = it.nextLeaf();
+        }
+        root = buildBalanced(leaves, 0, count);
+    }
+
+    private static int countLeaves(RopeNode node){
+        return node.isLeaf() ? 1 : countLeaves(node.getLeftNode()) + countLeaves(node.getRightNode());
+    }
+
+    private static RopeNode buildBalanced(RopeNode[] leaves, int start, int end){
+        if (end - start == 1) {
+            return leaves[start];
+        }
+        int middle = (start + end) >>> 1;
+        return new RopeNode(buildBalanced(leaves, start, middle), buildBalanced(leaves, middle, end));
+    }
+
+    /**
+     * Rebuilds the tree, merging runs of leaves shorter than the leaf policy's minimum size into full-size
+     * leaves. Leaves that are already large enough (including views of a mapped file) are shared, not copied,
+     * so this costs O(number of leaves) plus a copy of the small leaves' text.
+     */
+    public void compact(){
+        ensureWritable();
+        RopeNode tree = tree();
+        if (tree == null || tree.isLeaf()) {
+            return;
+        }
+
+        RopeBuilder builder = new RopeBuilder(leafPolicy);
+        for (RopeChunkIterator it = new RopeChunkIterator(tree, false); it.hasNext(); ) {
+            builder.append(it.nextLeaf());
+        }
+        root = builder.build();
+    }
+
+    @Override
+    public int length(){
+        return getStringSize();
+    }
+
+    @Override
+    public char charAt(int index){
+        if (index < 0 || index >= getStringSize()){
+            throw new IndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+
+        if (gap != null && index >= gapOffset) {
+            if (index < gapOffset + gap.length()) {
+                return gap.charAt(index - gapOffset);
+            }
+            index -= gap.length();
+        }
+        return searchCharRecursive(root, index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end){
+        return substring(start, end);
+    }
+
+    @Override
+    public String toString(){
+        return getRopeData();
     }
 
     /**
@@ -215,6 +1396,8 @@ public class Rope {
      * If the Rope is empty, no operation is performed.
      */
     public void backspace(){
+        ensureWritable();
+        freeze();
         if (!isEmpty()){
             if (getStringSize() == 1){
                 root = new RopeNode("");
@@ -233,10 +1416,9 @@ public class Rope {
      * @param cursor The index of the character to delete.
      */
     public void backspace(int cursor) {
+        ensureWritable();
         if (!isEmpty()) {
-            RopeNode[] split1 = split(cursor - 1);
-            RopeNode[] split2 = split(cursor);
-            root = new RopeNode(split1[0], split2[1]);
+            delete(cursor - 1, cursor);
         }
     }
 
@@ -252,14 +1434,13 @@ public class Rope {
             return "";
         }
 
-        String data = getRopeData();
-        return data.substring(Math.max(0, data.length() - 1));
+        return String.valueOf(charAt(getStringSize() - 1));
     }
 
     public String peakLastChar(int cursor) {
         if (cursor == 0) return "";
 
-        return substring(cursor - 1, cursor).getRopeData();
+        return String.valueOf(charAt(cursor - 1));
     }
 
     /**
@@ -274,20 +1455,17 @@ public class Rope {
             return "";
         }
 
-        int totalWeight = root.getTotalWeight();
-        StringBuilder lastWord = new StringBuilder();
+        int end = getStringSize();
+        RopeCursor cursor = cursor(end);
 
-        for (int i = totalWeight - 1; i >= 0; i--) {
-            char currentChar = search(i);
-
-            if (currentChar == ' ' && !lastWord.isEmpty()) {
+        while (cursor.hasPrev()) {
+            if (cursor.prev() == ' ' && cursor.position() < end - 1) {
+                cursor.next();
                 break;
             }
-
-            lastWord.insert(0, currentChar);
         }
 
-        return lastWord.toString();
+        return substring(cursor.position(), end).getRopeData();
     }
 
     /**
@@ -304,39 +1482,85 @@ public class Rope {
             return "";
         }
 
-        StringBuilder lastWordFromCursor = new StringBuilder();
+        int end = Math.min(cursor + 1, getStringSize());
+        RopeCursor ropeCursor = cursor(end);
+        int start = ropeCursor.skipBackward(c -> c != ' ' && c != '\n');
+
+        return substring(start, end).getRopeData();
+    }
+
+    /**
+     * Returns the start of the whitespace-delimited word that ends at or contains the given offset.
+     * Costs O(log n + k) for a word of k characters.
+     *
+     * @param offset The offset, between 0 and the length of the Rope.
+     * @return The offset of the first character of the word, or offset itself if it is preceded by whitespace.
+     */
+    public int wordStart(int offset) {
+        return cursor(offset).skipBackward(c -> !Character.isWhitespace(c));
+    }
 
-        for (int idx = cursor; idx >= 0; idx--) {
-            char idxChar = search(idx);
+    /**
+     * Returns the end of the whitespace-delimited word that starts at or contains the given offset.
+     * Costs O(log n + k) for a word of k characters.
+     *
+     * @param offset The offset, between 0 and the length of the Rope.
+     * @return The offset just past the last character of the word, or offset itself if it is followed by whitespace.
+     */
+    public int wordEnd(int offset) {
+        return cursor(offset).skipForward(c -> !Character.isWhitespace(c));
+    }
 
-            if (idxChar == ' ' || idxChar == '\n') break;
+    /**
+     * Creates a bidirectional cursor positioned at the given offset. Moving the cursor one character
+     * is amortized O(1), so scanning near a position does not pay a tree descent per character.
+     *
+     * @param offset The starting position, between 0 and the length of the Rope.
+     * @return A cursor over the current version of the Rope.
+     * @throws IndexOutOfBoundsException If the offset is out of bounds.
+     */
+    public RopeCursor cursor(int offset) {
+        return new RopeCursor(tree(), offset);
+    }
 
-            lastWordFromCursor.append(idxChar);
-        }
+    /**
+     * Returns the depth of the underlying tree. Since the tree is kept balanced, this stays
+     * O(log n) in the number of leaves.
+     *
+     * @return The depth of the root node.
+     */
+    public int getDepth(){
+        RopeNode tree = tree();
+        return tree != null ? tree.getDepth() : 0;
+    }
 
-        lastWordFromCursor.reverse();
-        return lastWordFromCursor.toString();
+    public LeafPolicy getLeafPolicy(){
+        return leafPolicy;
     }
 
     public int getStringSize(){
-        return root != null ? root.getTotalWeight() : 0;
+        int length = root != null ? root.getTotalWeight() : 0;
+        return gap != null ? length + gap.length() : length;
     }
 
     public void append(String newString){
+        ensureWritable();
         if (newString == null || newString.isEmpty()) {
             return;
         }
 
-        RopeNode newRopeNode = new RopeNode(newString);
+        RopeNode newRopeNode = buildBalanced(newString, leafPolicy);
+        freeze();
 
         if (isEmpty()){
             root = newRopeNode;
         } else {
-            root= concat(root, newRopeNode);
+            root = joinAndCoalesce(root, newRopeNode, leafPolicy);
         }
     }
 
+    @Override
     public boolean isEmpty(){
-        return root == null;
+        return getStringSize() == 0;
     }
 }
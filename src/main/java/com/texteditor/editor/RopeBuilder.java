@@ -0,0 +1,146 @@
+package com.texteditor.editor;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Builds a balanced Rope from a left-to-right sequence of pieces: loose text, whole subtrees shared with another
+ * Rope, and read-only byte buffer views. Loose text and tiny subtrees are gathered into full-size leaves before they
+ * are added, so building from many small pieces does not produce many small leaves.
+ */
+public final class RopeBuilder {
+    private final LeafPolicy policy;
+    private final StringBuilder pending = new StringBuilder();
+    private RopeNode result = new RopeNode("");
+
+    public RopeBuilder() {
+        this(LeafPolicy.DEFAULT);
+    }
+
+    public RopeBuilder(LeafPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Appends text. The characters are copied into leaves of the policy's size.
+     *
+     * @param text The text to append.
+     * @return This builder.
+     */
+    public RopeBuilder append(CharSequence text) {
+        return append(text, 0, text.length());
+    }
+
+    /**
+     * Appends a range of characters as loose text.
+     *
+     * @param text The text to read from.
+     * @param start The start of the range.
+     * @param end The end of the range.
+     * @return This builder.
+     */
+    public RopeBuilder append(CharSequence text, int start, int end) {
+        pending.append(text, start, end);
+        // A trailing high surrogate waits for its low half, so no leaf boundary falls inside a surrogate pair
+        if (pending.length() >= policy.getMaxLeafSize() && !Character.isHighSurrogate(pending.charAt(pending.length() - 1))) {
+            flushPending();
+        }
+        return this;
+    }
+
+    /**
+     * Appends a read-only buffer holding one Latin-1 (or ASCII) byte per character, from its position to its limit.
+     * The buffer becomes a leaf as-is: its bytes are neither copied nor read, so a slice of a memory-mapped file
+     * stays on disk until it is actually looked at.
+     *
+     * @param latin1View The bytes to append.
+     * @return This builder.
+     */
+    public RopeBuilder appendLatin1View(ByteBuffer latin1View) {
+        ByteBuffer view = latin1View.slice();
+        if (view.limit() < policy.getMinLeafSize()) {
+            RopeNode small = new RopeNode(view);
+            return append(small.getText(), 0, small.getTotalWeight());
+        }
+
+        append(new RopeNode(view));
+        return this;
+    }
+
+    /**
+     * Builds the Rope. The builder should not be used afterwards.
+     *
+     * @return A new Rope holding everything appended so far.
+     */
+    public Rope toRope() {
+        return new Rope(build(), policy, false);
+    }
+
+    /**
+     * Appends a whole subtree. The subtree is shared, not copied, unless it is too small to be worth its own leaf.
+     */
+    void append(RopeNode subtree) {
+        if (subtree.getTotalWeight() == 0) {
+            return;
+        }
+
+        if (subtree.getTotalWeight() < policy.getMinLeafSize()) {
+            for (Iterator<CharSequence> it = new RopeChunkIterator(subtree, false); it.hasNext(); ) {
+                CharSequence chunk = it.next();
+                append(chunk, 0, chunk.length());
+            }
+            return;
+        }
+
+        flushPending();
+        result = Rope.joinAndCoalesce(result, subtree, policy);
+    }
+
+    /**
+     * Appends the characters in [start, end) of a subtree, sharing every node that lies fully inside the range.
+     * Only the leaves at the two ends of the range are copied (buffer views are narrowed instead).
+     *
+     * @param node The subtree to read from.
+     * @param start The start of the range, relative to node.
+     * @param end The end of the range, relative to node.
+     */
+    void appendRange(RopeNode node, int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        if (start == 0 && end == node.getTotalWeight()) {
+            append(node);
+            return;
+        }
+        if (node.isLeaf()) {
+            if (node.isMapped()) {
+                append(node.slice(start, end));
+            } else {
+                append(node.getText(), start, end);
+            }
+            return;
+        }
+
+        int weight = node.getWeight();
+        if (start < weight) {
+            appendRange(node.getLeftNode(), start, Math.min(end, weight));
+        }
+        if (end > weight) {
+            appendRange(node.getRightNode(), Math.max(start, weight) - weight, end - weight);
+        }
+    }
+
+    RopeNode build() {
+        flushPending();
+        return result;
+    }
+
+    private void flushPending() {
+        if (pending.length() == 0) {
+            return;
+        }
+
+        result = Rope.joinAndCoalesce(result, Rope.buildBalanced(pending, policy), policy);
+        pending.setLength(0);
+    }
+}
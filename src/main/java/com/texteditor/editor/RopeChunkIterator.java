@@ -0,0 +1,91 @@
+package com.texteditor.editor;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the leaves of a Rope in document order (or in reverse), handing out each leaf's text
+ * without copying it. The iterator keeps the path to the next leaf on an explicit stack, so a full pass
+ * visits every node once and a single step is amortized O(1).
+ */
+final class RopeChunkIterator implements Iterator<CharSequence> {
+    private final boolean reverse;
+    private RopeNode[] stack;
+    private int size;
+    private RopeNode next;
+
+    RopeChunkIterator(RopeNode root, boolean reverse) {
+        this.reverse = reverse;
+        this.stack = new RopeNode[root != null ? root.getDepth() + 1 : 1];
+
+        if (root != null) {
+            descend(root);
+        }
+        advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public CharSequence next() {
+        return nextLeaf().getText();
+    }
+
+    /**
+     * Returns the next non-empty leaf node itself, for callers that read the leaf directly.
+     *
+     * @return The next leaf.
+     * @throws NoSuchElementException If there are no more leaves.
+     */
+    RopeNode nextLeaf() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+
+        RopeNode leaf = next;
+        advance();
+        return leaf;
+    }
+
+    // Pushes the node and its first children (left for forward, right for reverse) until a leaf is reached
+    private void descend(RopeNode node) {
+        while (true) {
+            push(node);
+            if (node.isLeaf()) {
+                return;
+            }
+            node = reverse ? node.getRightNode() : node.getLeftNode();
+        }
+    }
+
+    // Moves to the next non-empty leaf, or sets next to null at the end of the rope
+    private void advance() {
+        next = null;
+
+        while (size > 0) {
+            RopeNode node = stack[--size];
+
+            if (node.isLeaf()) {
+                if (node.getTotalWeight() > 0) {
+                    next = node;
+                    return;
+                }
+                continue;
+            }
+
+            descend(reverse ? node.getLeftNode() : node.getRightNode());
+        }
+    }
+
+    private void push(RopeNode node) {
+        if (size == stack.length) {
+            RopeNode[] grown = new RopeNode[stack.length * 2];
+            System.arraycopy(stack, 0, grown, 0, size);
+            stack = grown;
+        }
+        stack[size++] = node;
+    }
+}
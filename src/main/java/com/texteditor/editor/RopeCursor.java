@@ -0,0 +1,263 @@
+package com.texteditor.editor;
+
+import java.util.NoSuchElementException;
+import java.util.function.IntPredicate;
+
+/**
+ * A bidirectional character cursor over a Rope.
+ * <p>
+ * The cursor sits between two characters and remembers the path from the root to the leaf it is in, so
+ * {@link #next()} and {@link #prev()} are plain array reads inside a leaf and only walk the tree when they
+ * cross into a neighbouring leaf. Scanning k characters from a position therefore costs O(log n + k),
+ * instead of one root-to-leaf descent per character.
+ * <p>
+ * A cursor reads the version of the Rope it was created on; later edits to the Rope are not visible to it.
+ */
+public class RopeCursor {
+    private final RopeNode root;
+    private final int length;
+
+    // Path from the root to the current leaf, and whether each step went to the right child
+    private RopeNode[] path;
+    private boolean[] wentRight;
+    private int pathSize;
+
+    private RopeNode leaf;
+    private int leafStart;
+    private int index;
+
+    /**
+     * Creates a cursor positioned before the character at the given offset.
+     *
+     * @param root The root of the tree to read.
+     * @param offset The starting position, between 0 and the length of the tree.
+     * @throws IndexOutOfBoundsException If the offset is out of bounds.
+     */
+    RopeCursor(RopeNode root, int offset) {
+        this.root = root != null ? root : new RopeNode("");
+        this.length = this.root.getTotalWeight();
+        this.path = new RopeNode[this.root.getDepth() + 1];
+        this.wentRight = new boolean[this.root.getDepth() + 1];
+
+        seek(offset);
+    }
+
+    /**
+     * Returns the position of the cursor, i.e. the offset of the character {@link #next()} would return.
+     *
+     * @return The current offset.
+     */
+    public int position() {
+        return leafStart + index;
+    }
+
+    public boolean hasNext() {
+        return position() < length;
+    }
+
+    public boolean hasPrev() {
+        return position() > 0;
+    }
+
+    /**
+     * Returns the character after the cursor and moves the cursor forward by one.
+     *
+     * @return The character at the current position.
+     * @throws NoSuchElementException If the cursor is at the end of the Rope.
+     */
+    public char next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("Cursor is at the end of the rope.");
+        }
+        if (index == leaf.getTotalWeight()) {
+            moveToNextLeaf();
+        }
+
+        return leaf.charAt(index++);
+    }
+
+    /**
+     * Moves the cursor back by one and returns the character it moved over.
+     *
+     * @return The character before the current position.
+     * @throws NoSuchElementException If the cursor is at the start of the Rope.
+     */
+    public char prev() {
+        if (!hasPrev()) {
+            throw new NoSuchElementException("Cursor is at the start of the rope.");
+        }
+        if (index == 0) {
+            moveToPrevLeaf();
+        }
+
+        return leaf.charAt(--index);
+    }
+
+    /**
+     * Returns the character after the cursor without moving it.
+     *
+     * @return The character at the current position.
+     * @throws NoSuchElementException If the cursor is at the end of the Rope.
+     */
+    public char peek() {
+        char c = next();
+        index--;
+        return c;
+    }
+
+    /**
+     * Moves the cursor to the given offset. Moving inside the current leaf or into a neighbouring one is O(1)
+     * amortized; anything further away starts a new O(log n) descent from the root.
+     *
+     * @param offset The new position, between 0 and the length of the Rope.
+     * @throws IndexOutOfBoundsException If the offset is out of bounds.
+     */
+    public void seek(int offset) {
+        if (offset < 0 || offset > length) {
+            throw new IndexOutOfBoundsException("Cursor position out of bounds: " + offset);
+        }
+
+        if (leaf != null) {
+            int leafLength = leaf.getTotalWeight();
+            if (offset >= leafStart && offset <= leafStart + leafLength) {
+                index = offset - leafStart;
+                return;
+            }
+
+            int leafEnd = leafStart + leafLength;
+            if (offset > leafEnd && offset - leafEnd <= leafLength) {
+                moveToNextLeaf();
+                if (offset <= leafStart + leaf.getTotalWeight()) {
+                    index = offset - leafStart;
+                    return;
+                }
+            } else if (offset < leafStart && offset >= leafStart - leafLength) {
+                moveToPrevLeaf();
+                if (offset >= leafStart) {
+                    index = offset - leafStart;
+                    return;
+                }
+            }
+        }
+
+        descend(offset);
+    }
+
+    /**
+     * Moves the cursor forward while the character after it matches the predicate.
+     *
+     * @param predicate The test applied to each character.
+     * @return The new position of the cursor.
+     */
+    public int skipForward(IntPredicate predicate) {
+        while (hasNext()) {
+            if (!predicate.test(next())) {
+                index--;
+                break;
+            }
+        }
+        return position();
+    }
+
+    /**
+     * Moves the cursor backward while the character before it matches the predicate.
+     *
+     * @param predicate The test applied to each character.
+     * @return The new position of the cursor.
+     */
+    public int skipBackward(IntPredicate predicate) {
+        while (hasPrev()) {
+            if (!predicate.test(prev())) {
+                index++;
+                break;
+            }
+        }
+        return position();
+    }
+
+    // Walks down from the root to the leaf holding the offset. At a boundary, the leaf to the right is chosen
+    private void descend(int offset) {
+        pathSize = 0;
+        RopeNode node = root;
+        int base = 0;
+
+        while (!node.isLeaf()) {
+            boolean right = offset - base >= node.getWeight() && node.getRightNode().getTotalWeight() > 0;
+            push(node, right);
+
+            if (right) {
+                base += node.getWeight();
+                node = node.getRightNode();
+            } else {
+                node = node.getLeftNode();
+            }
+        }
+
+        leaf = node;
+        leafStart = base;
+        index = offset - base;
+    }
+
+    // Moves to the first character of the next non-empty leaf
+    private void moveToNextLeaf() {
+        int nextStart = leafStart + leaf.getTotalWeight();
+
+        do {
+            while (pathSize > 0 && wentRight[pathSize - 1]) {
+                pathSize--;
+            }
+            if (pathSize == 0) {
+                throw new NoSuchElementException("Cursor is at the end of the rope.");
+            }
+
+            wentRight[pathSize - 1] = true;
+            RopeNode node = path[pathSize - 1].getRightNode();
+            while (!node.isLeaf()) {
+                push(node, false);
+                node = node.getLeftNode();
+            }
+            leaf = node;
+        } while (leaf.getTotalWeight() == 0);
+
+        leafStart = nextStart;
+        index = 0;
+    }
+
+    // Moves to the end of the previous non-empty leaf
+    private void moveToPrevLeaf() {
+        do {
+            while (pathSize > 0 && !wentRight[pathSize - 1]) {
+                pathSize--;
+            }
+            if (pathSize == 0) {
+                throw new NoSuchElementException("Cursor is at the start of the rope.");
+            }
+
+            wentRight[pathSize - 1] = false;
+            RopeNode node = path[pathSize - 1].getLeftNode();
+            while (!node.isLeaf()) {
+                push(node, true);
+                node = node.getRightNode();
+            }
+            leaf = node;
+        } while (leaf.getTotalWeight() == 0);
+
+        leafStart -= leaf.getTotalWeight();
+        index = leaf.getTotalWeight();
+    }
+
+    private void push(RopeNode node, boolean right) {
+        if (pathSize == path.length) {
+            RopeNode[] grownPath = new RopeNode[path.length * 2];
+            boolean[] grownDirections = new boolean[path.length * 2];
+            System.arraycopy(path, 0, grownPath, 0, pathSize);
+            System.arraycopy(wentRight, 0, grownDirections, 0, pathSize);
+            path = grownPath;
+            wentRight = grownDirections;
+        }
+
+        path[pathSize] = node;
+        wentRight[pathSize] = right;
+        pathSize++;
+    }
+}
@@ -0,0 +1,85 @@
+package com.texteditor.editor;
+
+/**
+ * A summary of how much heap a Rope uses, produced by {@link Rope#memoryReport()}.
+ * Sizes are estimates for a 64-bit JVM with compressed object pointers.
+ */
+public final class RopeMemoryReport {
+    private long characters;
+    private long estimatedBytes;
+    private int internalNodes;
+    private int latin1Leaves;
+    private int utf16Leaves;
+    private int mappedLeaves;
+    private long mappedCharacters;
+
+    RopeMemoryReport() {
+    }
+
+    void addNode(RopeNode node) {
+        estimatedBytes += node.shallowSizeInBytes();
+
+        if (!node.isLeaf()) {
+            internalNodes++;
+            return;
+        }
+
+        characters += node.getTotalWeight();
+        if (node.isMapped()) {
+            mappedLeaves++;
+            mappedCharacters += node.getTotalWeight();
+        } else if (node.isLatin1()) {
+            latin1Leaves++;
+        } else {
+            utf16Leaves++;
+        }
+    }
+
+    public long getCharacters() {
+        return characters;
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public int getInternalNodes() {
+        return internalNodes;
+    }
+
+    public int getLatin1Leaves() {
+        return latin1Leaves;
+    }
+
+    public int getUtf16Leaves() {
+        return utf16Leaves;
+    }
+
+    public int getMappedLeaves() {
+        return mappedLeaves;
+    }
+
+    /**
+     * Returns the number of characters read from mapped buffers outside the heap.
+     *
+     * @return The mapped character count.
+     */
+    public long getMappedCharacters() {
+        return mappedCharacters;
+    }
+
+    /**
+     * Returns the estimated heap bytes spent per character, including node and array overhead.
+     *
+     * @return The bytes per character, or 0 for an empty Rope.
+     */
+    public double getBytesPerCharacter() {
+        return characters == 0 ? 0 : (double) estimatedBytes / characters;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d chars in %d latin-1 + %d utf-16 + %d mapped leaves and %d internal nodes, ~%d heap bytes (%.2f bytes/char)",
+                characters, latin1Leaves, utf16Leaves, mappedLeaves, internalNodes, estimatedBytes, getBytesPerCharacter());
+    }
+}
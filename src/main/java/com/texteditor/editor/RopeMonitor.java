@@ -0,0 +1,238 @@
+package com.texteditor.editor;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples the {@link RopeStats} of a Rope on a background thread and keeps the tree in shape: when the imbalance
+ * ratio or the share of undersized leaves goes above its threshold, the Rope is rebalanced or compacted.
+ * <p>
+ * A Rope may only be edited from one thread, so the maintenance itself is handed to the executor that runs the
+ * edits (for the editor, the JavaFX application thread). Sampling only reads the tree and can run anywhere.
+ * The monitor can be registered as an MXBean to read the stats and change the thresholds at runtime.
+ */
+public class RopeMonitor implements RopeStatsMXBean {
+    public static final double DEFAULT_MAX_IMBALANCE_RATIO = 2.0;
+    public static final double DEFAULT_MAX_SMALL_LEAF_FRACTION = 0.5;
+
+    // Below this many leaves the tree is too small for its shape to matter
+    private static final int MIN_LEAVES_FOR_MAINTENANCE = 16;
+
+    private final Rope rope;
+    private final Executor editExecutor;
+    private final AtomicBoolean maintenancePending = new AtomicBoolean();
+    private final AtomicLong rebalanceCount = new AtomicLong();
+    private final AtomicLong compactionCount = new AtomicLong();
+
+    private volatile RopeStats stats;
+    private volatile double maxImbalanceRatio = DEFAULT_MAX_IMBALANCE_RATIO;
+    private volatile double maxSmallLeafFraction = DEFAULT_MAX_SMALL_LEAF_FRACTION;
+    private volatile boolean autoMaintenance = true;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Creates a monitor for a Rope.
+     *
+     * @param rope The Rope to watch.
+     * @param editExecutor Runs maintenance on the thread that edits the Rope.
+     */
+    public RopeMonitor(Rope rope, Executor editExecutor) {
+        this.rope = rope;
+        this.editExecutor = editExecutor;
+        this.stats = rope.stats();
+    }
+
+    /**
+     * Starts sampling the Rope periodically on a daemon thread.
+     *
+     * @param period The time between two samples.
+     * @param unit The unit of the period.
+     */
+    public synchronized void start(long period, TimeUnit unit) {
+        if (scheduler != null) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "rope-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::sample, period, period, unit);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Registers this monitor with the platform MBean server, so it shows up in JConsole and other JMX clients.
+     *
+     * @param name The name to register under, e.g. "com.texteditor:type=Rope".
+     * @throws RuntimeException If the name is invalid or already taken.
+     */
+    public void register(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(name));
+        } catch (JMException e) {
+            throw new RuntimeException("Error registering rope monitor. ", e);
+        }
+    }
+
+    /**
+     * Returns the latest sample.
+     *
+     * @return The stats taken by the last call to {@link #sample()}.
+     */
+    public RopeStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void sample() {
+        RopeStats sampled = rope.stats();
+        stats = sampled;
+
+        if (autoMaintenance && sampled.getLeaves() >= MIN_LEAVES_FOR_MAINTENANCE) {
+            if (sampled.getSmallLeafFraction() > maxSmallLeafFraction) {
+                // Compacting rebuilds the tree balanced as well, so it covers both cases
+                maintain(true);
+            } else if (sampled.getImbalanceRatio() > maxImbalanceRatio) {
+                maintain(false);
+            }
+        }
+    }
+
+    // Hands one maintenance run to the edit thread, unless one is already waiting there
+    private void maintain(boolean compact) {
+        if (!maintenancePending.compareAndSet(false, true)) {
+            return;
+        }
+
+        editExecutor.execute(() -> {
+            try {
+                if (compact) {
+                    rope.compact();
+                    compactionCount.incrementAndGet();
+                } else {
+                    rope.rebalance();
+                    rebalanceCount.incrementAndGet();
+                }
+                stats = rope.stats();
+            } finally {
+                maintenancePending.set(false);
+            }
+        });
+    }
+
+    @Override
+    public void rebalance() {
+        maintain(false);
+    }
+
+    @Override
+    public void compact() {
+        maintain(true);
+    }
+
+    @Override
+    public int getDepth() {
+        return stats.getDepth();
+    }
+
+    @Override
+    public long getCharacters() {
+        return stats.getCharacters();
+    }
+
+    @Override
+    public long getEstimatedBytes() {
+        return stats.getEstimatedBytes();
+    }
+
+    @Override
+    public int getInternalNodes() {
+        return stats.getInternalNodes();
+    }
+
+    @Override
+    public int getLeaves() {
+        return stats.getLeaves();
+    }
+
+    @Override
+    public int getSmallLeaves() {
+        return stats.getSmallLeaves();
+    }
+
+    @Override
+    public double getSmallLeafFraction() {
+        return stats.getSmallLeafFraction();
+    }
+
+    @Override
+    public double getImbalanceRatio() {
+        return stats.getImbalanceRatio();
+    }
+
+    @Override
+    public int[] getLeafSizeHistogram() {
+        return stats.getLeafSizeHistogram();
+    }
+
+    @Override
+    public double getMaxImbalanceRatio() {
+        return maxImbalanceRatio;
+    }
+
+    @Override
+    public void setMaxImbalanceRatio(double maxImbalanceRatio) {
+        if (maxImbalanceRatio < 1) {
+            throw new IllegalArgumentException("Max imbalance ratio must be at least 1.");
+        }
+        this.maxImbalanceRatio = maxImbalanceRatio;
+    }
+
+    @Override
+    public double getMaxSmallLeafFraction() {
+        return maxSmallLeafFraction;
+    }
+
+    @Override
+    public void setMaxSmallLeafFraction(double maxSmallLeafFraction) {
+        if (maxSmallLeafFraction < 0 || maxSmallLeafFraction > 1) {
+            throw new IllegalArgumentException("Max small leaf fraction must be between 0 and 1.");
+        }
+        this.maxSmallLeafFraction = maxSmallLeafFraction;
+    }
+
+    @Override
+    public boolean isAutoMaintenance() {
+        return autoMaintenance;
+    }
+
+    @Override
+    public void setAutoMaintenance(boolean autoMaintenance) {
+        this.autoMaintenance = autoMaintenance;
+    }
+
+    @Override
+    public long getRebalanceCount() {
+        return rebalanceCount.get();
+    }
+
+    @Override
+    public long getCompactionCount() {
+        return compactionCount.get();
+    }
+}
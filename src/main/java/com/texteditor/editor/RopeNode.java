@@ -1,5 +1,8 @@
 package com.texteditor.editor;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Represents a node in a Rope data structure, which is a binary tree-like structure used to efficiently manage
  * and manipulate large strings. Each node in the Rope can either be:
@@ -11,17 +14,58 @@ package com.texteditor.editor;
  * <p>
  * The Rope data structure is commonly used for string manipulation tasks such as concatenation, insertion, deletion,
  * and substring extraction, allowing these operations to be performed efficiently without copying large amounts of data.
+ * <p>
+ * Nodes are immutable. Every node caches the length, the UTF-8 encoded length, the number of code points, newlines
+ * and words, and the depth of its subtree when it is built, so all of them can be read in O(1) and the Rope can keep itself balanced and map lines to offsets without
+ * walking the tree.
+ * <p>
+ * Leaves store their characters in a bare array rather than a String: a {@code byte[]} when every character fits in
+ * Latin-1, and a {@code char[]} only when the leaf holds something wider. Mostly-ASCII text therefore costs about one
+ * byte per character plus a small fixed overhead per leaf.
+ * <p>
+ * A leaf can also be a read-only view into a memory-mapped file holding one byte per character. Building such a leaf
+ * does not read the file, so its newline and word counts and its UTF-8 length are only worked out (and cached) the
+ * first time they are asked for.
  */
 public class RopeNode {
+    // Approximate shallow sizes on a 64-bit JVM with compressed oops, used for memory estimates
+    static final int NODE_BYTES = 64;
+    static final int ARRAY_HEADER_BYTES = 16;
+    static final int BUFFER_VIEW_BYTES = 64;
+
     // Left and right child nodes
-    private RopeNode left;
-    private RopeNode right;
+    private final RopeNode left;
+    private final RopeNode right;
+
+    // Data held in the node (only for leaf node): exactly one of these is set
+    private final byte[] latin1;
+    private final char[] utf16;
+    private final ByteBuffer mapped;
+
+    // Total number of characters stored in this subtree
+    private final int length;
+
+    // Number of code points in this subtree. A surrogate pair split between two leaves is counted once: the flags
+    // record whether the subtree starts with a low surrogate and ends with a high one, so joins can correct for it
+    private final int codePoints;
+    private final byte surrogateEdges;
 
-    // Data held in the node (only for leaf node)
-    private String data;
+    // Number of bytes this subtree takes when encoded as UTF-8 (see Utf8), or -1 until a mapped leaf below has
+    // been counted. Volatile because a plain long may be read half-written (JLS 17.7)
+    private volatile long utf8Length;
 
-    // Weight of the node (the length of the string for leaf nodes or the total weight for internal nodes)
-    private final int weight;
+    // Number of '\n' characters stored in this subtree, or -1 until a mapped leaf below has been counted
+    private int newlines;
+
+    // Number of words in this subtree, packed with the flags needed to join it (see WordCounts), or -1 until a
+    // mapped leaf below has been counted. Volatile because a plain long may be read half-written (JLS 17.7)
+    private volatile long words;
+
+    // Height of the subtree (0 for leaf nodes)
+    private final int depth;
+
+    private static final byte STARTS_WITH_LOW_SURROGATE = 1;
+    private static final byte ENDS_WITH_HIGH_SURROGATE = 2;
 
     /**
      * Constructs a leaf node with the specified string data.
@@ -29,30 +73,125 @@ public class RopeNode {
      * @param data The string data for the leaf node.
      */
     public RopeNode(String data){
-        this.data = data != null ? data : "";
-        this.weight = this.data.length();
+        this(data != null ? data : "", 0, data != null ? data.length() : 0);
+    }
+
+    /**
+     * Constructs a leaf node holding a copy of a range of characters, using the Latin-1 form when possible.
+     *
+     * @param text The characters to copy.
+     * @param start The start of the range.
+     * @param end The end of the range.
+     */
+    RopeNode(CharSequence text, int start, int end){
+        this.left = null;
+        this.right = null;
+        this.length = end - start;
+        this.depth = 0;
+
+        int count = 0;
+        int wordCount = 0;
+        int pairs = 0;
+        int nonAscii = 0;
+        boolean inWord = false;
+        boolean fitsLatin1 = true;
+        for (int i = start; i < end; i++){
+            char c = text.charAt(i);
+            if (c >= 0x80) nonAscii++;
+            if (c > 0xFF){
+                fitsLatin1 = false;
+                if (Character.isLowSurrogate(c) && i > start && Character.isHighSurrogate(text.charAt(i - 1))) pairs++;
+            }
+            if (c == '\n') count++;
+
+            boolean wordChar = WordCounts.isWordChar(c);
+            if (wordChar && !inWord) wordCount++;
+            inWord = wordChar;
+        }
+        this.newlines = count;
+        this.words = length > 0 ? WordCounts.of(wordCount, text.charAt(start), text.charAt(end - 1)) : WordCounts.EMPTY;
+        this.codePoints = length - pairs;
+        this.utf8Length = fitsLatin1 ? length + nonAscii : Utf8.encodedLength(text, start, end);
+
+        byte edges = 0;
+        if (length > 0 && Character.isLowSurrogate(text.charAt(start))) edges |= STARTS_WITH_LOW_SURROGATE;
+        if (length > 0 && Character.isHighSurrogate(text.charAt(end - 1))) edges |= ENDS_WITH_HIGH_SURROGATE;
+        this.surrogateEdges = edges;
+        this.mapped = null;
+
+        if (fitsLatin1){
+            this.latin1 = new byte[length];
+            this.utf16 = null;
+            for (int i = 0; i < length; i++){
+                latin1[i] = (byte) text.charAt(start + i);
+            }
+        } else {
+            this.latin1 = null;
+            this.utf16 = new char[length];
+            if (text instanceof String string){
+                string.getChars(start, end, utf16, 0);
+            } else {
+                for (int i = 0; i < length; i++){
+                    utf16[i] = text.charAt(start + i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Constructs a leaf node that reads its characters from a read-only buffer holding one Latin-1 byte per
+     * character, such as a slice of a memory-mapped file. The buffer is not copied or read.
+     *
+     * @param view The bytes of the leaf, from index 0 to its limit.
+     */
+    RopeNode(ByteBuffer view){
+        this.left = null;
+        this.right = null;
+        this.latin1 = null;
+        this.utf16 = null;
+        this.mapped = view;
+        this.length = view.limit();
+        this.codePoints = length;
+        this.surrogateEdges = 0;
+        this.utf8Length = -1;
+        this.newlines = -1;
+        this.words = -1;
+        this.depth = 0;
     }
 
     /**
      * Constructs an internal node with the specified left and right child nodes.
+     * A missing child is treated as an empty leaf.
      *
      * @param left The left child node.
      * @param right The right child node.
      */
     public RopeNode(RopeNode left, RopeNode right){
-        this.left = left;
-        this.right = right;
-        this.weight = (left != null) ? left.getTotalWeight() : 0;
+        this.left = left != null ? left : new RopeNode("");
+        this.right = right != null ? right : new RopeNode("");
+        this.latin1 = null;
+        this.utf16 = null;
+        this.mapped = null;
+        this.length = this.left.length + this.right.length;
+        this.codePoints = this.left.codePoints + this.right.codePoints - (splitsSurrogatePair(this.left, this.right) ? 1 : 0);
+        this.utf8Length = this.left.utf8Length < 0 || this.right.utf8Length < 0 ? -1
+                : this.left.utf8Length + this.right.utf8Length + (splitsSurrogatePair(this.left, this.right) ? 2 : 0);
+        this.surrogateEdges = (byte) ((this.left.length > 0 ? this.left.surrogateEdges : this.right.surrogateEdges) & STARTS_WITH_LOW_SURROGATE
+                | (this.right.length > 0 ? this.right.surrogateEdges : this.left.surrogateEdges) & ENDS_WITH_HIGH_SURROGATE);
+        this.newlines = this.left.newlines < 0 || this.right.newlines < 0 ? -1 : this.left.newlines + this.right.newlines;
+        this.words = this.left.words < 0 || this.right.words < 0 ? -1 : WordCounts.join(this.left.words, this.right.words);
+        this.depth = Math.max(this.left.depth, this.right.depth) + 1;
     }
 
     /**
      * Returns the weight of the node.
-     * For leaf nodes, the weight is the length of the string. For internal nodes, the weight is the total weight of its children.
+     * For leaf nodes, the weight is the length of the string. For internal nodes, it is the total weight of the
+     * left subtree.
      *
      * @return The weight of the node.
      */
     public int getWeight(){
-        return this.weight;
+        return isLeaf() ? length : left.length;
     }
 
     /**
@@ -72,13 +211,251 @@ public class RopeNode {
         return left == null && right == null;
     }
 
+    /**
+     * Returns the number of characters stored in this subtree. The value is cached, so this is O(1).
+     *
+     * @return The total weight of the node.
+     */
     public int getTotalWeight(){
-        if (isLeaf()) return data.length();
-        return (this.left != null ? this.left.getTotalWeight() : 0) + (this.right != null ? this.right.getTotalWeight(): 0);
+        return length;
     }
 
+    /**
+     * Returns the number of newline characters stored in this subtree. The value is cached, so this is O(1)
+     * except for the first call over a mapped leaf that has not been counted yet.
+     *
+     * @return The newline count of the node.
+     */
+    public int getNewlineCount(){
+        int count = newlines;
+        if (count < 0){
+            // Counting is deterministic, so racing threads can only ever store the same value
+            if (isLeaf()){
+                count = 0;
+                for (int i = 0; i < length; i++){
+                    if (charAt(i) == '\n') count++;
+                }
+            } else {
+                count = left.getNewlineCount() + right.getNewlineCount();
+            }
+            newlines = count;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of Unicode code points stored in this subtree, counting a surrogate pair as one code point
+     * even when its two halves sit in different leaves. The value is cached, so this is O(1).
+     *
+     * @return The code point count of the node.
+     */
+    public int getCodePointCount(){
+        return codePoints;
+    }
+
+    /**
+     * Returns the number of bytes this subtree takes when encoded as UTF-8, with unpaired surrogates written as
+     * '?'. The value is cached, so this is O(1) except for the first call over a mapped leaf that has not been
+     * counted yet.
+     *
+     * @return The UTF-8 length of the node.
+     */
+    public long getUtf8Length(){
+        long bytes = utf8Length;
+        if (bytes < 0){
+            // Racing threads can only ever store the same value, and the field is volatile so none reads half of it
+            if (isLeaf()){
+                bytes = length;
+                for (int i = 0; i < length; i++){
+                    if (mapped.get(i) < 0) bytes++;
+                }
+            } else {
+                bytes = left.getUtf8Length() + right.getUtf8Length() + (splitsSurrogatePair(left, right) ? 2 : 0);
+            }
+            utf8Length = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns true if the left subtree ends with a high surrogate and the right one starts with a low surrogate,
+     * i.e. joining them completes a surrogate pair.
+     */
+    static boolean splitsSurrogatePair(RopeNode left, RopeNode right){
+        return (left.surrogateEdges & ENDS_WITH_HIGH_SURROGATE) != 0 && (right.surrogateEdges & STARTS_WITH_LOW_SURROGATE) != 0;
+    }
+
+    /**
+     * Returns the number of whitespace-separated words in this subtree. A word that runs across the seam
+     * between two children is counted once. The value is cached, so this is O(1) except for the first call over
+     * a mapped leaf that has not been counted yet.
+     *
+     * @return The word count of the node.
+     */
+    public int getWordCount(){
+        return WordCounts.count(getWordStats());
+    }
+
+    long getWordStats(){
+        long stats = words;
+        if (stats < 0){
+            // Racing threads can only ever store the same value, and the field is volatile so none reads half of it
+            stats = isLeaf() ? WordCounts.of(getText(), 0, length) : WordCounts.join(left.getWordStats(), right.getWordStats());
+            words = stats;
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the height of this subtree, where a leaf has depth 0.
+     *
+     * @return The depth of the node.
+     */
+    public int getDepth(){
+        return depth;
+    }
+
+    /**
+     * Returns the text of a leaf as a new String. Prefer {@link #getText()} or {@link #charAt} where a copy is not needed.
+     *
+     * @return The leaf's text, or an empty string for internal nodes.
+     */
     public String getData(){
-        return data != null ? data : "";
+        if (latin1 != null) return new String(latin1, StandardCharsets.ISO_8859_1);
+        if (utf16 != null) return new String(utf16);
+        if (mapped != null) return getText().toString();
+        return "";
+    }
+
+    /**
+     * Returns true if this is a leaf stored in the one-byte Latin-1 form.
+     *
+     * @return Whether the leaf is stored as Latin-1.
+     */
+    public boolean isLatin1(){
+        return latin1 != null || mapped != null;
+    }
+
+    /**
+     * Returns true if this is a leaf that reads its characters from a buffer outside the heap, such as a mapped file.
+     *
+     * @return Whether the leaf is a buffer view.
+     */
+    public boolean isMapped(){
+        return mapped != null;
+    }
+
+    /**
+     * Returns the character at an index of a leaf.
+     *
+     * @param index The index within the leaf.
+     * @return The character at the index.
+     */
+    char charAt(int index){
+        if (latin1 != null) return (char) (latin1[index] & 0xFF);
+        if (utf16 != null) return utf16[index];
+        return (char) (mapped.get(index) & 0xFF);
+    }
+
+    /**
+     * Returns a read-only view of the leaf's text that does not copy the characters.
+     *
+     * @return The leaf's text.
+     */
+    CharSequence getText(){
+        if (latin1 != null) return new LeafText(latin1, 0, length);
+        if (mapped != null) return new LeafText(mapped, 0, length);
+        return new LeafText(utf16 != null ? utf16 : new char[0], 0, length);
+    }
+
+    /**
+     * Copies characters of a leaf into an array, like {@link String#getChars}.
+     */
+    void getChars(int start, int end, char[] dst, int dstBegin){
+        if (latin1 != null){
+            for (int i = start; i < end; i++){
+                dst[dstBegin++] = (char) (latin1[i] & 0xFF);
+            }
+        } else if (utf16 != null){
+            System.arraycopy(utf16, start, dst, dstBegin, end - start);
+        } else if (mapped != null){
+            for (int i = start; i < end; i++){
+                dst[dstBegin++] = (char) (mapped.get(i) & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * Appends the text of a leaf to a StringBuilder.
+     */
+    void appendTo(StringBuilder builder){
+        if (latin1 != null){
+            builder.append(new String(latin1, StandardCharsets.ISO_8859_1));
+        } else if (utf16 != null){
+            builder.append(utf16, 0, length);
+        } else if (mapped != null){
+            for (int i = 0; i < length; i++){
+                builder.append((char) (mapped.get(i) & 0xFF));
+            }
+        }
+    }
+
+    /**
+     * Returns a new leaf holding the characters in [start, end) of this leaf.
+     * Slices of a buffer view are narrower views of the same buffer, so nothing is copied onto the heap.
+     */
+    RopeNode slice(int start, int end){
+        if (mapped != null){
+            return new RopeNode(mapped.slice(start, end - start));
+        }
+        return new RopeNode(getText(), start, end);
+    }
+
+    /**
+     * Returns a new leaf with a string inserted at the given index of this leaf.
+     */
+    RopeNode insertText(int index, CharSequence text){
+        StringBuilder builder = new StringBuilder(length + text.length());
+        CharSequence data = getText();
+        builder.append(data, 0, index).append(text).append(data, index, length);
+        return new RopeNode(builder, 0, builder.length());
+    }
+
+    /**
+     * Returns a new leaf with the characters in [start, end) removed from this leaf.
+     */
+    RopeNode deleteRange(int start, int end){
+        StringBuilder builder = new StringBuilder(length - (end - start));
+        CharSequence data = getText();
+        builder.append(data, 0, start).append(data, end, length);
+        return new RopeNode(builder, 0, builder.length());
+    }
+
+    /**
+     * Returns a new leaf holding the text of this leaf followed by the text of another leaf.
+     */
+    RopeNode concatLeaf(RopeNode other){
+        StringBuilder builder = new StringBuilder(length + other.length);
+        builder.append(getText()).append(other.getText());
+        return new RopeNode(builder, 0, builder.length());
+    }
+
+    /**
+     * Returns the approximate number of bytes this node and its own character array take on the heap,
+     * not counting its children.
+     *
+     * @return The shallow size of the node in bytes.
+     */
+    long shallowSizeInBytes(){
+        long size = NODE_BYTES;
+        if (latin1 != null) size += align(ARRAY_HEADER_BYTES + latin1.length);
+        if (utf16 != null) size += align(ARRAY_HEADER_BYTES + 2L * utf16.length);
+        if (mapped != null) size += BUFFER_VIEW_BYTES;
+        return size;
+    }
+
+    private static long align(long bytes){
+        return (bytes + 7) & ~7L;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,143 @@
+package com.texteditor.editor;
+
+import java.util.Arrays;
+
+/**
+ * A snapshot of the shape of a Rope's tree, produced by {@link Rope#stats()}: its depth, how many nodes and leaves
+ * it has, how the leaf sizes are spread, roughly how much heap it retains and how far it is from a perfectly
+ * balanced tree. Sizes are estimates for a 64-bit JVM with compressed object pointers, like
+ * {@link RopeMemoryReport}.
+ * <p>
+ * Leaf sizes are counted in power-of-two buckets: bucket 0 holds empty leaves and bucket i holds leaves of
+ * [2^(i-1), 2^i) characters, with every leaf of {@code 2^(BUCKETS-2)} characters or more in the last bucket.
+ */
+public final class RopeStats {
+    public static final int BUCKETS = 22;
+
+    private final int depth;
+    private final int minLeafSize;
+    private final int[] leafSizeHistogram = new int[BUCKETS];
+    private long characters;
+    private long estimatedBytes;
+    private int internalNodes;
+    private int leaves;
+    private int smallLeaves;
+
+    RopeStats(int depth, LeafPolicy policy) {
+        this.depth = depth;
+        this.minLeafSize = policy.getMinLeafSize();
+    }
+
+    void addNode(RopeNode node) {
+        estimatedBytes += node.shallowSizeInBytes();
+
+        if (!node.isLeaf()) {
+            internalNodes++;
+            return;
+        }
+        addLeaf(node.getTotalWeight());
+    }
+
+    // Counts a leaf of the given size; the gap buffer under the caret is counted this way too
+    void addLeaf(int size) {
+        characters += size;
+        leaves++;
+        if (size < minLeafSize) {
+            smallLeaves++;
+        }
+        leafSizeHistogram[bucketOf(size)]++;
+    }
+
+    void addBytes(long bytes) {
+        estimatedBytes += bytes;
+    }
+
+    /**
+     * Returns the histogram bucket a leaf of the given size is counted in.
+     *
+     * @param size The number of characters in the leaf.
+     * @return The bucket index, between 0 and BUCKETS - 1.
+     */
+    public static int bucketOf(int size) {
+        return Math.min(32 - Integer.numberOfLeadingZeros(size), BUCKETS - 1);
+    }
+
+    /**
+     * Returns the depth of the tree, where a single leaf has depth 0.
+     *
+     * @return The depth of the root node.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getCharacters() {
+        return characters;
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public int getInternalNodes() {
+        return internalNodes;
+    }
+
+    public int getLeaves() {
+        return leaves;
+    }
+
+    /**
+     * Returns the number of leaves shorter than the leaf policy's minimum size. Many small leaves mean the
+     * tree spends more on nodes than on text and would benefit from {@link Rope#compact()}.
+     *
+     * @return The number of undersized leaves.
+     */
+    public int getSmallLeaves() {
+        return smallLeaves;
+    }
+
+    /**
+     * Returns the share of leaves shorter than the leaf policy's minimum size.
+     *
+     * @return The fraction of undersized leaves, from 0 to 1.
+     */
+    public double getSmallLeafFraction() {
+        return leaves == 0 ? 0 : (double) smallLeaves / leaves;
+    }
+
+    public double getAverageLeafSize() {
+        return leaves == 0 ? 0 : (double) characters / leaves;
+    }
+
+    /**
+     * Returns the number of leaves in each size bucket, see {@link #bucketOf(int)}.
+     *
+     * @return A copy of the histogram.
+     */
+    public int[] getLeafSizeHistogram() {
+        return leafSizeHistogram.clone();
+    }
+
+    /**
+     * Returns how much deeper the tree is than a perfectly balanced tree with the same leaves, i.e. the depth
+     * divided by ceil(log2(leaves)). An AVL-balanced tree stays below about 1.44.
+     *
+     * @return The imbalance ratio, 1 for a perfectly balanced tree.
+     */
+    public double getImbalanceRatio() {
+        int optimalDepth = 32 - Integer.numberOfLeadingZeros(Math.max(leaves - 1, 0));
+        return optimalDepth == 0 ? 1 : (double) depth / optimalDepth;
+    }
+
+    @Override
+    public String toString() {
+        int lastBucket = BUCKETS - 1;
+        while (lastBucket > 0 && leafSizeHistogram[lastBucket] == 0) {
+            lastBucket--;
+        }
+        return String.format("%d chars in %d leaves (%d below the minimum size) and %d internal nodes, depth %d (imbalance %.2f), ~%d heap bytes, leaf sizes %s",
+                characters, leaves, smallLeaves, internalNodes, depth, getImbalanceRatio(), estimatedBytes,
+                Arrays.toString(Arrays.copyOf(leafSizeHistogram, lastBucket + 1)));
+    }
+}
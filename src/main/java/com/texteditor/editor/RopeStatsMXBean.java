@@ -0,0 +1,50 @@
+package com.texteditor.editor;
+
+/**
+ * The JMX view of a {@link RopeMonitor}: the latest {@link RopeStats} sample, the thresholds above which the
+ * tree is maintained automatically, and operations to sample or maintain it by hand (e.g. from JConsole).
+ */
+public interface RopeStatsMXBean {
+    int getDepth();
+
+    long getCharacters();
+
+    long getEstimatedBytes();
+
+    int getInternalNodes();
+
+    int getLeaves();
+
+    int getSmallLeaves();
+
+    double getSmallLeafFraction();
+
+    double getImbalanceRatio();
+
+    int[] getLeafSizeHistogram();
+
+    double getMaxImbalanceRatio();
+
+    void setMaxImbalanceRatio(double maxImbalanceRatio);
+
+    double getMaxSmallLeafFraction();
+
+    void setMaxSmallLeafFraction(double maxSmallLeafFraction);
+
+    boolean isAutoMaintenance();
+
+    void setAutoMaintenance(boolean autoMaintenance);
+
+    long getRebalanceCount();
+
+    long getCompactionCount();
+
+    /**
+     * Takes a new sample right away instead of waiting for the next scheduled one.
+     */
+    void sample();
+
+    void rebalance();
+
+    void compact();
+}
@@ -0,0 +1,325 @@
+package com.texteditor.editor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * A mutable text document that the editor, the commands and the file I/O work against, so the data structure
+ * behind it can be swapped. {@link Rope} and {@link PieceTable} are the two implementations.
+ * <p>
+ * Offsets are in chars, lines are zero-based and separated by '\n', and every range is half-open [start, end).
+ * The default methods are written in terms of the abstract ones; implementations override them where they can
+ * do better.
+ */
+public interface TextBuffer extends CharSequence {
+
+    /**
+     * Inserts a string at the given offset.
+     *
+     * @param index The offset where the string should be inserted.
+     * @param text The string to insert.
+     * @throws IndexOutOfBoundsException If the offset is out of bounds.
+     * @throws UnsupportedOperationException If the buffer is read-only.
+     */
+    void insert(int index, String text);
+
+    /**
+     * Deletes the characters in [start, end).
+     *
+     * @param start The start of the range.
+     * @param end The end of the range.
+     * @throws IndexOutOfBoundsException If the range is invalid.
+     * @throws UnsupportedOperationException If the buffer is read-only.
+     */
+    void delete(int start, int end);
+
+    /**
+     * Copies the characters in a range into a caller-supplied array, like {@link String#getChars}.
+     *
+     * @param start The start of the range.
+     * @param end The end of the range.
+     * @param dst The destination array.
+     * @param dstBegin The index in dst to copy the first character to.
+     * @throws IndexOutOfBoundsException If the range is invalid or does not fit in dst.
+     */
+    void charsInRange(int start, int end, char[] dst, int dstBegin);
+
+    /**
+     * Returns an iterator over the text in document order, in whatever pieces the buffer stores it.
+     * The chunks are views where possible, so iterating does not copy the document.
+     *
+     * @return An iterator over non-empty chunks of the text.
+     */
+    Iterator<CharSequence> chunks();
+
+    /**
+     * Returns the number of lines. An empty buffer has one (empty) line, and a trailing newline starts
+     * a new, empty last line.
+     *
+     * @return The number of lines.
+     */
+    int lineCount();
+
+    /**
+     * Returns the number of words, i.e. maximal runs of non-whitespace characters. Implementations keep this
+     * count up to date as the text is edited, so it is cheap enough to show after every keystroke.
+     *
+     * @return The number of words.
+     */
+    int wordCount();
+
+    /**
+     * Returns the offset of the first character of a line.
+     *
+     * @param line The zero-based line number.
+     * @return The offset where the line starts.
+     * @throws IndexOutOfBoundsException If the line does not exist.
+     */
+    int lineStartOffset(int line);
+
+    /**
+     * Returns the line that contains the given offset. The offset of a newline belongs to the line it ends.
+     *
+     * @param offset The offset, between 0 and the length of the buffer.
+     * @return The zero-based line number.
+     * @throws IndexOutOfBoundsException If the offset is out of bounds.
+     */
+    int lineOf(int offset);
+
+    /**
+     * Returns a read-only view of the current text that later edits do not affect.
+     *
+     * @return An immutable snapshot of this buffer.
+     */
+    TextBuffer snapshot();
+
+    /**
+     * Replaces the whole text of this buffer with the text of another one, typically an earlier snapshot
+     * or a freshly opened file.
+     *
+     * @param other The buffer whose text this buffer should hold.
+     * @throws UnsupportedOperationException If this buffer is read-only.
+     */
+    void restore(TextBuffer other);
+
+    boolean isReadOnly();
+
+    /**
+     * Returns the characters in [start, end) as a String.
+     *
+     * @param start The start of the range.
+     * @param end The end of the range.
+     * @return The text in the range.
+     * @throws IndexOutOfBoundsException If the range is invalid.
+     */
+    default String getText(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("Invalid index range: " + start + ", " + end);
+        }
+
+        char[] chars = new char[end - start];
+        charsInRange(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Returns the offset just past the last character of a line, excluding its newline.
+     *
+     * @param line The zero-based line number.
+     * @return The offset where the line ends.
+     * @throws IndexOutOfBoundsException If the line does not exist.
+     */
+    default int lineEndOffset(int line) {
+        if (line < 0 || line >= lineCount()) {
+            throw new IndexOutOfBoundsException("Line out of bounds: " + line);
+        }
+
+        return line == lineCount() - 1 ? length() : lineStartOffset(line + 1) - 1;
+    }
+
+    /**
+     * Returns the text of a line, without its newline.
+     *
+     * @param line The zero-based line number.
+     * @return The text of the line.
+     * @throws IndexOutOfBoundsException If the line does not exist.
+     */
+    default String line(int line) {
+        return getText(lineStartOffset(line), lineEndOffset(line));
+    }
+
+    /**
+     * Returns the number of bytes the text takes when encoded as UTF-8, with unpaired surrogates written as '?'.
+     * The default encodes nothing but still reads every chunk, so it is O(n).
+     *
+     * @return The UTF-8 length in bytes.
+     */
+    default long utf8Length() {
+        long bytes = 0;
+        boolean highSurrogateBefore = false;
+        for (Iterator<CharSequence> it = chunks(); it.hasNext(); ) {
+            CharSequence chunk = it.next();
+            bytes += Utf8.encodedLength(chunk, 0, chunk.length());
+            // A pair cut by the chunk boundary was counted as two lone one-byte surrogates
+            if (highSurrogateBefore && Character.isLowSurrogate(chunk.charAt(0))) {
+                bytes += 2;
+            }
+            highSurrogateBefore = Character.isHighSurrogate(chunk.charAt(chunk.length() - 1));
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the end of the grapheme cluster that starts at an offset, i.e. where the caret lands when it moves
+     * one step right. Only the text around the offset is read.
+     *
+     * @param offset A cluster boundary, between 0 and the length of the buffer.
+     * @return The next boundary, or the length of the buffer at its end.
+     * @throws IndexOutOfBoundsException If the offset is out of bounds.
+     */
+    default int nextGraphemeBoundary(int offset) {
+        if (offset < 0 || offset > length()) {
+            throw new IndexOutOfBoundsException("Offset out of bounds: " + offset);
+        }
+
+        for (int window = 64; offset < length(); window *= 4) {
+            int end = (int) Math.min(length(), (long) offset + window);
+            int next = offset + Graphemes.next(getText(offset, end), 0);
+            if (next < end || end == length()) {
+                return next;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the start of the grapheme cluster that ends at an offset, i.e. where the caret lands when it moves
+     * one step left. Only the text back to the nearest whitespace is read, as whitespace always starts a cluster.
+     *
+     * @param offset A cluster boundary, between 0 and the length of the buffer.
+     * @return The previous boundary, or 0 at the start of the buffer.
+     * @throws IndexOutOfBoundsException If the offset is out of bounds.
+     */
+    default int previousGraphemeBoundary(int offset) {
+        if (offset < 0 || offset > length()) {
+            throw new IndexOutOfBoundsException("Offset out of bounds: " + offset);
+        }
+
+        for (int window = 64; offset > 0; window *= 4) {
+            int start = Math.max(0, offset - window);
+            String text = getText(start, offset);
+
+            int safe = text.length() - 1;
+            while (safe >= 0 && !(Character.isWhitespace(text.charAt(safe)) && !(safe > 0 && text.charAt(safe - 1) == '\r'))) {
+                safe--;
+            }
+            // Give up looking for whitespace in very long runs; the scan falls into step after a cluster or two
+            if (safe < 0 && (start == 0 || window >= 4096)) {
+                safe = 0;
+            }
+            if (safe >= 0) {
+                return start + safe + Graphemes.previous(text.substring(safe), text.length() - safe);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Replaces every match with the same string.
+     *
+     * @param matchOffsets The start offsets of the matches, sorted and non-overlapping.
+     * @param matchLength The length of every match.
+     * @param replacement The string each match is replaced with.
+     * @throws IllegalArgumentException If the offsets are not sorted or the matches overlap.
+     * @throws IndexOutOfBoundsException If a match lies outside the buffer.
+     */
+    default void replaceAll(int[] matchOffsets, int matchLength, String replacement) {
+        String[] replacements = new String[matchOffsets.length];
+        Arrays.fill(replacements, replacement);
+        replaceAll(matchOffsets, matchLength, replacements);
+    }
+
+    /**
+     * Replaces every match with its own string, see {@link #applyEdits}.
+     *
+     * @param matchOffsets The start offsets of the matches, sorted and non-overlapping.
+     * @param matchLength The length of every match.
+     * @param replacements The string each match is replaced with, one per offset.
+     * @throws IllegalArgumentException If the offsets are not sorted, the matches overlap,
+     *                                  or there is not one replacement per offset.
+     * @throws IndexOutOfBoundsException If a match lies outside the buffer.
+     */
+    default void replaceAll(int[] matchOffsets, int matchLength, String[] replacements) {
+        if (matchOffsets.length != replacements.length) {
+            throw new IllegalArgumentException("Every match needs a replacement.");
+        }
+
+        int[] deleteLengths = new int[matchOffsets.length];
+        Arrays.fill(deleteLengths, matchLength);
+        applyEdits(matchOffsets, deleteLengths, replacements);
+    }
+
+    /**
+     * Applies a batch of edits at once, e.g. the same change at every cursor of a multi-cursor selection.
+     * Each edit deletes a range and inserts a string at its start. All offsets refer to the text before any of
+     * the edits, so callers do not have to adjust them for the edits before. The default applies the edits one by
+     * one from the last to the first, so earlier offsets stay valid.
+     *
+     * @param offsets The start offset of each edit, sorted. Edits may share an offset if the earlier ones only
+     *                insert, in which case their strings end up in the same order.
+     * @param deleteLengths The number of characters each edit removes.
+     * @param inserts The string each edit inserts; null inserts nothing.
+     * @throws IllegalArgumentException If the arrays differ in length, or the edits are not sorted or overlap.
+     * @throws IndexOutOfBoundsException If an edit lies outside the buffer.
+     */
+    default void applyEdits(int[] offsets, int[] deleteLengths, String[] inserts) {
+        if (offsets.length != deleteLengths.length || offsets.length != inserts.length) {
+            throw new IllegalArgumentException("Every edit needs an offset, a delete length and an insert.");
+        }
+        int previousEnd = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            if (offsets[i] < previousEnd) {
+                throw new IllegalArgumentException("Edits must be sorted and must not overlap.");
+            }
+            if (deleteLengths[i] < 0 || offsets[i] + deleteLengths[i] > length()) {
+                throw new IndexOutOfBoundsException("Edit out of bounds at offset " + offsets[i]);
+            }
+            previousEnd = offsets[i] + deleteLengths[i];
+        }
+
+        for (int i = offsets.length - 1; i >= 0; i--) {
+            if (deleteLengths[i] > 0) {
+                delete(offsets[i], offsets[i] + deleteLengths[i]);
+            }
+            if (inserts[i] != null && !inserts[i].isEmpty()) {
+                insert(offsets[i], inserts[i]);
+            }
+        }
+    }
+
+    /**
+     * Appends the whole text to the given Appendable, one chunk at a time.
+     *
+     * @param out The destination.
+     * @return The destination, for chaining.
+     * @throws IOException If the destination fails to append.
+     */
+    default <A extends Appendable> A appendTo(A out) throws IOException {
+        for (Iterator<CharSequence> it = chunks(); it.hasNext(); ) {
+            out.append(it.next());
+        }
+        return out;
+    }
+
+    /**
+     * Writes the whole text to the given Writer, one chunk at a time.
+     *
+     * @param writer The destination.
+     * @throws IOException If writing fails.
+     */
+    default void writeTo(Writer writer) throws IOException {
+        appendTo(writer);
+    }
+}
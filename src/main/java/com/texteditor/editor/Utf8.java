@@ -0,0 +1,36 @@
+package com.texteditor.editor;
+
+/**
+ * Counts UTF-8 encoded lengths the way the save path writes them: a surrogate pair takes four bytes, and an
+ * unpaired surrogate is replaced by a one-byte '?', as a {@link java.nio.charset.CharsetEncoder} set to
+ * REPLACE does.
+ * <p>
+ * A range that starts or ends between the two halves of a pair counts each lone half as one byte; joining it
+ * with the neighbouring range then adds two bytes, see {@link RopeNode#splitsSurrogatePair}.
+ */
+final class Utf8 {
+    private Utf8() {
+    }
+
+    static long encodedLength(CharSequence text, int start, int end) {
+        long bytes = 0;
+        for (int i = start; i < end; ) {
+            int length = charLength(text, i, end);
+            bytes += length;
+            i += length == 4 ? 2 : 1;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of bytes the character at an index of [start, end) is encoded to; a high surrogate
+     * followed by its low half counts for the whole pair.
+     */
+    static int charLength(CharSequence text, int index, int end) {
+        char c = text.charAt(index);
+        if (c < 0x80) return 1;
+        if (c < 0x800) return 2;
+        if (!Character.isSurrogate(c)) return 3;
+        return Character.isHighSurrogate(c) && index + 1 < end && Character.isLowSurrogate(text.charAt(index + 1)) ? 4 : 1;
+    }
+}
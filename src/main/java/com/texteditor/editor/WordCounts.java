@@ -0,0 +1,67 @@
+package com.texteditor.editor;
+
+/**
+ * Packs the word count of a run of text into a long, together with what is needed to join it with the runs
+ * around it: whether the run is empty, and whether it starts and ends inside a word. A word is a maximal run of
+ * non-whitespace characters, as in {@link Rope#wordStart(int)}.
+ * <p>
+ * Two runs joined end to end hold the sum of their words, minus one when a word runs across the seam, so
+ * tree nodes can keep the count of their subtree and combine their children's counts in O(1).
+ */
+final class WordCounts {
+    static final long EMPTY = 0;
+
+    private static final long NON_EMPTY = 1;
+    private static final long STARTS_IN_WORD = 2;
+    private static final long ENDS_IN_WORD = 4;
+    private static final int FLAG_BITS = 3;
+
+    private WordCounts() {
+    }
+
+    static boolean isWordChar(char c) {
+        return !Character.isWhitespace(c);
+    }
+
+    /**
+     * Counts the words in [start, end) of a text by scanning it.
+     */
+    static long of(CharSequence text, int start, int end) {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = start; i < end; i++) {
+            boolean wordChar = isWordChar(text.charAt(i));
+            if (wordChar && !inWord) words++;
+            inWord = wordChar;
+        }
+        return start < end ? of(words, text.charAt(start), text.charAt(end - 1)) : EMPTY;
+    }
+
+    /**
+     * Packs the word count of a non-empty run with its first and last characters.
+     */
+    static long of(int words, char first, char last) {
+        long stats = (long) words << FLAG_BITS | NON_EMPTY;
+        if (isWordChar(first)) stats |= STARTS_IN_WORD;
+        if (isWordChar(last)) stats |= ENDS_IN_WORD;
+        return stats;
+    }
+
+    /**
+     * Returns the counts of the text of left followed by the text of right.
+     */
+    static long join(long left, long right) {
+        if ((left & NON_EMPTY) == 0) return right;
+        if ((right & NON_EMPTY) == 0) return left;
+
+        long words = (left >>> FLAG_BITS) + (right >>> FLAG_BITS);
+        if ((left & ENDS_IN_WORD) != 0 && (right & STARTS_IN_WORD) != 0) {
+            words--;
+        }
+        return words << FLAG_BITS | NON_EMPTY | (left & STARTS_IN_WORD) | (right & ENDS_IN_WORD);
+    }
+
+    static int count(long stats) {
+        return (int) (stats >>> FLAG_BITS);
+    }
+}
@@ -3,4 +3,39 @@ package com.texteditor.editor.commands;
 public interface Command {
     void execute();
     void undo();
+
+    /**
+     * Tries to fold a command that has just been executed into this one, so that both are undone and redone as a
+     * single step. {@link CommandManager} only asks the most recent command, and only while its merge window is
+     * open. Commands that cannot merge keep the default, which refuses.
+     *
+     * @param next the command executed right after this one
+     * @return true if this command now covers next as well
+     */
+    default boolean mergeWith(Command next) {
+        return false;
+    }
+
+    /**
+     * Tells, without changing anything, whether {@link #mergeWith(Command)} will accept a command once it has been
+     * executed. It is asked before next runs, so an undo tree can snapshot the current version first when a new one
+     * is about to start, so mergeWith must then accept next. A command that overrides mergeWith should override this
+     * as well; the default refuses.
+     *
+     * @param next the command about to be executed right after this one
+     * @return true if mergeWith will accept next after it has run
+     */
+    default boolean canMergeWith(Command next) {
+        return false;
+    }
+
+    /**
+     * Returns a rough estimate of the heap this command keeps alive, mostly the text it holds for undo.
+     * {@link CommandManager} adds these up to keep the history within its memory budget.
+     *
+     * @return the estimated size in bytes
+     */
+    default long estimatedBytes() {
+        return 64;
+    }
 }
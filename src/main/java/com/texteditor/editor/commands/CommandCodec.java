@@ -0,0 +1,208 @@
+package com.texteditor.editor.commands;
+
+import com.texteditor.editor.TextBuffer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes executed commands to a compact binary form and reads them back. Each command starts with a one-byte tag,
+ * offsets are ints and texts are stored as modified UTF-8, which takes one byte per ASCII char and keeps unpaired
+ * surrogates intact.
+ * <p>
+ * Commands refer to the buffer they edit, which cannot be written; the caller passes a list of buffers and only
+ * the index of a command's buffer in that list is stored. Writing adds unknown buffers to the list, and reading
+ * needs the same list back.
+ */
+final class CommandCodec {
+    private static final byte INSERT = 1;
+    private static final byte DELETE = 2;
+    private static final byte REPLACE_ALL = 3;
+    private static final byte COMPOUND = 4;
+    private static final byte MULTI_EDIT = 5;
+
+    // writeUTF is limited to 65535 bytes, and a char takes at most three
+    private static final int TEXT_CHUNK = 65535 / 3;
+
+    private CommandCodec() {
+    }
+
+    /**
+     * Tells whether a command can be written: it must be one of the built-in commands and have been executed.
+     */
+    static boolean canWrite(Command command) {
+        if (command instanceof InsertCommand) {
+            return true;
+        }
+        if (command instanceof DeleteCommand delete) {
+            return delete.getDeletedText() != null;
+        }
+        if (command instanceof ReplaceAllCommand replaceAll) {
+            return replaceAll.getReplacedTexts() != null;
+        }
+        if (command instanceof MultiEditCommand multiEdit) {
+            return multiEdit.getDeletedTexts() != null;
+        }
+        if (command instanceof CompoundCommand compound) {
+            for (Command child : compound.getCommands()) {
+                if (!canWrite(child)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    static void write(DataOutput out, Command command, List<TextBuffer> buffers) throws IOException {
+        if (command instanceof InsertCommand insert) {
+            out.writeByte(INSERT);
+            out.writeShort(bufferIndex(insert.getBuffer(), buffers));
+            out.writeInt(insert.getCursorPosition());
+            writeText(out, insert.getInsertedText());
+        } else if (command instanceof DeleteCommand delete) {
+            out.writeByte(DELETE);
+            out.writeShort(bufferIndex(delete.getBuffer(), buffers));
+            out.writeInt(delete.getStartPos());
+            writeText(out, delete.getDeletedText());
+        } else if (command instanceof ReplaceAllCommand replaceAll) {
+            out.writeByte(REPLACE_ALL);
+            out.writeShort(bufferIndex(replaceAll.getBuffer(), buffers));
+            out.writeInt(replaceAll.getMatchLength());
+            writeText(out, replaceAll.getReplacement());
+
+            int[] offsets = replaceAll.getMatchOffsets();
+            String[] texts = replaceAll.getReplacedTexts();
+            out.writeInt(offsets.length);
+            for (int i = 0; i < offsets.length; i++) {
+                out.writeInt(offsets[i]);
+                // A text equal to the previous one, the usual case, is written as a single flag
+                writeRepeatable(out, texts, i);
+            }
+        } else if (command instanceof MultiEditCommand multiEdit) {
+            out.writeByte(MULTI_EDIT);
+            out.writeShort(bufferIndex(multiEdit.getBuffer(), buffers));
+
+            int[] offsets = multiEdit.getOffsets();
+            int[] deleteLengths = multiEdit.getDeleteLengths();
+            String[] inserts = multiEdit.getInserts();
+            String[] deletedTexts = multiEdit.getDeletedTexts();
+            out.writeInt(offsets.length);
+            for (int i = 0; i < offsets.length; i++) {
+                out.writeInt(offsets[i]);
+                out.writeInt(deleteLengths[i]);
+                writeRepeatable(out, inserts, i);
+                writeRepeatable(out, deletedTexts, i);
+            }
+        } else if (command instanceof CompoundCommand compound) {
+            out.writeByte(COMPOUND);
+            out.writeInt(compound.getCommands().size());
+            for (Command child : compound.getCommands()) {
+                write(out, child, buffers);
+            }
+        } else {
+            throw new IllegalArgumentException("Cannot write command: " + command.getClass().getName());
+        }
+    }
+
+    static Command read(DataInput in, List<TextBuffer> buffers) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case INSERT -> {
+                TextBuffer buffer = buffers.get(in.readUnsignedShort());
+                int position = in.readInt();
+                return new InsertCommand(buffer, readText(in), position);
+            }
+            case DELETE -> {
+                TextBuffer buffer = buffers.get(in.readUnsignedShort());
+                int start = in.readInt();
+                return new DeleteCommand(buffer, start, readText(in));
+            }
+            case REPLACE_ALL -> {
+                TextBuffer buffer = buffers.get(in.readUnsignedShort());
+                int matchLength = in.readInt();
+                String replacement = readText(in);
+
+                int count = in.readInt();
+                int[] offsets = new int[count];
+                String[] texts = new String[count];
+                Map<String, String> distinctTexts = new HashMap<>();
+                for (int i = 0; i < count; i++) {
+                    offsets[i] = in.readInt();
+                    texts[i] = readRepeatable(in, texts, i, distinctTexts);
+                }
+                return new ReplaceAllCommand(buffer, offsets, matchLength, replacement, texts);
+            }
+            case MULTI_EDIT -> {
+                TextBuffer buffer = buffers.get(in.readUnsignedShort());
+                int count = in.readInt();
+                int[] offsets = new int[count];
+                int[] deleteLengths = new int[count];
+                String[] inserts = new String[count];
+                String[] deletedTexts = new String[count];
+                Map<String, String> distinctTexts = new HashMap<>();
+                for (int i = 0; i < count; i++) {
+                    offsets[i] = in.readInt();
+                    deleteLengths[i] = in.readInt();
+                    inserts[i] = readRepeatable(in, inserts, i, distinctTexts);
+                    deletedTexts[i] = readRepeatable(in, deletedTexts, i, distinctTexts);
+                }
+                return new MultiEditCommand(buffer, offsets, deleteLengths, inserts, deletedTexts);
+            }
+            case COMPOUND -> {
+                int count = in.readInt();
+                List<Command> commands = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    commands.add(read(in, buffers));
+                }
+                return new CompoundCommand(commands);
+            }
+            default -> throw new IOException("Unknown command tag: " + tag);
+        }
+    }
+
+    private static int bufferIndex(TextBuffer buffer, List<TextBuffer> buffers) {
+        for (int i = 0; i < buffers.size(); i++) {
+            if (buffers.get(i) == buffer) {
+                return i;
+            }
+        }
+        buffers.add(buffer);
+        return buffers.size() - 1;
+    }
+
+    // Writes the text at an index of an array, or only a flag if it equals the text before it
+    private static void writeRepeatable(DataOutput out, String[] texts, int index) throws IOException {
+        boolean repeated = index > 0 && texts[index].equals(texts[index - 1]);
+        out.writeBoolean(repeated);
+        if (!repeated) {
+            writeText(out, texts[index]);
+        }
+    }
+
+    private static String readRepeatable(DataInput in, String[] texts, int index, Map<String, String> distinctTexts)
+            throws IOException {
+        return in.readBoolean() ? texts[index - 1] : distinctTexts.computeIfAbsent(readText(in), t -> t);
+    }
+
+    private static void writeText(DataOutput out, String text) throws IOException {
+        out.writeInt(text.length());
+        for (int i = 0; i < text.length(); i += TEXT_CHUNK) {
+            out.writeUTF(text.substring(i, Math.min(text.length(), i + TEXT_CHUNK)));
+        }
+    }
+
+    private static String readText(DataInput in) throws IOException {
+        int length = in.readInt();
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            text.append(in.readUTF());
+        }
+        return text.toString();
+    }
+}
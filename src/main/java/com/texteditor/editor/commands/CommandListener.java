@@ -0,0 +1,31 @@
+package com.texteditor.editor.commands;
+
+/**
+ * Listener interface for the commands a {@link CommandManager} applies to the text, e.g. to journal them.
+ * Every change to the text is reported once, in order: a command that is merged into the previous one is still
+ * reported on its own when it runs, and a jump in the undo tree is reported as the steps undone and redone
+ * on the way.
+ */
+public interface CommandListener {
+
+    /**
+     * Called after a command has been executed for the first time.
+     *
+     * @param command the executed command
+     */
+    void onExecuted(Command command);
+
+    /**
+     * Called after a step has been undone.
+     *
+     * @param command the undone command
+     */
+    void onUndone(Command command);
+
+    /**
+     * Called after a step has been redone.
+     *
+     * @param command the redone command
+     */
+    void onRedone(Command command);
+}
@@ -1,57 +1,553 @@
 package com.texteditor.editor.commands;
 
-import java.util.Stack;
+import com.texteditor.editor.TextBuffer;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 
 /**
  * The CommandManager class is responsible for managing the execution of commands.
  * It supports undo and redo functionality by maintaining stacks for undo and redo commands.
+ * <p>
+ * Edits that follow each other closely are coalesced: a command executed within the merge window of the previous
+ * one is offered to it through {@link Command#mergeWith(Command)}, so a burst of typing or backspacing becomes a
+ * single undo step instead of one per character. Several edits can also be grouped explicitly with
+ * {@link #beginCompound()} and {@link #endCompound()}.
+ * <p>
+ * The history is kept within a memory budget, measured with {@link Command#estimatedBytes()}. Once it is exceeded,
+ * the oldest steps are written to a spill file and only read back when undo or redo reaches them. The most recent
+ * step of each stack always stays in memory, and commands other than the built-in ones are never spilled.
+ * <p>
+ * A CommandManager created for a buffer keeps an {@link UndoTree} instead of the two stacks: an edit after an undo
+ * starts a new branch rather than dropping the redo history, and undo, redo and {@link #jumpTo} restore a snapshot
+ * in O(1) rather than running commands. The same memory budget applies to the tree, counting the text its
+ * snapshots keep alive: once it is exceeded, old snapshots are dropped and rebuilt by running commands when needed,
+ * and then the oldest branches and history are pruned, see {@link UndoTree}.
  */
-public class CommandManager {
-    private final Stack<Command> undoStack = new Stack<>();
-    private final Stack<Command> redoStack = new Stack<>();
+public class CommandManager implements AutoCloseable {
+    public static final long DEFAULT_MERGE_WINDOW_MILLIS = 1000;
+    public static final long DEFAULT_MEMORY_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    private final History undoHistory;
+    private final History redoHistory;
+    private final TextBuffer treeBuffer; // The buffer the undo tree tracks, or null for a linear history
+    private final long mergeWindowNanos;
+    private final long memoryBudgetBytes;
+
+    private UndoTree undoTree;
+    private CommandListener commandListener;
+    private long lastExecuteNanos;
+    private boolean mergeable;
+
+    // The step being built between beginCompound() and endCompound(), and how deeply those calls are nested
+    private CompoundCommand compound;
+    private int compoundDepth;
+
+    public CommandManager() {
+        this(DEFAULT_MERGE_WINDOW_MILLIS);
+    }
+
+    /**
+     * Creates a CommandManager with the given merge window.
+     *
+     * @param mergeWindowMillis how long after a command the next one may still be merged into it; 0 disables merging
+     */
+    public CommandManager(long mergeWindowMillis) {
+        this(mergeWindowMillis, DEFAULT_MEMORY_BUDGET_BYTES, Path.of(System.getProperty("java.io.tmpdir")));
+    }
 
     /**
-     * Executes a given command and stores it in the undo stack. Clears the redo stack.
+     * Creates a CommandManager with the given merge window and memory budget.
+     *
+     * @param mergeWindowMillis how long after a command the next one may still be merged into it; 0 disables merging
+     * @param memoryBudgetBytes how much memory the undo and redo history may take before old steps are spilled
+     * @param spillDirectory the directory spill files are created in
+     * @throws IllegalArgumentException if the budget is not positive
+     */
+    public CommandManager(long mergeWindowMillis, long memoryBudgetBytes, Path spillDirectory) {
+        this(mergeWindowMillis, memoryBudgetBytes, spillDirectory, null);
+    }
+
+    /**
+     * Creates a CommandManager that keeps an undo tree of a buffer. Every command it executes must edit that buffer.
+     *
+     * @param buffer the buffer whose versions are kept
+     */
+    public CommandManager(TextBuffer buffer) {
+        this(buffer, DEFAULT_MERGE_WINDOW_MILLIS);
+    }
+
+    /**
+     * Creates a CommandManager that keeps an undo tree of a buffer, with the given merge window.
+     *
+     * @param buffer the buffer whose versions are kept
+     * @param mergeWindowMillis how long after a command the next one may still be merged into it; 0 disables merging
+     */
+    public CommandManager(TextBuffer buffer, long mergeWindowMillis) {
+        this(buffer, mergeWindowMillis, DEFAULT_MEMORY_BUDGET_BYTES);
+    }
+
+    /**
+     * Creates a CommandManager that keeps an undo tree of a buffer, with the given merge window and memory budget.
+     *
+     * @param buffer the buffer whose versions are kept
+     * @param mergeWindowMillis how long after a command the next one may still be merged into it; 0 disables merging
+     * @param memoryBudgetBytes how much memory the tree may take before snapshots are dropped and old history pruned
+     * @throws IllegalArgumentException if the budget is not positive
+     */
+    public CommandManager(TextBuffer buffer, long mergeWindowMillis, long memoryBudgetBytes) {
+        this(mergeWindowMillis, memoryBudgetBytes, Path.of(System.getProperty("java.io.tmpdir")), buffer);
+    }
+
+    private CommandManager(long mergeWindowMillis, long memoryBudgetBytes, Path spillDirectory, TextBuffer treeBuffer) {
+        if (memoryBudgetBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive.");
+        }
+
+        this.mergeWindowNanos = mergeWindowMillis * 1_000_000;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.undoHistory = new History(new HistorySpill(spillDirectory, "undo-"));
+        this.redoHistory = new History(new HistorySpill(spillDirectory, "redo-"));
+        this.treeBuffer = treeBuffer;
+        this.undoTree = treeBuffer == null ? null : new UndoTree(treeBuffer);
+    }
+
+    /**
+     * Executes a given command and stores it in the undo stack. Clears the redo stack, or with an undo tree,
+     * starts a new branch next to it. The command is merged into the previous one instead when that one accepts it
+     * and was executed less than the merge window ago.
      *
      * @param command the command to execute
+     * @throws IllegalStateException if the previous command's mergeWith refuses a command its canMergeWith accepted
      */
     public void executeCommand(Command command) {
+        if (compound != null) {
+            command.execute();
+            redoHistory.clear();
+            compound.add(command);
+            notifyExecuted(command);
+            return;
+        }
+
+        long now = System.nanoTime();
+        boolean mayMerge = mergeable && now - lastExecuteNanos < mergeWindowNanos;
+        if (undoTree != null) {
+            executeInTree(command, mayMerge);
+        } else {
+            command.execute();
+            redoHistory.clear();
+            if (!(mayMerge && undoHistory.mergeIntoTop(command))) {
+                undoHistory.push(command);
+            }
+        }
+        enforceBudget();
+
+        lastExecuteNanos = now;
+        mergeable = true;
+        notifyExecuted(command);
+    }
+
+    private void executeInTree(Command command, boolean mayMerge) {
+        if (mayMerge && undoTree.canMergeIntoCurrent(command)) {
+            command.execute();
+            if (!undoTree.mergeIntoCurrent(command)) {
+                throw new IllegalStateException(command.getClass().getName()
+                        + ": mergeWith refused a command that canMergeWith accepted.");
+            }
+            return;
+        }
+
+        // A new version follows, so the current one is snapshotted before the command changes the text
+        undoTree.seal();
         command.execute();
-        undoStack.push(command);
+        undoTree.add(command);
+    }
+
+    /**
+     * Starts grouping commands into one undo step. Every command executed until the matching
+     * {@link #endCompound()} is undone and redone together. Calls may be nested; only the outermost pair counts.
+     */
+    public void beginCompound() {
+        if (compoundDepth++ == 0) {
+            compound = new CompoundCommand();
+            if (undoTree != null) {
+                undoTree.seal();
+            }
+        }
+    }
+
+    /**
+     * Ends the group started by {@link #beginCompound()} and stores it as a single undo step.
+     *
+     * @throws IllegalStateException if no group is open
+     */
+    public void endCompound() {
+        if (compoundDepth == 0) {
+            throw new IllegalStateException("endCompound() without beginCompound().");
+        }
+        if (--compoundDepth > 0) {
+            return;
+        }
 
-        redoStack.clear();
+        CompoundCommand finished = compound;
+        compound = null;
+        if (!finished.isEmpty()) {
+            Command step = finished.getCommands().size() == 1 ? finished.getCommands().get(0) : finished;
+            if (undoTree != null) {
+                undoTree.add(step);
+            } else {
+                undoHistory.push(step);
+            }
+        }
+        mergeable = false;
+        enforceBudget();
+    }
+
+    /**
+     * Stops the next command from being merged into the previous one, e.g. after the cursor was moved elsewhere.
+     */
+    public void breakMerge() {
+        mergeable = false;
     }
 
     /**
      * Undoes the last executed command, if available, and pushes it to the redo stack.
      *
      * @return the undone command, or null if no commands are available to undo
+     * @throws IllegalStateException if a compound step is still open
      */
     public Command undo() {
-        if (!undoStack.isEmpty()) {
-            Command command = undoStack.pop();
-            command.undo();
-            redoStack.push(command);
-            return command;
+        ensureNoCompound();
+        mergeable = false;
+
+        Command command;
+        if (undoTree != null) {
+            UndoTree.Node left = undoTree.undo();
+            command = left == null ? null : left.getCommand();
+            enforceBudget();
+        } else {
+            command = undoHistory.pop();
+            if (command != null) {
+                command.undo();
+                redoHistory.push(command);
+                enforceBudget();
+            }
         }
 
-        return null;
+        if (command != null && commandListener != null) {
+            commandListener.onUndone(command);
+        }
+        return command;
     }
 
     /**
      * Redoes the last undone command, if available, and pushes it to the undo stack.
      *
      * @return the redone command, or null if no commands are available to redo
+     * @throws IllegalStateException if a compound step is still open
      */
     public Command redo() {
-        if (!redoStack.isEmpty()) {
-            Command command = redoStack.pop();
-            command.execute();
-            undoStack.push(command);
-            return command;
+        ensureNoCompound();
+        mergeable = false;
+
+        Command command;
+        if (undoTree != null) {
+            UndoTree.Node entered = undoTree.redo();
+            command = entered == null ? null : entered.getCommand();
+            enforceBudget();
+        } else {
+            command = redoHistory.pop();
+            if (command != null) {
+                command.execute();
+                undoHistory.push(command);
+                enforceBudget();
+            }
+        }
+
+        if (command != null && commandListener != null) {
+            commandListener.onRedone(command);
+        }
+        return command;
+    }
+
+    /**
+     * Moves the buffer to any version in the undo tree, e.g. one found with {@link UndoTree#versionAt}. This is O(1)
+     * if the version kept its snapshot, and otherwise runs the commands from the nearest version that has its text.
+     * Undo and redo then continue from there, and redo can retrace the way back down to it.
+     *
+     * @param version the version to restore
+     * @throws IllegalStateException if there is no undo tree or a compound step is still open
+     * @throws IllegalArgumentException if the version belongs to another tree or has been pruned
+     */
+    public void jumpTo(UndoTree.Node version) {
+        ensureNoCompound();
+        if (undoTree == null) {
+            throw new IllegalStateException("This CommandManager keeps no undo tree.");
+        }
+
+        mergeable = false;
+        UndoTree.Node from = undoTree.getCurrent();
+        undoTree.jumpTo(version);
+        if (commandListener != null) {
+            notifyPath(from, version);
+        }
+        enforceBudget();
+    }
+
+    // Reports a jump as the steps from one version up to the common ancestor and back down to the other
+    private void notifyPath(UndoTree.Node from, UndoTree.Node to) {
+        Deque<UndoTree.Node> down = new ArrayDeque<>();
+        while (from.getDepth() > to.getDepth()) {
+            commandListener.onUndone(from.getCommand());
+            from = from.getParent();
+        }
+        while (to.getDepth() > from.getDepth()) {
+            down.push(to);
+            to = to.getParent();
+        }
+        while (from != to) {
+            commandListener.onUndone(from.getCommand());
+            from = from.getParent();
+            down.push(to);
+            to = to.getParent();
+        }
+        for (UndoTree.Node node : down) {
+            commandListener.onRedone(node.getCommand());
+        }
+    }
+
+    /**
+     * Sets the listener that is told about every command applied to the text.
+     *
+     * @param listener the listener, or null
+     */
+    public void setCommandListener(CommandListener listener) {
+        this.commandListener = listener;
+    }
+
+    private void notifyExecuted(Command command) {
+        if (commandListener != null) {
+            commandListener.onExecuted(command);
+        }
+    }
+
+    /**
+     * Moves the buffer back to the version it was at at a given time, e.g. ten minutes ago.
+     *
+     * @param epochMillis the time, in milliseconds since the epoch
+     * @return the version that was restored
+     * @throws IllegalStateException if there is no undo tree or a compound step is still open
+     */
+    public UndoTree.Node jumpToTime(long epochMillis) {
+        if (undoTree == null) {
+            throw new IllegalStateException("This CommandManager keeps no undo tree.");
+        }
+
+        UndoTree.Node version = undoTree.versionAt(epochMillis);
+        jumpTo(version);
+        return version;
+    }
+
+    /**
+     * Gets the undo tree.
+     *
+     * @return the tree, or null if this CommandManager keeps a linear history
+     */
+    public UndoTree getUndoTree() {
+        return undoTree;
+    }
+
+    /**
+     * Forgets the whole history, e.g. after another file was opened into the buffer. An undo tree starts over
+     * from the current text.
+     *
+     * @throws IllegalStateException if a compound step is still open
+     */
+    public void clearHistory() {
+        ensureNoCompound();
+        mergeable = false;
+        undoHistory.clear();
+        redoHistory.clear();
+        if (undoTree != null) {
+            undoTree = new UndoTree(treeBuffer);
+        }
+    }
+
+    /**
+     * Gets the number of steps that can be undone, including the spilled ones.
+     *
+     * @return the size of the undo history
+     */
+    public int getUndoCount() {
+        return undoTree != null ? undoTree.getCurrent().getDepth() : undoHistory.size();
+    }
+
+    /**
+     * Gets the number of steps that can be redone, following the most recently visited branch of an undo tree.
+     *
+     * @return the size of the redo history
+     */
+    public int getRedoCount() {
+        if (undoTree == null) {
+            return redoHistory.size();
+        }
+
+        int count = 0;
+        for (UndoTree.Node node = undoTree.getCurrent().getLastChild(); node != null; node = node.getLastChild()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the estimated memory taken by the undo and redo steps that are held in memory; for an undo tree, by
+     * its commands, the text its snapshots keep alive, its nodes and its timeline.
+     *
+     * @return the size in bytes
+     */
+    public long getMemoryBytes() {
+        return undoTree != null ? undoTree.getMemoryBytes() : undoHistory.bytes + redoHistory.bytes;
+    }
+
+    /**
+     * Gets the size of the spill files, i.e. of the history that has been moved to disk.
+     *
+     * @return the size in bytes
+     */
+    public long getSpilledBytes() {
+        return undoHistory.spill.getBytesOnDisk() + redoHistory.spill.getBytesOnDisk();
+    }
+
+    public int getSpilledCount() {
+        return undoHistory.spill.getCommandCount() + redoHistory.spill.getCommandCount();
+    }
+
+    public long getMemoryBudgetBytes() {
+        return memoryBudgetBytes;
+    }
+
+    /**
+     * Deletes the spill files. The spilled steps are lost, the ones in memory can still be undone and redone.
+     */
+    @Override
+    public void close() {
+        undoHistory.spill.close();
+        redoHistory.spill.close();
+    }
+
+    private void ensureNoCompound() {
+        if (compound != null) {
+            throw new IllegalStateException("Cannot undo or redo while a compound command is open.");
         }
+    }
 
-        return null;
+    // Spills or prunes the oldest steps until the history is well under budget, so the next few commands do not
+    // have to do it again
+    private void enforceBudget() {
+        if (getMemoryBytes() <= memoryBudgetBytes) {
+            return;
+        }
+
+        long target = memoryBudgetBytes - memoryBudgetBytes / 4;
+        if (undoTree != null) {
+            undoTree.trim(target);
+            return;
+        }
+
+        // The bigger stack goes first; its oldest steps are the furthest away from the current text
+        History first = undoHistory.bytes >= redoHistory.bytes ? undoHistory : redoHistory;
+        History second = first == undoHistory ? redoHistory : undoHistory;
+        first.spillOldest(getMemoryBytes() - target);
+        if (getMemoryBytes() > target) {
+            second.spillOldest(getMemoryBytes() - target);
+        }
     }
 
+    /**
+     * One of the two stacks: the most recent steps in memory, most recent first, and the older ones in a spill file.
+     */
+    private static class History {
+        final Deque<Command> commands = new ArrayDeque<>();
+        final HistorySpill spill;
+        long bytes;
+
+        History(HistorySpill spill) {
+            this.spill = spill;
+        }
+
+        void push(Command command) {
+            commands.push(command);
+            bytes += command.estimatedBytes();
+        }
+
+        // Returns null if the history is empty; reads the latest spilled batch back once memory runs out
+        Command pop() {
+            if (commands.isEmpty() && !spill.isEmpty()) {
+                for (Command command : spill.pop()) {
+                    push(command);
+                }
+            }
+            if (commands.isEmpty()) {
+                return null;
+            }
+
+            Command command = commands.pop();
+            bytes -= command.estimatedBytes();
+            return command;
+        }
+
+        boolean mergeIntoTop(Command command) {
+            Command top = commands.peek();
+            if (top == null) {
+                return false;
+            }
+
+            long before = top.estimatedBytes();
+            if (!top.mergeWith(command)) {
+                return false;
+            }
+            bytes += top.estimatedBytes() - before;
+            return true;
+        }
+
+        // Moves steps from the bottom to the spill file until enough bytes are freed, keeping the top in memory
+        void spillOldest(long bytesToFree) {
+            List<Command> batch = new ArrayList<>();
+            long freed = 0;
+            while (freed < bytesToFree && commands.size() > 1 && CommandCodec.canWrite(commands.peekLast())) {
+                Command command = commands.pollLast();
+                batch.add(command);
+                freed += command.estimatedBytes();
+            }
+
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                spill.push(batch);
+                bytes -= freed;
+            } catch (RuntimeException e) {
+                // Keep the history whole in memory rather than lose the batch
+                for (int i = batch.size() - 1; i >= 0; i--) {
+                    commands.addLast(batch.get(i));
+                }
+                throw e;
+            }
+        }
+
+        void clear() {
+            if (!commands.isEmpty()) {
+                commands.clear();
+                bytes = 0;
+            }
+            spill.clear();
+        }
+
+        int size() {
+            return commands.size() + spill.getCommandCount();
+        }
+    }
 }
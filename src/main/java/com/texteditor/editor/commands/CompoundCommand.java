@@ -0,0 +1,79 @@
+package com.texteditor.editor.commands;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The CompoundCommand class groups several commands into one undoable step, e.g. everything done between
+ * {@link CommandManager#beginCompound()} and {@link CommandManager#endCompound()}.
+ * The commands are redone in the order they ran and undone in reverse.
+ */
+public class CompoundCommand implements Command {
+    private final List<Command> commands = new ArrayList<>();
+
+    CompoundCommand() {
+    }
+
+    /**
+     * Recreates a step from commands that have already been executed, e.g. ones read back from disk.
+     *
+     * @param commands the commands, in the order they were executed
+     */
+    CompoundCommand(List<Command> commands) {
+        this.commands.addAll(commands);
+    }
+
+    /**
+     * Adds a command that has already been executed, merging it into the previous one when possible.
+     *
+     * @param command the executed command
+     */
+    void add(Command command) {
+        if (commands.isEmpty() || !commands.get(commands.size() - 1).mergeWith(command)) {
+            commands.add(command);
+        }
+    }
+
+    /**
+     * Redoes every command, in the order they were first executed.
+     */
+    @Override
+    public void execute() {
+        for (Command command : commands) {
+            command.execute();
+        }
+    }
+
+    /**
+     * Undoes every command, the most recent first.
+     */
+    @Override
+    public void undo() {
+        for (int i = commands.size() - 1; i >= 0; i--) {
+            commands.get(i).undo();
+        }
+    }
+
+    @Override
+    public long estimatedBytes() {
+        long bytes = 64 + 8L * commands.size();
+        for (Command command : commands) {
+            bytes += command.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the commands of this step, in the order they were executed.
+     *
+     * @return an unmodifiable view of the commands
+     */
+    public List<Command> getCommands() {
+        return Collections.unmodifiableList(commands);
+    }
+
+    public boolean isEmpty() {
+        return commands.isEmpty();
+    }
+}
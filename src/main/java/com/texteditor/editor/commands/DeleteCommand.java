@@ -1,38 +1,51 @@
 package com.texteditor.editor.commands;
 
-import com.texteditor.editor.Rope;
+import com.texteditor.editor.TextBuffer;
 
 /**
- * The DeleteCommand class represents a delete operation on the Rope data structure.
+ * The DeleteCommand class represents a delete operation on the text buffer.
  * It stores the deleted text for undo purposes and provides methods to execute and undo the delete action.
+ * A run of backspaces or forward deletes merges into a single DeleteCommand, see {@link #mergeWith(Command)}.
  */
 public class DeleteCommand implements Command{
-    private final Rope rope;
-    private final int startPos; // Start position of the deletion
-    private final int endPos; // End position of the deletion
+    private final TextBuffer buffer;
+    private int startPos; // Start position of the deletion
+    private int endPos; // End position of the deletion
     private String deletedText; // The text to delete (saved for undo operations)
 
     /**
-     * Creates a DeleteCommand for deleting text from the Rope.
+     * Creates a DeleteCommand for deleting text from the text buffer.
      *
-     * @param rope the Rope data structure
+     * @param buffer the text buffer
      * @param startPos the starting position of the text to delete
      * @param endPos the ending position of the text to delete
      */
-    public DeleteCommand(Rope rope, int startPos, int endPos) {
-        this.rope = rope;
+    public DeleteCommand(TextBuffer buffer, int startPos, int endPos) {
+        this.buffer = buffer;
         this.startPos = startPos;
         this.endPos = endPos;
     }
 
     /**
-     * Executes the delete operation by removing the text from the Rope.
+     * Recreates a DeleteCommand that has already been executed, e.g. one read back from disk.
+     *
+     * @param buffer the text buffer
+     * @param startPos the starting position of the deleted text
+     * @param deletedText the text that was deleted
+     */
+    DeleteCommand(TextBuffer buffer, int startPos, String deletedText) {
+        this(buffer, startPos, startPos + deletedText.length());
+        this.deletedText = deletedText;
+    }
+
+    /**
+     * Executes the delete operation by removing the text from the text buffer.
      * Saves the deleted text for potential undo.
      */
     @Override
     public void execute() {
-        deletedText = rope.substring(startPos, endPos).getRopeData();
-        rope.delete(startPos, endPos);
+        deletedText = buffer.getText(startPos, endPos);
+        buffer.delete(startPos, endPos);
     }
 
     /**
@@ -40,7 +53,53 @@ public class DeleteCommand implements Command{
      */
     @Override
     public void undo() {
-        rope.insert(startPos, deletedText);
+        buffer.insert(startPos, deletedText);
+    }
+
+    /**
+     * Merges a delete that continues this one: a backspace that ends where this deletion starts, or a forward
+     * delete at the same position. The merged command covers the combined range of the text before either ran.
+     *
+     * @param next the command executed right after this one
+     * @return true if next was merged into this command
+     */
+    @Override
+    public boolean mergeWith(Command next) {
+        if (!canMergeWith(next)) {
+            return false;
+        }
+
+        DeleteCommand delete = (DeleteCommand) next;
+        if (delete.endPos == startPos) {
+            startPos = delete.startPos;
+            deletedText = delete.deletedText + deletedText;
+        } else {
+            endPos += delete.endPos - delete.startPos;
+            deletedText = deletedText + delete.deletedText;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean canMergeWith(Command next) {
+        if (!(next instanceof DeleteCommand delete) || delete.buffer != buffer) {
+            return false;
+        }
+        return delete.endPos == startPos || delete.startPos == startPos;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return deletedText == null ? 64 : 64 + 2L * deletedText.length();
+    }
+
+    /**
+     * Gets the start position of the deletion.
+     *
+     * @return the start position
+     */
+    public int getStartPos() {
+        return startPos;
     }
 
     /**
@@ -51,4 +110,8 @@ public class DeleteCommand implements Command{
     public String getDeletedText() {
         return deletedText;
     }
+
+    TextBuffer getBuffer() {
+        return buffer;
+    }
 }
@@ -0,0 +1,432 @@
+package com.texteditor.editor.commands;
+
+import com.texteditor.editor.TextBuffer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead journal of the edits made to a document since it was last saved, kept in a file next to it.
+ * Registered as the {@link CommandListener} of a {@link CommandManager}, it appends every executed, undone or
+ * redone command as a compact binary record (see {@link CommandCodec}).
+ * <p>
+ * Records are only encoded on the editing thread. A background thread writes them in groups and syncs the file
+ * once per group, at most {@link #DEFAULT_COMMIT_INTERVAL_MILLIS} after the first one, so typing never waits for
+ * the disk; a crash loses at most that last interval. Each record carries its length and a CRC32, so a record torn
+ * by a crash is recognised and dropped.
+ * <p>
+ * The journal starts with the size and modification time of the saved file it applies to. When the document is
+ * opened again and still matches, {@link #open} replays the records on top of it, restoring the unsaved edits.
+ * After each save, {@link #documentSaved()} compacts the journal back to an empty one for the new file.
+ */
+public class EditJournal implements CommandListener, AutoCloseable {
+    public static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 100;
+
+    private static final int MAGIC = 0x54454A31; // "TEJ1"
+    private static final int HEADER_SIZE = 4 + 8 + 8;
+
+    private static final byte APPLY = 1;  // the command was executed or redone
+    private static final byte REVERT = 2; // the command was undone
+
+    // A group is written early once this many bytes are waiting
+    private static final int MAX_GROUP_BYTES = 1024 * 1024;
+
+    private final Path document;
+    private final Path file;
+    private final List<TextBuffer> buffers;
+    private final FileChannel channel;
+    private final long commitIntervalMillis;
+    private final int replayedCount;
+
+    // Encoding happens on the editing thread only
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+
+    // Records waiting for the writer; guarded by pendingLock. File writes are guarded by channelLock, taken first
+    private final Object pendingLock = new Object();
+    private final Object channelLock = new Object();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private boolean closed;
+    private volatile IOException failure;
+    private volatile boolean disabled;
+
+    private final Thread writer;
+
+    private EditJournal(Path document, Path file, TextBuffer buffer, FileChannel channel, long commitIntervalMillis,
+                        int replayedCount) {
+        this.document = document;
+        this.file = file;
+        this.buffers = new ArrayList<>(List.of(buffer));
+        this.channel = channel;
+        this.commitIntervalMillis = commitIntervalMillis;
+        this.replayedCount = replayedCount;
+
+        this.writer = new Thread(this::writeGroups, "edit-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Opens the journal of a document, see {@link #open(Path, TextBuffer, long)}.
+     */
+    public static EditJournal open(Path document, TextBuffer buffer) {
+        return open(document, buffer, DEFAULT_COMMIT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Opens the journal of a document whose saved text the buffer holds. If a journal written for this very
+     * version of the file exists, e.g. after a crash, its records are replayed into the buffer first, and new
+     * records are appended to it; otherwise a new, empty journal is started.
+     *
+     * @param document the saved file the buffer was loaded from
+     * @param buffer the buffer the edits are made to
+     * @param commitIntervalMillis the longest time a record waits before it is written and synced
+     * @return the journal, to register with {@link CommandManager#setCommandListener}
+     */
+    public static EditJournal open(Path document, TextBuffer buffer, long commitIntervalMillis) {
+        return open(document, buffer, commitIntervalMillis, true);
+    }
+
+    /**
+     * Starts a new, empty journal for a document whose text the buffer holds, e.g. right after it was first
+     * saved. An existing journal of the document is discarded.
+     *
+     * @param document the saved file the buffer was written to
+     * @param buffer the buffer the edits are made to
+     * @return the journal, to register with {@link CommandManager#setCommandListener}
+     */
+    public static EditJournal create(Path document, TextBuffer buffer) {
+        return open(document, buffer, DEFAULT_COMMIT_INTERVAL_MILLIS, false);
+    }
+
+    private static EditJournal open(Path document, TextBuffer buffer, long commitIntervalMillis, boolean replay) {
+        Path file = journalOf(document);
+        try {
+            long[] base = fingerprint(document);
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+
+            int replayed = 0;
+            long end = -1;
+            if (replay && matches(channel, base)) {
+                long[] result = replay(channel, buffer);
+                replayed = (int) result[0];
+                end = result[1];
+            }
+
+            if (end < 0) {
+                startOver(channel, base);
+            } else {
+                // Drop a record torn by the crash, so new records follow the last good one
+                channel.truncate(end);
+                channel.position(end);
+            }
+            return new EditJournal(document, file, buffer, channel, commitIntervalMillis, replayed);
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening edit journal. ", e);
+        }
+    }
+
+    /**
+     * Returns the journal file of a document: a hidden file next to it.
+     *
+     * @param document the document
+     * @return the path of its journal
+     */
+    public static Path journalOf(Path document) {
+        return document.resolveSibling("." + document.getFileName() + ".journal");
+    }
+
+    @Override
+    public void onExecuted(Command command) {
+        append(APPLY, command);
+    }
+
+    @Override
+    public void onUndone(Command command) {
+        append(REVERT, command);
+    }
+
+    @Override
+    public void onRedone(Command command) {
+        append(APPLY, command);
+    }
+
+    // Encodes a record and hands it to the writer; only blocks for as long as the copy takes
+    private void append(byte op, Command command) {
+        if (disabled) {
+            return;
+        }
+        if (!CommandCodec.canWrite(command)) {
+            // The journal can no longer reproduce the text, so it must not be replayed
+            disable();
+            return;
+        }
+
+        try {
+            record.reset();
+            recordOut.writeByte(op);
+            CommandCodec.write(recordOut, command, buffers);
+            if (buffers.size() > 1) {
+                // The command edited another buffer, which replaying could not reach
+                buffers.subList(1, buffers.size()).clear();
+                disable();
+                return;
+            }
+            byte[] payload = record.toByteArray();
+            crc.reset();
+            crc.update(payload);
+
+            synchronized (pendingLock) {
+                boolean first = pending.size() == 0;
+                DataOutputStream out = new DataOutputStream(pending);
+                out.writeInt(payload.length);
+                out.writeInt((int) crc.getValue());
+                out.write(payload);
+                // Wake the writer to start a group, or to write the group early once it is large
+                if (first || pending.size() >= MAX_GROUP_BYTES) {
+                    pendingLock.notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing edit journal. ", e);
+        }
+    }
+
+    // The writer thread: waits for a record, lets a group gather for the commit interval, then writes and syncs it
+    private void writeGroups() {
+        try {
+            while (true) {
+                synchronized (pendingLock) {
+                    while (pending.size() == 0 && !closed) {
+                        pendingLock.wait();
+                    }
+                    if (pending.size() == 0) {
+                        return;
+                    }
+
+                    long deadline = System.currentTimeMillis() + commitIntervalMillis;
+                    long remaining;
+                    while (!closed && pending.size() < MAX_GROUP_BYTES
+                            && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                        pendingLock.wait(remaining);
+                    }
+                }
+                commit();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    // Writes whatever is pending and syncs it; groups are written in the order they were taken
+    private void commit() throws IOException {
+        synchronized (channelLock) {
+            ByteArrayOutputStream group;
+            synchronized (pendingLock) {
+                if (pending.size() == 0) {
+                    return;
+                }
+                group = pending;
+                pending = new ByteArrayOutputStream();
+            }
+
+            if (!disabled) {
+                ByteBuffer bytes = ByteBuffer.wrap(group.toByteArray());
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * Writes and syncs every record appended so far, without waiting for the writer thread.
+     */
+    public void flush() {
+        checkFailure();
+        try {
+            commit();
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing edit journal. ", e);
+        }
+    }
+
+    /**
+     * Compacts the journal after the document was saved: the saved file now holds every edit, so the journal is
+     * emptied and tied to the new version of the file.
+     */
+    public void documentSaved() {
+        checkFailure();
+        try {
+            synchronized (channelLock) {
+                synchronized (pendingLock) {
+                    pending = new ByteArrayOutputStream();
+                }
+                startOver(channel, fingerprint(document));
+                disabled = false;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error compacting edit journal. ", e);
+        }
+    }
+
+    /**
+     * Gets the number of records that were replayed when the journal was opened.
+     *
+     * @return the number of replayed commands
+     */
+    public int getReplayedCount() {
+        return replayedCount;
+    }
+
+    public Path getDocument() {
+        return document;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Writes the pending records and closes the journal. The file stays, so the edits are restored the next time
+     * the document is opened unless it has been saved since.
+     */
+    @Override
+    public void close() {
+        synchronized (pendingLock) {
+            closed = true;
+            pendingLock.notifyAll();
+        }
+        try {
+            writer.join();
+            commit();
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new RuntimeException("Error closing edit journal. ", e);
+        }
+        checkFailure();
+    }
+
+    private void disable() {
+        disabled = true;
+        try {
+            synchronized (channelLock) {
+                // An empty file does not match any document, so nothing is replayed from it
+                channel.truncate(0);
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error clearing edit journal. ", e);
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new RuntimeException("Error writing edit journal. ", failure);
+        }
+    }
+
+    private static long[] fingerprint(Path document) throws IOException {
+        return new long[]{Files.size(document), Files.getLastModifiedTime(document).toMillis()};
+    }
+
+    private static boolean matches(FileChannel channel, long[] base) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return false;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                return false;
+            }
+        }
+        header.flip();
+        return header.getInt() == MAGIC && header.getLong() == base[0] && header.getLong() == base[1];
+    }
+
+    private static void startOver(FileChannel channel, long[] base) throws IOException {
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putLong(base[0]).putLong(base[1]).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.position(HEADER_SIZE);
+        channel.force(true);
+    }
+
+    /**
+     * Applies the records of a journal to a buffer, stopping at the first one that is torn or does not fit.
+     *
+     * @return the number of records applied and the file offset after the last of them
+     */
+    private static long[] replay(FileChannel channel, TextBuffer buffer) throws IOException {
+        List<TextBuffer> buffers = List.of(buffer);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(HEADER_SIZE)), 256 * 1024));
+        CRC32 crc = new CRC32();
+        byte[] payload = new byte[256];
+
+        long count = 0;
+        long end = HEADER_SIZE;
+        try {
+            while (true) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > channel.size() - end) {
+                    break;
+                }
+                if (payload.length < length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                in.readFully(payload, 0, length);
+
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload, 0, length));
+                byte op = record.readByte();
+                Command command = CommandCodec.read(record, buffers);
+                if (op == APPLY) {
+                    command.execute();
+                } else if (op == REVERT) {
+                    command.undo();
+                } else {
+                    break;
+                }
+
+                count++;
+                end += 8 + length;
+            }
+        } catch (EOFException e) {
+            // A record cut short by the crash
+        } catch (RuntimeException e) {
+            // A record that does not fit the text, e.g. because the file was changed outside the editor
+        }
+        return new long[]{count, end};
+    }
+}
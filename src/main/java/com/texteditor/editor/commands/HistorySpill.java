@@ -0,0 +1,173 @@
+package com.texteditor.editor.commands;
+
+import com.texteditor.editor.TextBuffer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * The part of an undo or redo history that has been moved out of memory. Commands are written in segments, a
+ * batch of consecutive commands each, and segments come back in the reverse order they went out, so the file
+ * is only ever appended to or truncated at its end.
+ * <p>
+ * The file is created on the first write and deleted by {@link #close()} (or when the JVM exits).
+ */
+final class HistorySpill {
+    private final Path directory;
+    private final String prefix;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    private Path file;
+    private FileChannel channel;
+    private int commandCount;
+
+    /**
+     * @param directory the directory the spill file is created in
+     * @param prefix the start of the spill file's name
+     */
+    HistorySpill(Path directory, String prefix) {
+        this.directory = directory;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Writes a batch of commands to the end of the file.
+     *
+     * @param commands the commands, oldest first
+     */
+    void push(List<Command> commands) {
+        try {
+            if (channel == null) {
+                file = Files.createTempFile(directory, prefix, ".spill");
+                file.toFile().deleteOnExit();
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+
+            long start = channel.size();
+            channel.position(start);
+            List<TextBuffer> buffers = new ArrayList<>();
+            // The stream is flushed but not closed, as closing it would close the channel
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+            for (Command command : commands) {
+                CommandCodec.write(out, command, buffers);
+            }
+            out.flush();
+
+            segments.push(new Segment(start, channel.size() - start, commands.size(), buffers));
+            commandCount += commands.size();
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing undo history to disk. ", e);
+        }
+    }
+
+    /**
+     * Reads back the batch written last and removes it from the file.
+     *
+     * @return the commands, oldest first
+     * @throws IllegalStateException if nothing is spilled
+     */
+    List<Command> pop() {
+        if (segments.isEmpty()) {
+            throw new IllegalStateException("No spilled commands left.");
+        }
+
+        Segment segment = segments.pop();
+        try {
+            ByteBuffer bytes = ByteBuffer.allocate(Math.toIntExact(segment.length));
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, segment.start + bytes.position()) < 0) {
+                    throw new IOException("Undo history file is truncated.");
+                }
+            }
+            channel.truncate(segment.start);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.array()));
+            List<Command> commands = new ArrayList<>(segment.count);
+            for (int i = 0; i < segment.count; i++) {
+                commands.add(CommandCodec.read(in, segment.buffers));
+            }
+            commandCount -= segment.count;
+            return commands;
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading undo history from disk. ", e);
+        }
+    }
+
+    boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    int getCommandCount() {
+        return commandCount;
+    }
+
+    long getBytesOnDisk() {
+        return segments.isEmpty() ? 0 : segments.peek().start + segments.peek().length;
+    }
+
+    /**
+     * Drops every spilled command but keeps the file for later batches.
+     */
+    void clear() {
+        if (segments.isEmpty()) {
+            return;
+        }
+
+        segments.clear();
+        commandCount = 0;
+        if (channel != null) {
+            try {
+                channel.truncate(0);
+            } catch (IOException e) {
+                throw new RuntimeException("Error clearing undo history on disk. ", e);
+            }
+        }
+    }
+
+    /**
+     * Drops every spilled command and deletes the file.
+     */
+    void close() {
+        segments.clear();
+        commandCount = 0;
+        if (channel != null) {
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new RuntimeException("Error deleting undo history file. ", e);
+            } finally {
+                channel = null;
+                file = null;
+            }
+        }
+    }
+
+    // A batch of commands in the file; the buffers they edit stay in memory, see CommandCodec
+    private static class Segment {
+        final long start;
+        final long length;
+        final int count;
+        final List<TextBuffer> buffers;
+
+        Segment(long start, long length, int count, List<TextBuffer> buffers) {
+            this.start = start;
+            this.length = length;
+            this.count = count;
+            this.buffers = buffers;
+        }
+    }
+}
@@ -1,44 +1,77 @@
 package com.texteditor.editor.commands;
 
-import com.texteditor.editor.Rope;
+import com.texteditor.editor.TextBuffer;
 
 /**
- * The InsertCommand class represents an insert operation on the Rope data structure.
+ * The InsertCommand class represents an insert operation on the text buffer.
  * It holds the inserted text and the position where it should be inserted.
  * It provides methods to execute the insertion and undo the insertion.
+ * Typing one character after another merges into a single InsertCommand, see {@link #mergeWith(Command)}.
  */
 public class InsertCommand implements Command{
-    private final Rope rope;
-    private final String text; // Holds the text to insert
+    private final TextBuffer buffer;
+    private final StringBuilder text; // Holds the text to insert, grown by merged commands
     private final int cursorPosition; // The position where text will be inserted
 
     /**
-     * Creates an InsertCommand for inserting text into the Rope.
+     * Creates an InsertCommand for inserting text into the text buffer.
      *
-     * @param rope the Rope data structure
+     * @param buffer the text buffer
      * @param text the text to insert
      * @param cursorPosition the position where text should be inserted
      */
-    public InsertCommand(Rope rope, String text, int cursorPosition) {
-        this.rope = rope;
-        this.text = text;
+    public InsertCommand(TextBuffer buffer, String text, int cursorPosition) {
+        this.buffer = buffer;
+        this.text = new StringBuilder(text);
         this.cursorPosition = cursorPosition;
     }
 
     /**
-     * Executes the insert operation by adding the text to the Rope at the specified position.
+     * Executes the insert operation by adding the text to the text buffer at the specified position.
      */
     @Override
     public void execute() {
-        rope.insert(cursorPosition, text);
+        buffer.insert(cursorPosition, text.toString());
     }
 
     /**
-     * Undoes the insert operation by removing the inserted text from the Rope.
+     * Undoes the insert operation by removing the inserted text from the text buffer.
      */
     @Override
     public void undo() {
-        rope.delete(cursorPosition, cursorPosition + text.length());
+        buffer.delete(cursorPosition, cursorPosition + text.length());
+    }
+
+    /**
+     * Merges an insert that continues this one, i.e. starts right where this one's text ends. An insert that
+     * contains a newline is never merged, neither into another insert nor with the typing that follows it, so typing
+     * is undone at most one line at a time.
+     *
+     * @param next the command executed right after this one
+     * @return true if next was merged into this command
+     */
+    @Override
+    public boolean mergeWith(Command next) {
+        if (!canMergeWith(next)) {
+            return false;
+        }
+
+        text.append(((InsertCommand) next).text);
+        return true;
+    }
+
+    @Override
+    public boolean canMergeWith(Command next) {
+        if (!(next instanceof InsertCommand insert) || insert.buffer != buffer) {
+            return false;
+        }
+        return insert.cursorPosition == cursorPosition + text.length()
+                && text.indexOf("\n") < 0 && insert.text.indexOf("\n") < 0;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return 64 + 2L * text.capacity();
     }
 
     /**
@@ -47,6 +80,19 @@ public class InsertCommand implements Command{
      * @return the inserted text
      */
     public String getInsertedText() {
-        return text;
+        return text.toString();
+    }
+
+    /**
+     * Gets the position where the text is inserted.
+     *
+     * @return the insert position
+     */
+    public int getCursorPosition() {
+        return cursorPosition;
+    }
+
+    TextBuffer getBuffer() {
+        return buffer;
     }
 }
@@ -0,0 +1,168 @@
+package com.texteditor.editor.commands;
+
+import com.texteditor.editor.TextBuffer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The MultiEditCommand class applies the same kind of edit at many places as one undoable step, e.g. typing or
+ * deleting at every cursor of a multi-cursor selection, or renaming a token everywhere. Each edit deletes a range
+ * and inserts a string at its start; all offsets refer to the text before the command.
+ * On a Rope, both executing and undoing rebuild the tree in a single pass, see {@link TextBuffer#applyEdits}.
+ */
+public class MultiEditCommand implements Command {
+    private final TextBuffer buffer;
+    private final int[] offsets; // Start positions of the edits, sorted
+    private final int[] deleteLengths; // Number of characters each edit removes
+    private final String[] inserts; // The text each edit inserts
+    private String[] deletedTexts; // The text each edit removed (saved for undo operations)
+
+    /**
+     * Creates a MultiEditCommand.
+     *
+     * @param buffer the text buffer
+     * @param offsets the start position of each edit, sorted; edits must not overlap
+     * @param deleteLengths the number of characters each edit removes
+     * @param inserts the text each edit inserts
+     * @throws IllegalArgumentException if the arrays differ in length
+     */
+    public MultiEditCommand(TextBuffer buffer, int[] offsets, int[] deleteLengths, String[] inserts) {
+        if (offsets.length != deleteLengths.length || offsets.length != inserts.length) {
+            throw new IllegalArgumentException("Every edit needs an offset, a delete length and an insert.");
+        }
+
+        this.buffer = buffer;
+        this.offsets = offsets.clone();
+        this.deleteLengths = deleteLengths.clone();
+        this.inserts = new String[inserts.length];
+        for (int i = 0; i < inserts.length; i++) {
+            this.inserts[i] = inserts[i] != null ? inserts[i] : "";
+        }
+    }
+
+    /**
+     * Creates a MultiEditCommand that makes the same edit at every offset, e.g. typing at every cursor.
+     *
+     * @param buffer the text buffer
+     * @param offsets the start position of each edit, sorted; edits must not overlap
+     * @param deleteLength the number of characters every edit removes
+     * @param insert the text every edit inserts
+     */
+    public MultiEditCommand(TextBuffer buffer, int[] offsets, int deleteLength, String insert) {
+        this(buffer, offsets, filled(offsets.length, deleteLength), filled(offsets.length, insert));
+    }
+
+    /**
+     * Recreates a MultiEditCommand that has already been executed, e.g. one read back from disk.
+     */
+    MultiEditCommand(TextBuffer buffer, int[] offsets, int[] deleteLengths, String[] inserts, String[] deletedTexts) {
+        this.buffer = buffer;
+        this.offsets = offsets;
+        this.deleteLengths = deleteLengths;
+        this.inserts = inserts;
+        this.deletedTexts = deletedTexts;
+    }
+
+    /**
+     * Applies every edit and saves the deleted texts for potential undo.
+     * Identical deleted texts share one String, so deleting the same token everywhere keeps a single copy.
+     */
+    @Override
+    public void execute() {
+        Map<String, String> distinctTexts = new HashMap<>();
+        deletedTexts = new String[offsets.length];
+
+        for (int i = 0; i < offsets.length; i++) {
+            String text = deleteLengths[i] == 0 ? "" : buffer.getText(offsets[i], offsets[i] + deleteLengths[i]);
+            deletedTexts[i] = distinctTexts.computeIfAbsent(text, t -> t);
+        }
+
+        buffer.applyEdits(offsets, deleteLengths, inserts);
+    }
+
+    /**
+     * Undoes every edit by putting the deleted texts back where the inserted ones now are.
+     */
+    @Override
+    public void undo() {
+        int[] insertedOffsets = new int[offsets.length];
+        int[] insertedLengths = new int[offsets.length];
+        int shift = 0;
+
+        for (int i = 0; i < offsets.length; i++) {
+            insertedOffsets[i] = offsets[i] + shift;
+            insertedLengths[i] = inserts[i].length();
+            shift += inserts[i].length() - deleteLengths[i];
+        }
+
+        buffer.applyEdits(insertedOffsets, insertedLengths, deletedTexts);
+    }
+
+    /**
+     * Estimates the offsets and the distinct texts; texts shared between edits are counted once.
+     */
+    @Override
+    public long estimatedBytes() {
+        long bytes = 64 + 16L * offsets.length;
+        String previous = null;
+        for (String insert : inserts) {
+            if (insert != previous) {
+                bytes += 40 + 2L * insert.length();
+                previous = insert;
+            }
+        }
+        if (deletedTexts != null) {
+            previous = null;
+            for (String text : deletedTexts) {
+                if (text != previous) {
+                    bytes += 40 + 2L * text.length();
+                    previous = text;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the number of edits this command makes.
+     *
+     * @return the number of edits
+     */
+    public int getEditCount() {
+        return offsets.length;
+    }
+
+    TextBuffer getBuffer() {
+        return buffer;
+    }
+
+    int[] getOffsets() {
+        return offsets;
+    }
+
+    int[] getDeleteLengths() {
+        return deleteLengths;
+    }
+
+    String[] getInserts() {
+        return inserts;
+    }
+
+    String[] getDeletedTexts() {
+        return deletedTexts;
+    }
+
+    private static int[] filled(int length, int value) {
+        int[] values = new int[length];
+        Arrays.fill(values, value);
+        return values;
+    }
+
+    private static String[] filled(int length, String value) {
+        String[] values = new String[length];
+        Arrays.fill(values, value);
+        return values;
+    }
+}
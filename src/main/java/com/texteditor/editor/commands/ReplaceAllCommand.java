@@ -0,0 +1,130 @@
+package com.texteditor.editor.commands;
+
+import com.texteditor.editor.TextBuffer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The ReplaceAllCommand class replaces a batch of matches in the text buffer as one undoable step.
+ * On a Rope, both executing and undoing rebuild the tree in a single pass, however many matches there are.
+ */
+public class ReplaceAllCommand implements Command {
+    private final TextBuffer buffer;
+    private final int[] matchOffsets; // Start positions of the matches, sorted and non-overlapping
+    private final int matchLength; // Length of every match
+    private final String replacement; // The text each match is replaced with
+    private String[] replacedTexts; // The original text of every match (saved for undo operations)
+
+    /**
+     * Creates a ReplaceAllCommand.
+     *
+     * @param buffer the text buffer
+     * @param matchOffsets the start positions of the matches, sorted and non-overlapping
+     * @param matchLength the length of every match
+     * @param replacement the text each match is replaced with
+     */
+    public ReplaceAllCommand(TextBuffer buffer, int[] matchOffsets, int matchLength, String replacement) {
+        this.buffer = buffer;
+        this.matchOffsets = matchOffsets.clone();
+        this.matchLength = matchLength;
+        this.replacement = replacement;
+    }
+
+    /**
+     * Recreates a ReplaceAllCommand that has already been executed, e.g. one read back from disk.
+     *
+     * @param buffer the text buffer
+     * @param matchOffsets the start positions of the matches, sorted and non-overlapping
+     * @param matchLength the length of every match
+     * @param replacement the text each match was replaced with
+     * @param replacedTexts the original text of every match
+     */
+    ReplaceAllCommand(TextBuffer buffer, int[] matchOffsets, int matchLength, String replacement, String[] replacedTexts) {
+        this.buffer = buffer;
+        this.matchOffsets = matchOffsets;
+        this.matchLength = matchLength;
+        this.replacement = replacement;
+        this.replacedTexts = replacedTexts;
+    }
+
+    /**
+     * Replaces every match and saves the original texts for potential undo.
+     * Identical original texts share one String, so a case-sensitive replace keeps a single copy.
+     */
+    @Override
+    public void execute() {
+        Map<String, String> distinctTexts = new HashMap<>();
+        replacedTexts = new String[matchOffsets.length];
+
+        for (int i = 0; i < matchOffsets.length; i++) {
+            String text = buffer.getText(matchOffsets[i], matchOffsets[i] + matchLength);
+            replacedTexts[i] = distinctTexts.computeIfAbsent(text, t -> t);
+        }
+
+        buffer.replaceAll(matchOffsets, matchLength, replacement);
+    }
+
+    /**
+     * Undoes the replacement by putting the original texts back where the replacements now are.
+     */
+    @Override
+    public void undo() {
+        int delta = replacement.length() - matchLength;
+        int[] replacementOffsets = new int[matchOffsets.length];
+
+        for (int i = 0; i < matchOffsets.length; i++) {
+            replacementOffsets[i] = matchOffsets[i] + i * delta;
+        }
+
+        buffer.replaceAll(replacementOffsets, replacement.length(), replacedTexts);
+    }
+
+    /**
+     * Estimates the offsets and the distinct original texts; texts shared between matches are counted once.
+     */
+    @Override
+    public long estimatedBytes() {
+        long bytes = 64 + 4L * matchOffsets.length + 2L * replacement.length();
+        if (replacedTexts != null) {
+            bytes += 4L * replacedTexts.length;
+            String previous = null;
+            for (String text : replacedTexts) {
+                if (text != previous) {
+                    bytes += 40 + 2L * text.length();
+                    previous = text;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the number of matches this command replaces.
+     *
+     * @return the number of matches
+     */
+    public int getMatchCount() {
+        return matchOffsets.length;
+    }
+
+    TextBuffer getBuffer() {
+        return buffer;
+    }
+
+    int[] getMatchOffsets() {
+        return matchOffsets;
+    }
+
+    int getMatchLength() {
+        return matchLength;
+    }
+
+    String getReplacement() {
+        return replacement;
+    }
+
+    String[] getReplacedTexts() {
+        return replacedTexts;
+    }
+}
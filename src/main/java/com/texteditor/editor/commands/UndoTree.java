@@ -0,0 +1,526 @@
+package com.texteditor.editor.commands;
+
+import com.texteditor.editor.TextBuffer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * The UndoTree class keeps every version of a buffer that the history has passed through, including the branches
+ * a linear undo stack would throw away when a new edit follows an undo.
+ * <p>
+ * A node can hold an O(1) snapshot of the buffer (see {@link TextBuffer#snapshot()}), which shares its structure
+ * with the other versions, so moving to it is a single {@link TextBuffer#restore} instead of replaying the commands
+ * in between. A snapshot still keeps alive the text that differs from the current version, e.g. everything a bulk
+ * delete removed, so the tree is kept within a memory budget by {@link #trim}: the snapshots of the versions visited
+ * longest ago are dropped first, and those versions are rebuilt by running commands from the nearest version that
+ * still has its text. Once no snapshot is left to drop, the oldest visits are forgotten, and then the oldest branches
+ * and history are pruned.
+ * <p>
+ * The current node may be ahead of its snapshot while edits are merged into its command; the snapshot is taken once
+ * the tree moves on, so typing does not snapshot the buffer on every keystroke. The tree is changed through
+ * {@link CommandManager}.
+ */
+public final class UndoTree {
+    // Rough heap taken by a node, by one entry of the timeline, and by the tree nodes a snapshot copies on top of
+    // the text its version differs by
+    private static final long NODE_BYTES = 128;
+    private static final long VISIT_BYTES = 32;
+    private static final long SNAPSHOT_BYTES = 4096;
+
+    private final TextBuffer buffer;
+    private final List<Visit> timeline = new ArrayList<>(); // Every node that became current, in time order
+
+    private Node root;
+    private Node current;
+    private boolean dirty; // Whether the buffer has moved past the current node's snapshot
+    private int nextId = 1;
+    private int nodeCount = 1;
+    private long visitCount; // Numbers the visits, so nodes can be ordered by when they were last current
+    private long commandBytes;
+    private long snapshotBytes;
+
+    /**
+     * Creates a tree whose root is the current text of a buffer.
+     *
+     * @param buffer the buffer the history belongs to
+     */
+    UndoTree(TextBuffer buffer) {
+        this.buffer = buffer;
+        this.root = new Node(0, null, null);
+        this.current = root;
+        setSnapshot(root, buffer.snapshot());
+        visit(root);
+    }
+
+    /**
+     * Adds a version after the current one, made by a command that has just been executed, and moves to it.
+     * The current node must have been sealed before the command ran.
+     */
+    void add(Command command) {
+        Node node = new Node(nextId++, current, command);
+        nodeCount++;
+        current.children.add(node);
+        current.lastChild = node;
+        commandBytes += command.estimatedBytes();
+        current = node;
+        dirty = true;
+        visit(node);
+    }
+
+    /**
+     * Tells, before a command runs, whether it will merge into the current node's command: the node must be the
+     * latest version on its branch and its command must accept it.
+     */
+    boolean canMergeIntoCurrent(Command command) {
+        return current.command != null && current.children.isEmpty() && current.command.canMergeWith(command);
+    }
+
+    /**
+     * Merges a command that has just been executed into the current node's command, if the node is the latest
+     * version on its branch and its command accepts it.
+     */
+    boolean mergeIntoCurrent(Command command) {
+        if (current.command == null || !current.children.isEmpty()) {
+            return false;
+        }
+
+        long before = current.command.estimatedBytes();
+        if (!current.command.mergeWith(command)) {
+            return false;
+        }
+        commandBytes += current.command.estimatedBytes() - before;
+        dirty = true;
+        return true;
+    }
+
+    /**
+     * Takes the snapshot of the current node if the buffer has moved past it.
+     */
+    void seal() {
+        if (dirty) {
+            setSnapshot(current, buffer.snapshot());
+            dirty = false;
+        }
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Moves to the parent of the current node.
+     *
+     * @return the node that was left, whose command was undone, or null at the root
+     */
+    Node undo() {
+        Node from = current;
+        if (from.parent == null) {
+            return null;
+        }
+
+        seal();
+        // Redo comes back down the branch that was just left
+        from.parent.lastChild = from;
+        moveTo(from.parent);
+        return from;
+    }
+
+    /**
+     * Moves to the child of the current node that was visited last.
+     *
+     * @return the node that was entered, whose command was redone, or null if there is none
+     */
+    Node redo() {
+        Node to = current.lastChild;
+        if (to == null) {
+            return null;
+        }
+
+        seal();
+        moveTo(to);
+        return to;
+    }
+
+    void jumpTo(Node node) {
+        if (node.tree() != this) {
+            throw new IllegalArgumentException("Node belongs to another undo tree.");
+        }
+        if (node.pruned) {
+            throw new IllegalArgumentException("Node has been pruned from the undo tree.");
+        }
+
+        // Undoing from here sets the redo links on the way up, so redo can retrace the way back down
+        seal();
+        moveTo(node);
+    }
+
+    private void moveTo(Node node) {
+        if (node.snapshot != null) {
+            buffer.restore(node.snapshot);
+        } else {
+            replayTo(node);
+            // Coming back is O(1) until the budget drops the snapshot again
+            setSnapshot(node, buffer.snapshot());
+        }
+        current = node;
+        visit(node);
+    }
+
+    // Rebuilds the text of a version whose snapshot was dropped, starting from whichever is fewer commands away:
+    // the current text, or the nearest ancestor of the version that kept its snapshot
+    private void replayTo(Node target) {
+        Node ancestor = commonAncestor(current, target);
+        int viaCurrent = current.depth + target.depth - 2 * ancestor.depth;
+
+        Node keyframe = target;
+        while (keyframe != null && keyframe.snapshot == null) {
+            keyframe = keyframe.parent;
+        }
+
+        if (keyframe != null && target.depth - keyframe.depth < viaCurrent) {
+            buffer.restore(keyframe.snapshot);
+            executeDown(keyframe, target);
+        } else {
+            for (Node node = current; node != ancestor; node = node.parent) {
+                node.command.undo();
+            }
+            executeDown(ancestor, target);
+        }
+    }
+
+    // Runs the commands on the way down from a node to one of its descendants
+    private static void executeDown(Node from, Node to) {
+        Deque<Node> path = new ArrayDeque<>();
+        for (Node node = to; node != from; node = node.parent) {
+            path.push(node);
+        }
+        for (Node node : path) {
+            node.command.execute();
+        }
+    }
+
+    private static Node commonAncestor(Node a, Node b) {
+        while (a.depth > b.depth) {
+            a = a.parent;
+        }
+        while (b.depth > a.depth) {
+            b = b.parent;
+        }
+        while (a != b) {
+            a = a.parent;
+            b = b.parent;
+        }
+        return a;
+    }
+
+    private void setSnapshot(Node node, TextBuffer snapshot) {
+        snapshotBytes -= node.snapshotBytes;
+        node.snapshot = snapshot;
+        // The version differs from its parent by about the text its command holds
+        node.snapshotBytes = snapshot == null ? 0 : SNAPSHOT_BYTES + (node.command == null ? 0 : node.command.estimatedBytes());
+        snapshotBytes += node.snapshotBytes;
+    }
+
+    private void visit(Node node) {
+        long now = System.currentTimeMillis();
+        // Keep the timeline sorted even if the wall clock goes back
+        long last = timeline.isEmpty() ? now : timeline.get(timeline.size() - 1).millis;
+        timeline.add(new Visit(Math.max(now, last), node));
+        node.lastVisit = ++visitCount;
+        node.visits++;
+    }
+
+    /**
+     * Frees memory until the tree takes at most the given number of bytes, see {@link #getMemoryBytes()}.
+     * The snapshots of the versions visited longest ago are dropped first, then the oldest entries of the timeline.
+     * If that is not enough, the branches visited longest ago are pruned, as is the oldest history above the
+     * current version. The current version itself is always kept.
+     *
+     * @param targetBytes the size to get down to
+     */
+    void trim(long targetBytes) {
+        if (getMemoryBytes() <= targetBytes) {
+            return;
+        }
+
+        List<Node> nodes = new ArrayList<>(nodeCount);
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            nodes.add(node);
+            node.children.forEach(pending::push);
+        }
+        nodes.sort(Comparator.comparingLong(node -> node.lastVisit));
+
+        // The current version is visited last, so it loses its snapshot last; its text is in the buffer anyway
+        for (Node node : nodes) {
+            if (node.snapshot != null) {
+                setSnapshot(node, null);
+                if (getMemoryBytes() <= targetBytes) {
+                    return;
+                }
+            }
+        }
+
+        // Then the oldest visits, which only serve versionAt for times long past; the latest one is always kept
+        int excess = (int) Math.min(timeline.size() - 1, (getMemoryBytes() - targetBytes + VISIT_BYTES - 1) / VISIT_BYTES);
+        if (excess > 0) {
+            List<Visit> oldest = timeline.subList(0, excess);
+            oldest.forEach(visit -> visit.node.visits--);
+            oldest.clear();
+            if (getMemoryBytes() <= targetBytes) {
+                return;
+            }
+        }
+
+        Set<Node> path = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Node node = current; node != null; node = node.parent) {
+            path.add(node);
+        }
+        PriorityQueue<Node> tips = new PriorityQueue<>(Comparator.comparingLong(node -> node.lastVisit));
+        for (Node node : nodes) {
+            if (node.children.isEmpty() && !path.contains(node)) {
+                tips.add(node);
+            }
+        }
+
+        // The timeline entries of pruned nodes are removed in one pass at the end, but no longer counted
+        long prunedVisits = 0;
+        while (getMemoryBytes() - prunedVisits * VISIT_BYTES > targetBytes) {
+            Node tip = tips.peek();
+            if (root != current && root.children.size() == 1 && (tip == null || root.lastVisit <= tip.lastVisit)) {
+                // Forget the oldest step: the root's only child becomes the root
+                Node old = root;
+                root = old.children.get(0);
+                root.parent = null;
+                if (root.command != null) {
+                    commandBytes -= root.command.estimatedBytes();
+                    root.command = null;
+                }
+                prunedVisits += prune(old);
+            } else if (tip != null) {
+                tips.poll();
+                Node parent = tip.parent;
+                parent.children.remove(tip);
+                if (parent.lastChild == tip) {
+                    parent.lastChild = parent.children.isEmpty() ? null : parent.children.get(parent.children.size() - 1);
+                }
+                prunedVisits += prune(tip);
+                if (parent.children.isEmpty() && !path.contains(parent)) {
+                    tips.add(parent);
+                }
+            } else {
+                break;
+            }
+        }
+        if (prunedVisits > 0) {
+            timeline.removeIf(visit -> visit.node.pruned);
+        }
+    }
+
+    // Removes a node that nothing refers to any more from the counts, and returns its number of timeline entries
+    private long prune(Node node) {
+        node.pruned = true;
+        setSnapshot(node, null);
+        if (node.command != null) {
+            commandBytes -= node.command.estimatedBytes();
+        }
+        nodeCount--;
+        return node.visits;
+    }
+
+    /**
+     * Finds the version the buffer was at at a given time, i.e. the node that was current then.
+     * The lookup is a binary search over the visited nodes.
+     *
+     * @param epochMillis the time, in milliseconds since the epoch
+     * @return the node that was current at that time, or the root for times before the oldest kept visit
+     */
+    public Node versionAt(long epochMillis) {
+        int low = 0;
+        int high = timeline.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (timeline.get(mid).millis <= epochMillis) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return timeline.get(low).millis <= epochMillis ? timeline.get(low).node : root;
+    }
+
+    /**
+     * Gets the oldest version kept, the root of the tree. It changes once the budget prunes the oldest history.
+     *
+     * @return the root
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    public Node getCurrent() {
+        return current;
+    }
+
+    /**
+     * Gets the number of versions in the tree, the root included.
+     *
+     * @return the number of nodes
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Gets the estimated memory taken by the commands of the nodes.
+     *
+     * @return the size in bytes
+     */
+    public long getCommandBytes() {
+        return commandBytes;
+    }
+
+    /**
+     * Gets the estimated memory kept alive by the snapshots: for each one, about the text its version differs by
+     * plus the tree nodes the snapshot does not share with the others.
+     *
+     * @return the size in bytes
+     */
+    public long getSnapshotBytes() {
+        return snapshotBytes;
+    }
+
+    /**
+     * Gets the estimated memory taken by the tree: the commands, the text kept alive by the snapshots, the nodes
+     * themselves and the timeline.
+     *
+     * @return the size in bytes
+     */
+    public long getMemoryBytes() {
+        return commandBytes + snapshotBytes + nodeCount * NODE_BYTES + timeline.size() * VISIT_BYTES;
+    }
+
+    /**
+     * One version of the buffer: the text after the command of the node ran on the parent's text.
+     */
+    public final class Node {
+        private final int id;
+        private final long createdMillis;
+        private final int depth; // Steps from the first root; getDepth() counts from the current root
+        private final List<Node> children = new ArrayList<>(1);
+        private Node parent;
+        private Command command;
+        private Node lastChild; // The child redo goes to
+        private TextBuffer snapshot; // The text of this version, or null if it has to be rebuilt
+        private long snapshotBytes;
+        private long lastVisit; // The number of the last visit, 0 if never current
+        private int visits; // The number of timeline entries of this node
+        private boolean pruned;
+
+        private Node(int id, Node parent, Command command) {
+            this.id = id;
+            this.parent = parent;
+            this.command = command;
+            this.createdMillis = System.currentTimeMillis();
+            this.depth = parent == null ? 0 : parent.depth + 1;
+        }
+
+        /**
+         * Gets the number of the node; nodes are numbered in the order they were created, the first root being 0.
+         *
+         * @return the id
+         */
+        public int getId() {
+            return id;
+        }
+
+        public Node getParent() {
+            return parent;
+        }
+
+        /**
+         * Gets the versions made from this one, oldest first. There is more than one after an undo was followed
+         * by a new edit.
+         *
+         * @return an unmodifiable view of the children
+         */
+        public List<Node> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+
+        /**
+         * Gets the command that turned the parent's text into this version's.
+         *
+         * @return the command, or null for the root
+         */
+        public Command getCommand() {
+            return command;
+        }
+
+        /**
+         * Gets the child that redo moves to: the one visited last.
+         *
+         * @return the child, or null if this version has none
+         */
+        public Node getLastChild() {
+            return lastChild;
+        }
+
+        public long getCreatedMillis() {
+            return createdMillis;
+        }
+
+        /**
+         * Gets the number of steps between the root and this version.
+         *
+         * @return the depth
+         */
+        public int getDepth() {
+            return depth - root.depth;
+        }
+
+        /**
+         * Tells whether moving to this version is a single restore, or has to run commands to rebuild its text
+         * because its snapshot was dropped to stay within the memory budget.
+         *
+         * @return true if the version keeps its snapshot
+         */
+        public boolean hasSnapshot() {
+            return snapshot != null;
+        }
+
+        /**
+         * Tells whether the version has been removed from the tree to stay within the memory budget.
+         * A pruned version can no longer be jumped to.
+         *
+         * @return true if the version was pruned
+         */
+        public boolean isPruned() {
+            return pruned;
+        }
+
+        private UndoTree tree() {
+            return UndoTree.this;
+        }
+    }
+
+    private static class Visit {
+        final long millis;
+        final Node node;
+
+        Visit(long millis, Node node) {
+            this.millis = millis;
+            this.node = node;
+        }
+    }
+}
@@ -1,22 +1,82 @@
 package com.texteditor.editor.io;
 
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.File;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 import com.texteditor.editor.Rope;
+import com.texteditor.editor.RopeBuilder;
+import com.texteditor.editor.TextBuffer;
 
 public class FileIO {
+    // Size of the mapped leaves; each one is a view into the file, so this only bounds the node count
+    private static final int MAPPED_CHUNK_SIZE = 64 * 1024;
+
+    // Largest region mapped at once (FileChannel.map is limited to Integer.MAX_VALUE bytes)
+    private static final int MAX_REGION_SIZE = 1 << 30;
+
+    private static final long ASCII_MASK = 0x8080808080808080L;
+
+    // Number of chars encoded per block when saving
+    private static final int SAVE_BLOCK_SIZE = 32 * 1024;
+
+    // Encoded bytes are collected in this many direct buffers of this size, then written with one gathering write
+    private static final int SAVE_BUFFER_COUNT = 4;
+    private static final int SAVE_BUFFER_SIZE = 256 * 1024;
+
+    // Direct buffers are costly to allocate and are freed only by the GC, so saves reuse them with their encoder
+    private static final Deque<SaveBuffers> SAVE_BUFFER_POOL = new ArrayDeque<>();
+
     /**
-     * Saves the content of a Rope object to a file at the specified path.
+     * Saves the content of a text buffer to a file at the specified path, encoded as UTF-8.
      *
      * @param path     The directory path where the file should be saved.
-     * @param data     The Rope object containing the data to be saved.
+     * @param data     The text buffer containing the data to be saved.
      * @param type     The type of the file to be saved (e.g., TXT).
      * @param fileName The name of the file (without extension).
      */
+    public static void saveFile(String path, TextBuffer data, FileType type, String fileName) {
+        saveFile(path, data, type, fileName, null);
+    }
+
+    /**
+     * Saves the content of a text buffer to a file at the specified path, encoded as UTF-8.
+     * <p>
+     * The text is encoded a block at a time into a small set of reused direct buffers, so saving takes about 1 MB
+     * of extra memory whatever the size of the document. The bytes go to a temporary file next to the target,
+     * which is synced to disk and then renamed over the target: if the save fails or the machine crashes, the
+     * previous version of the file is left intact. This also makes it safe to save over the file a Rope was
+     * opened from with {@link #openFile}, as the mapping keeps the old contents.
+     * <p>
+     * The encoded size is known up front ({@link TextBuffer#utf8Length()} is O(1) for a Rope), so the file is
+     * grown to its final size before writing, which lets the file system lay it out in one piece, and the
+     * progress listener is told the exact fraction written.
+     *
+     * @param path     The directory path where the file should be saved.
+     * @param data     The text buffer containing the data to be saved.
+     * @param type     The type of the file to be saved (e.g., TXT).
+     * @param fileName The name of the file (without extension).
+     * @param progress Receives progress updates, or null.
+     */
     @SuppressWarnings("all")
-    public static void saveFile(String path, Rope data, FileType type, String fileName) {
+    public static void saveFile(String path, TextBuffer data, FileType type, String fileName, SaveProgressListener progress) {
         File file = null;
 
         try {
@@ -29,22 +89,304 @@ public class FileIO {
                     if (file.getParentFile() != null && !file.getParentFile().exists()) {
                         file.getParentFile().mkdirs();
                     }
-
-                    // Create the file if it doesn't exist
-                    if (!file.exists()) {
-                        file.createNewFile();
-                    }
                 }
             }
 
             // Ensure the file object is not null and write data to the file
             assert file != null;
-            try (FileWriter writer = new FileWriter(file)) {
-                writer.write(data.getRopeData());
+            Path target = file.toPath().toAbsolutePath();
+            Path temp = target.resolveSibling("." + target.getFileName() + "." + System.nanoTime() + ".tmp");
+
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                    writeUtf8(channel, data, progress);
+                    channel.force(true);
+                }
+                copyPermissions(target, temp);
+                replace(temp, target);
+            } finally {
+                Files.deleteIfExists(temp);
             }
 
         } catch (IOException e) {
-            throw new RuntimeException("Error saving file. ");
+            throw new RuntimeException("Error saving file. ", e);
+        }
+    }
+
+    // Encodes the buffer block by block into a file that has been grown to the encoded size up front
+    private static void writeUtf8(FileChannel channel, TextBuffer data, SaveProgressListener progress) throws IOException {
+        long total = data.utf8Length();
+        if (total > 0) {
+            // Writing the last byte sets the file's size; positional writes leave the channel position at 0
+            channel.write(ByteBuffer.wrap(new byte[1]), total - 1);
+        }
+
+        int length = data.length();
+        char[] chars = new char[Math.min(length, SAVE_BLOCK_SIZE) + 1];
+        SaveBuffers saveBuffers = acquireSaveBuffers();
+        CharsetEncoder encoder = saveBuffers.encoder;
+        ByteBuffer[] buffers = saveBuffers.buffers;
+        int filled = 0; // Index of the buffer being filled; the ones before it are full
+        long written = 0;
+
+        try {
+            for (int start = 0; start < length; ) {
+                int end = Math.min(length, start + SAVE_BLOCK_SIZE);
+                // Keep surrogate pairs within one block, so the encoder never sees half of one
+                if (end < length && Character.isHighSurrogate(data.charAt(end - 1))) {
+                    end++;
+                }
+
+                data.charsInRange(start, end, chars, 0);
+                CharBuffer in = CharBuffer.wrap(chars, 0, end - start);
+                boolean last = end == length;
+
+                while (encoder.encode(in, buffers[filled], last).isOverflow()) {
+                    if (++filled == buffers.length) {
+                        written += drain(channel, buffers, filled);
+                        filled = 0;
+                        if (progress != null) {
+                            progress.onProgress(written, total);
+                        }
+                    }
+                }
+                start = end;
+            }
+
+            // An empty buffer never reached the end of input, and has nothing to flush
+            while (length > 0 && encoder.flush(buffers[filled]).isOverflow()) {
+                filled++;
+            }
+            written += drain(channel, buffers, filled + 1);
+            if (progress != null) {
+                progress.onProgress(written, total);
+            }
+        } finally {
+            releaseSaveBuffers(saveBuffers);
+        }
+
+        // Only differs from the preallocated size if the buffer changed while it was being saved
+        channel.truncate(written);
+    }
+
+    // Writes out the first count buffers with gathering writes and clears them
+    private static long drain(FileChannel channel, ByteBuffer[] buffers, int count) throws IOException {
+        long bytes = 0;
+        for (int i = 0; i < count; i++) {
+            buffers[i].flip();
+            bytes += buffers[i].remaining();
+        }
+        for (long left = bytes; left > 0; ) {
+            left -= channel.write(buffers, 0, count);
+        }
+        for (int i = 0; i < count; i++) {
+            buffers[i].clear();
+        }
+        return bytes;
+    }
+
+    private static SaveBuffers acquireSaveBuffers() {
+        synchronized (SAVE_BUFFER_POOL) {
+            SaveBuffers saveBuffers = SAVE_BUFFER_POOL.poll();
+            if (saveBuffers != null) {
+                return saveBuffers;
+            }
+        }
+        return new SaveBuffers();
+    }
+
+    private static void releaseSaveBuffers(SaveBuffers saveBuffers) {
+        saveBuffers.encoder.reset();
+        for (ByteBuffer buffer : saveBuffers.buffers) {
+            buffer.clear();
+        }
+        synchronized (SAVE_BUFFER_POOL) {
+            // Only keep one set per save that may run at the same time
+            if (SAVE_BUFFER_POOL.size() < 2) {
+                SAVE_BUFFER_POOL.push(saveBuffers);
+            }
         }
     }
+
+    /**
+     * The state one save needs: a UTF-8 encoder and the direct buffers it encodes into.
+     */
+    private static class SaveBuffers {
+        final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final ByteBuffer[] buffers = new ByteBuffer[SAVE_BUFFER_COUNT];
+
+        SaveBuffers() {
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = ByteBuffer.allocateDirect(SAVE_BUFFER_SIZE);
+            }
+        }
+    }
+
+    // Gives the new file the permissions of the one it replaces, where the file system supports them
+    private static void copyPermissions(Path from, Path to) {
+        try {
+            if (Files.exists(from)) {
+                Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+            }
+        } catch (UnsupportedOperationException | IOException ignored) {
+            // The new file keeps the default permissions
+        }
+    }
+
+    // Renames the temporary file over the target, atomically where the file system allows it
+    private static void replace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        // Sync the directory so the rename itself survives a crash; not every platform can open a directory
+        try (FileChannel directory = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException ignored) {
+            // The file's contents are on disk already
+        }
+    }
+
+    /**
+     * Opens a UTF-8 text file as a Rope. See {@link #openFile(Path, Charset)}.
+     *
+     * @param path The file to open.
+     * @return A Rope holding the file's text.
+     */
+    public static Rope openFile(Path path) {
+        return openFile(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Opens a text file as a Rope without reading it onto the heap.
+     * <p>
+     * The file is memory-mapped and cut into leaves that are read-only views of the mapping. For Latin-1 and
+     * ASCII files, every leaf is such a view and the file is not even read, so opening takes the same few
+     * milliseconds whatever its size. For UTF-8 files, pure-ASCII chunks become views and only chunks that
+     * contain multi-byte characters are decoded onto the heap; this needs one sequential pass over the file.
+     * Other charsets are decoded onto the heap while streaming. In every case, edits only create heap leaves
+     * for the regions they touch.
+     * <p>
+     * The file must not be modified by other programs while the Rope is in use.
+     *
+     * @param path    The file to open.
+     * @param charset The charset of the file.
+     * @return A Rope holding the file's text.
+     */
+    public static Rope openFile(Path path, Charset charset) {
+        try {
+            boolean oneBytePerChar = charset.equals(StandardCharsets.ISO_8859_1) || charset.equals(StandardCharsets.US_ASCII);
+
+            if (!oneBytePerChar && !charset.equals(StandardCharsets.UTF_8)) {
+                return readFile(path, charset);
+            }
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return mapFile(channel, oneBytePerChar);
+            }
+
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening file. ", e);
+        }
+    }
+
+    // Builds a Rope out of views into the mapped file, decoding only the chunks that are not ASCII
+    private static Rope mapFile(FileChannel channel, boolean oneBytePerChar) throws IOException {
+        RopeBuilder builder = new RopeBuilder();
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        long size = channel.size();
+        long position = 0;
+        long characters = 0;
+
+        while (position < size) {
+            int regionSize = (int) Math.min(MAX_REGION_SIZE, size - position);
+            boolean lastRegion = position + regionSize == size;
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+
+            int offset = 0;
+            if (position == 0 && !oneBytePerChar && hasUtf8Bom(region)) {
+                offset = 3;
+            }
+
+            while (offset < regionSize) {
+                int end = Math.min(regionSize, offset + MAPPED_CHUNK_SIZE);
+
+                if (oneBytePerChar || isAscii(region, offset, end)) {
+                    builder.appendLatin1View(region.slice(offset, end - offset));
+                    characters += end - offset;
+                } else {
+                    if (end < regionSize || !lastRegion) {
+                        end = utf8Boundary(region, offset, end);
+                    }
+                    if (end == offset) {
+                        // An incomplete sequence at the end of the region: map the next region from here
+                        break;
+                    }
+
+                    CharBuffer decoded = decoder.decode(region.slice(offset, end - offset));
+                    builder.append(decoded);
+                    characters += decoded.length();
+                }
+
+                if (characters > Integer.MAX_VALUE) {
+                    throw new IOException("File is too large to open: more than " + Integer.MAX_VALUE + " characters.");
+                }
+                offset = end;
+            }
+
+            position += offset;
+        }
+
+        return builder.toRope();
+    }
+
+    // Decodes a file in any charset onto the heap, one buffer at a time
+    private static Rope readFile(Path path, Charset charset) throws IOException {
+        RopeBuilder builder = new RopeBuilder();
+        char[] buffer = new char[8192];
+
+        try (Reader reader = Files.newBufferedReader(path, charset)) {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                builder.append(CharBuffer.wrap(buffer, 0, read));
+            }
+        }
+
+        return builder.toRope();
+    }
+
+    private static boolean isAscii(ByteBuffer bytes, int start, int end) {
+        int i = start;
+        for (; i + 8 <= end; i += 8) {
+            if ((bytes.getLong(i) & ASCII_MASK) != 0) return false;
+        }
+        for (; i < end; i++) {
+            if (bytes.get(i) < 0) return false;
+        }
+        return true;
+    }
+
+    // Moves the end of a chunk back so it does not cut a multi-byte UTF-8 sequence in half
+    private static int utf8Boundary(ByteBuffer bytes, int start, int end) {
+        int lead = end - 1;
+        while (lead > start && end - lead < 4 && (bytes.get(lead) & 0xC0) == 0x80) {
+            lead--;
+        }
+
+        int b = bytes.get(lead) & 0xFF;
+        int sequenceLength = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+        return end - lead < sequenceLength ? lead : end;
+    }
+
+    private static boolean hasUtf8Bom(ByteBuffer bytes) {
+        return bytes.limit() >= 3
+                && (bytes.get(0) & 0xFF) == 0xEF && (bytes.get(1) & 0xFF) == 0xBB && (bytes.get(2) & 0xFF) == 0xBF;
+    }
 }
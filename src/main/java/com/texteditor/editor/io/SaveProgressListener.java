@@ -0,0 +1,16 @@
+package com.texteditor.editor.io;
+
+/**
+ * Receives progress updates while {@link FileIO} saves a buffer. The total is the exact size of the file being
+ * written, known before the first byte goes out, so the two values give an exact fraction.
+ */
+@FunctionalInterface
+public interface SaveProgressListener {
+    /**
+     * Called after each block of bytes has been written.
+     *
+     * @param bytesWritten The number of bytes written so far.
+     * @param totalBytes The size of the whole file.
+     */
+    void onProgress(long bytesWritten, long totalBytes);
+}
@@ -0,0 +1,84 @@
+package com.texteditor.editor.search;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Lazily produces the offsets of successive, non-overlapping matches. The next match is only searched for
+ * when {@link #hasNext()} is called, so stopping early costs nothing.
+ * <p>
+ * A search can be cancelled from any thread with {@link #cancel()}; a scan in progress notices it within a
+ * few thousand characters and the iterator then reports no further matches.
+ */
+public final class MatchIterator implements PrimitiveIterator.OfInt {
+    private static final int UNKNOWN = -2;
+
+    private final RopeSearcher searcher;
+    private final SearchCursor cursor;
+    private final int length;
+
+    private int fromIndex;
+    private int nextMatch = UNKNOWN;
+    private volatile boolean cancelled;
+
+    MatchIterator(RopeSearcher searcher, SearchCursor cursor, int length, int fromIndex) {
+        this.searcher = searcher;
+        this.cursor = cursor;
+        this.length = length;
+        this.fromIndex = fromIndex;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (cancelled) {
+            return false;
+        }
+        if (nextMatch == UNKNOWN) {
+            nextMatch = searcher.findNext(cursor, length, fromIndex, this);
+        }
+        return nextMatch >= 0 && !cancelled;
+    }
+
+    @Override
+    public int nextInt() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        int match = nextMatch;
+        fromIndex = match + searcher.patternLength();
+        nextMatch = UNKNOWN;
+        return match;
+    }
+
+    /**
+     * Collects all remaining match offsets, for example to hand them to {@code TextBuffer.replaceAll}.
+     *
+     * @return The remaining match offsets in ascending order.
+     */
+    public int[] toArray() {
+        int[] matches = new int[16];
+        int count = 0;
+
+        while (hasNext()) {
+            if (count == matches.length) {
+                matches = Arrays.copyOf(matches, count * 2);
+            }
+            matches[count++] = nextInt();
+        }
+
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * Stops the search. Safe to call from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,166 @@
+package com.texteditor.editor.search;
+
+import com.texteditor.editor.RopeCursor;
+import com.texteditor.editor.TextBuffer;
+
+import java.util.Arrays;
+
+/**
+ * Finds occurrences of a literal pattern in a TextBuffer using the Boyer-Moore-Horspool algorithm.
+ * <p>
+ * A Rope is read through a {@link RopeCursor}, so matches that cross leaf boundaries are found without
+ * ever building the document as a String, and a search allocates only the cursor. Any other buffer is copied
+ * a block at a time, so a search holds one small array however large the document is. A searcher holds only
+ * the preprocessed pattern and can be reused for any number of buffers and threads.
+ */
+public final class RopeSearcher {
+    private static final int SHIFT_TABLE_SIZE = 256;
+
+    private final char[] pattern;
+    private final SearchOptions options;
+
+    // Horspool bad-character shifts. Characters are bucketed by their low byte and each bucket keeps the
+    // smallest shift of the characters that fall into it, which is always safe.
+    private final int[] shifts = new int[SHIFT_TABLE_SIZE];
+
+    public RopeSearcher(String pattern) {
+        this(pattern, SearchOptions.DEFAULT);
+    }
+
+    /**
+     * Creates a searcher for the given pattern.
+     *
+     * @param pattern The literal text to look for.
+     * @param options The search options.
+     * @throws IllegalArgumentException If the pattern is empty.
+     */
+    public RopeSearcher(String pattern, SearchOptions options) {
+        if (pattern == null || pattern.isEmpty()) {
+            throw new IllegalArgumentException("Search pattern must not be empty.");
+        }
+
+        this.options = options;
+        this.pattern = new char[pattern.length()];
+        for (int i = 0; i < pattern.length(); i++) {
+            this.pattern[i] = fold(pattern.charAt(i));
+        }
+
+        int m = this.pattern.length;
+        Arrays.fill(shifts, m);
+        for (int i = 0; i < m - 1; i++) {
+            int bucket = this.pattern[i] & (SHIFT_TABLE_SIZE - 1);
+            shifts[bucket] = Math.min(shifts[bucket], m - 1 - i);
+        }
+    }
+
+    /**
+     * Returns the length of the pattern, which is also the length of every match.
+     *
+     * @return The pattern length.
+     */
+    public int patternLength() {
+        return pattern.length;
+    }
+
+    /**
+     * Finds the first match at or after the given index.
+     *
+     * @param text The buffer to search.
+     * @param fromIndex The index to start searching from.
+     * @return The offset of the first match, or -1 if there is none.
+     */
+    public int find(TextBuffer text, int fromIndex) {
+        int length = text.length();
+        if (fromIndex > length) {
+            return -1;
+        }
+
+        SearchCursor cursor = SearchCursor.over(text, Math.max(0, fromIndex), pattern.length);
+        return findNext(cursor, length, Math.max(0, fromIndex), null);
+    }
+
+    /**
+     * Lazily iterates over all non-overlapping matches in the buffer, from the start to the end.
+     * The iterator works on a snapshot, so later edits to the buffer do not affect it.
+     *
+     * @param text The buffer to search.
+     * @return An iterator over the match offsets, which can be cancelled from any thread.
+     */
+    public MatchIterator findAll(TextBuffer text) {
+        return findAll(text, 0);
+    }
+
+    /**
+     * Lazily iterates over all non-overlapping matches at or after the given index.
+     *
+     * @param text The buffer to search.
+     * @param fromIndex The index to start searching from.
+     * @return An iterator over the match offsets, which can be cancelled from any thread.
+     */
+    public MatchIterator findAll(TextBuffer text, int fromIndex) {
+        TextBuffer snapshot = text.snapshot();
+        int start = Math.min(Math.max(0, fromIndex), snapshot.length());
+        return new MatchIterator(this, SearchCursor.over(snapshot, start, pattern.length), snapshot.length(), start);
+    }
+
+    /**
+     * Runs the Horspool scan from the given index.
+     *
+     * @param cursor A cursor over the text; its position is changed.
+     * @param length The length of the text.
+     * @param fromIndex The index to start searching from.
+     * @param owner The iterator to poll for cancellation, or null.
+     * @return The offset of the next match, or -1 if there is none or the search was cancelled.
+     */
+    int findNext(SearchCursor cursor, int length, int fromIndex, MatchIterator owner) {
+        int m = pattern.length;
+        int pos = fromIndex;
+        int windows = 0;
+
+        while (pos <= length - m) {
+            if (owner != null && (++windows & 0xFFF) == 0 && owner.isCancelled()) {
+                return -1;
+            }
+
+            cursor.seek(pos + m);
+            char last = fold(cursor.prev());
+            char current = last;
+            int i = m - 1;
+
+            while (current == pattern[i]) {
+                if (i == 0) {
+                    if (!options.isWholeWord() || isWholeWord(cursor, pos, m, length)) {
+                        return pos;
+                    }
+                    break;
+                }
+                current = fold(cursor.prev());
+                i--;
+            }
+
+            pos += shifts[last & (SHIFT_TABLE_SIZE - 1)];
+        }
+
+        return -1;
+    }
+
+    private boolean isWholeWord(SearchCursor cursor, int start, int m, int length) {
+        if (start > 0) {
+            cursor.seek(start - 1);
+            if (isWordChar(cursor.peek())) return false;
+        }
+        if (start + m < length) {
+            cursor.seek(start + m);
+            if (isWordChar(cursor.peek())) return false;
+        }
+        return true;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private char fold(char c) {
+        return options.isIgnoreCase() ? Character.toLowerCase(Character.toUpperCase(c)) : c;
+    }
+}
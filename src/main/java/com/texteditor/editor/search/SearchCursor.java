@@ -0,0 +1,112 @@
+package com.texteditor.editor.search;
+
+import com.texteditor.editor.Rope;
+import com.texteditor.editor.RopeCursor;
+import com.texteditor.editor.TextBuffer;
+
+/**
+ * The reads the searcher makes: it jumps ahead to the end of each window and walks back through it.
+ * A Rope is read through a {@link RopeCursor}; any other buffer through a small window of copied characters.
+ */
+interface SearchCursor {
+
+    void seek(int offset);
+
+    char prev();
+
+    char peek();
+
+    /**
+     * Creates a cursor over a buffer. The cursor reads the buffer as it is; pass a snapshot if it may change.
+     *
+     * @param text The text to read.
+     * @param offset The starting position, between 0 and the length of the text.
+     * @param patternLength The length of the windows the searcher compares.
+     * @return A cursor positioned at the offset.
+     */
+    static SearchCursor over(TextBuffer text, int offset, int patternLength) {
+        if (text instanceof Rope rope) {
+            return new OfRope(rope.cursor(offset));
+        }
+        return new OfBuffer(text, offset, patternLength);
+    }
+
+    final class OfRope implements SearchCursor {
+        private final RopeCursor cursor;
+
+        OfRope(RopeCursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public void seek(int offset) {
+            cursor.seek(offset);
+        }
+
+        @Override
+        public char prev() {
+            return cursor.prev();
+        }
+
+        @Override
+        public char peek() {
+            return cursor.peek();
+        }
+    }
+
+    /**
+     * Copies the text a block at a time with {@link TextBuffer#charsInRange}. Each block starts a window's length
+     * before the character that missed, so the window being compared, and the character before it, carry over
+     * from one block to the next instead of being read across a seam.
+     */
+    final class OfBuffer implements SearchCursor {
+        private static final int BLOCK_SIZE = 8192;
+
+        private final TextBuffer text;
+        private final int length;
+        private final int patternLength;
+        private final char[] block;
+
+        private int blockStart;
+        private int blockEnd;
+        private int position;
+
+        OfBuffer(TextBuffer text, int offset, int patternLength) {
+            this.text = text;
+            this.length = text.length();
+            this.patternLength = patternLength;
+            this.block = new char[Math.max(BLOCK_SIZE, 4 * (patternLength + 1))];
+            seek(offset);
+        }
+
+        @Override
+        public void seek(int offset) {
+            if (offset < 0 || offset > length) {
+                throw new IndexOutOfBoundsException("Cursor position out of bounds: " + offset);
+            }
+            position = offset;
+        }
+
+        @Override
+        public char prev() {
+            return charAt(--position);
+        }
+
+        @Override
+        public char peek() {
+            return charAt(position);
+        }
+
+        private char charAt(int index) {
+            if (index < blockStart || index >= blockEnd) {
+                if (index < 0 || index >= length) {
+                    throw new IndexOutOfBoundsException("Cursor position out of bounds: " + index);
+                }
+                blockStart = Math.max(0, index - patternLength);
+                blockEnd = Math.min(length, blockStart + block.length);
+                text.charsInRange(blockStart, blockEnd, block, 0);
+            }
+            return block[index - blockStart];
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.texteditor.editor.search;
+
+/**
+ * Options for a literal search in a TextBuffer.
+ */
+public final class SearchOptions {
+    public static final SearchOptions DEFAULT = new SearchOptions(false, false);
+
+    private final boolean ignoreCase;
+    private final boolean wholeWord;
+
+    /**
+     * Creates a set of search options.
+     *
+     * @param ignoreCase If true, characters are compared without regard to case.
+     * @param wholeWord If true, a match only counts when it is not preceded or followed by a word character.
+     */
+    public SearchOptions(boolean ignoreCase, boolean wholeWord) {
+        this.ignoreCase = ignoreCase;
+        this.wholeWord = wholeWord;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    public boolean isWholeWord() {
+        return wholeWord;
+    }
+}
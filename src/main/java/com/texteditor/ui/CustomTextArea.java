@@ -3,6 +3,7 @@ package com.texteditor.ui;
 import com.texteditor.editor.*;
 import com.texteditor.editor.commands.Command;
 import com.texteditor.editor.commands.CommandManager;
+import com.texteditor.editor.commands.CompoundCommand;
 import com.texteditor.editor.commands.DeleteCommand;
 import com.texteditor.editor.commands.InsertCommand;
 
@@ -25,7 +26,7 @@ import java.util.ArrayList;
 
 public class CustomTextArea extends Canvas {
     private static final int FONT_SIZE = 13;
-    private final Rope rope;
+    private final TextBuffer buffer;
 
     // cursor related
     private boolean cursorVisible = true;
@@ -36,18 +37,19 @@ public class CustomTextArea extends Canvas {
     private final Text textMetrics;
     private final List<LineInfo> wrappedLines = new ArrayList<>();
 
-    CommandManager commandManager = new CommandManager();
+    final CommandManager commandManager;
 
     // Interface for listening to the text change
     public interface TextChangeListener {
-        void onTextChanged(String newText);
+        void onTextChanged(TextBuffer buffer);
     }
 
-    public CustomTextArea(Rope rope) {
+    public CustomTextArea(TextBuffer buffer) {
         final int WINDOW_WIDTH = 710;
         final int WINDOW_HEIGHT = 400;
 
-        this.rope = rope;
+        this.buffer = buffer;
+        this.commandManager = new CommandManager(buffer);
         this.textMetrics = new Text();
 
         setWidth(WINDOW_WIDTH);
@@ -73,20 +75,18 @@ public class CustomTextArea extends Canvas {
         timeline.play();
     }
 
-    // Helper functions to calculate the index for inserting into the Rope
+    // Helper functions to calculate the index for inserting into the text buffer
+    // Every wrapped row remembers the offset it starts at, so this does not depend on the row number
     private int calculateIndexPosition() {
-        // Calculate the position to insert
-        // Could be in the middle
-        int posToInsert = 0;
-
-        // all chars of every line except this current one
-        for (int idx = 0; idx < cursorY / FONT_SIZE - 1; idx ++) {
-            posToInsert += getCharsAtY(idx);
+        int row = (int) Math.round(cursorY / (FONT_SIZE + 5));
+        if (row >= wrappedLines.size()) {
+            return buffer.length();
         }
 
-        // add all the chars on the current line up until the cursor
-        posToInsert += getCharsUpToX();
-        return posToInsert;
+        // start of the current row plus all the chars on it up until the cursor
+        LineInfo line = wrappedLines.get(row);
+        int posToInsert = line.startOffset + columnToOffset(line.content, getCharsUpToX());
+        return Math.min(posToInsert, buffer.length());
     }
 
     // Sets up event handlers for keyboard and mouse inputs
@@ -96,11 +96,13 @@ public class CustomTextArea extends Canvas {
             String character = event.getCharacter();
             String validCharacters = ".,!?-():;/\\@#$%&*+=<>[]{}|`~^";
 
-            if (!character.isEmpty() && (Character.isLetterOrDigit(character.charAt(0))
-                    || Character.isWhitespace(character.charAt(0)) || validCharacters.contains(character)))
+            // Code points rather than chars, so letters and emoji outside the BMP get through as well
+            int codePoint = character.isEmpty() ? 0 : character.codePointAt(0);
+            if (!character.isEmpty() && (Character.isLetterOrDigit(codePoint) || Character.isWhitespace(codePoint)
+                    || Character.getType(codePoint) == Character.OTHER_SYMBOL || validCharacters.contains(character)))
             {
 
-                rope.insert(calculateIndexPosition(), character);
+                commandManager.executeCommand(new InsertCommand(buffer, character, calculateIndexPosition()));
                 updateCursorIncrementX(getTextWidth(character));
                 notifyTextChanged();
                 renderContent();
@@ -114,20 +116,27 @@ public class CustomTextArea extends Canvas {
 
             if (undoCombination.match(event)) {
                 Command undoCommand = commandManager.undo();
-                updateCursorAfterUndoRedo(undoCommand);
+                renderContent();
+                updateCursorAfterUndoRedo(undoCommand, true);
+                notifyTextChanged();
                 renderContent();
             }
             else if (redoCombination.match(event)) {
                 Command redoCommand = commandManager.redo();
-                updateCursorAfterUndoRedo(redoCommand);
+                renderContent();
+                updateCursorAfterUndoRedo(redoCommand, false);
+                notifyTextChanged();
                 renderContent();
             }
             else {
                 switch (event.getCode()) {
                     case BACK_SPACE -> {
-                        if (!rope.isEmpty() && calculateIndexPosition() > 0) {
-                            String lastChar = rope.peakLastChar(calculateIndexPosition());
-                            Command backspaceCommand = new DeleteCommand(rope, calculateIndexPosition() - 1, calculateIndexPosition());
+                        if (!buffer.isEmpty() && calculateIndexPosition() > 0) {
+                            // Remove the whole grapheme cluster before the cursor, never half a surrogate pair
+                            int end = calculateIndexPosition();
+                            int start = buffer.previousGraphemeBoundary(end);
+                            String lastChar = buffer.getText(start, end);
+                            Command backspaceCommand = new DeleteCommand(buffer, start, end);
                             commandManager.executeCommand(backspaceCommand);
                             updateCursorDecrementX(getTextWidth(lastChar));
                             notifyTextChanged();
@@ -135,31 +144,35 @@ public class CustomTextArea extends Canvas {
                         }
                     }
                     case ENTER -> {
-                        rope.insert(calculateIndexPosition(), "\n");
+                        commandManager.executeCommand(new InsertCommand(buffer, "\n", calculateIndexPosition()));
                         cursorX = 0;
                         updateCursorIncrementY();
                         notifyTextChanged();
                         renderContent();
                     }
                     case UP -> {
+                        commandManager.breakMerge();
                         updateCursorDecrementY();
                         renderContent();
                     }
                     case DOWN -> {
+                        commandManager.breakMerge();
                         updateCursorIncrementY();
                         renderContent();
                     }
                     case LEFT -> {
+                        commandManager.breakMerge();
                         if (cursorX > 0) {
-                            int pos = getCharsUpToX();
-                            updateCursorDecrementX(getTextWidth(rope.substring(pos - 1, pos).getRopeData()));
+                            int pos = calculateIndexPosition();
+                            updateCursorDecrementX(getTextWidth(buffer.getText(buffer.previousGraphemeBoundary(pos), pos)));
                         }
                     }
                     case RIGHT -> {
-                        int pos = getCharsUpToX();
+                        commandManager.breakMerge();
+                        int pos = calculateIndexPosition();
 
-                        if (cursorX / getTextWidth("A") < rope.getStringSize()) {
-                            String nextChar = rope.substring(pos, pos + 1).getRopeData();
+                        if (pos < buffer.length()) {
+                            String nextChar = buffer.getText(pos, buffer.nextGraphemeBoundary(pos));
                             updateCursorIncrementX(getTextWidth(nextChar));
                         }
                     }
@@ -170,6 +183,7 @@ public class CustomTextArea extends Canvas {
         // handles when a mouse clicks inside the text area to update the cursor position
         setOnMouseClicked(event -> {
             requestFocus();
+            commandManager.breakMerge();
             double clickX = event.getX();
             double clickY = event.getY();
             updateCursorPosition(clickX, clickY);
@@ -181,11 +195,13 @@ public class CustomTextArea extends Canvas {
         double x;
         double y;
         String content;
+        int startOffset; // offset in the buffer of the first char on this row
 
-        LineInfo(double x, double y, String content) {
+        LineInfo(double x, double y, String content, int startOffset) {
             this.x = x;
             this.y = y;
             this.content = content;
+            this.startOffset = startOffset;
         }
     }
 
@@ -201,10 +217,13 @@ public class CustomTextArea extends Canvas {
         gc.setFill(Constants.FONT_WHITE);
 
         wrappedLines.clear();
-        String[] lines = rope.getRopeData().split("\n");
         double y = FONT_SIZE;
+        int lineCount = buffer.lineCount();
 
-        for (String line : lines) {
+        // Only lay out the lines that fit on the canvas, so large documents do not cost a full pass per frame
+        for (int lineIdx = 0; lineIdx < lineCount && y - FONT_SIZE < getHeight(); lineIdx++) {
+            String line = buffer.line(lineIdx);
+            int rowStart = buffer.lineStartOffset(lineIdx);
             String[] words = line.split("(?<=\\s)");
             StringBuilder currentLine = new StringBuilder();
             double x = 0;
@@ -215,9 +234,10 @@ public class CustomTextArea extends Canvas {
                 // check if appending at the moment is going to result in a wordwrap
                 // update the cursor positions
                 if (x + wordWidth > getWidth()) {
-                    wrappedLines.add(new LineInfo(0, y, currentLine.toString()));
+                    wrappedLines.add(new LineInfo(0, y, currentLine.toString(), rowStart));
                     gc.fillText(currentLine.toString(), 0, y);
                     y += FONT_SIZE + 5;
+                    rowStart += currentLine.length();
                     currentLine = new StringBuilder(word);
                     x = wordWidth;
 
@@ -227,7 +247,7 @@ public class CustomTextArea extends Canvas {
                 }
             }
 
-            wrappedLines.add(new LineInfo(0, y, currentLine.toString()));
+            wrappedLines.add(new LineInfo(0, y, currentLine.toString(), rowStart));
             gc.fillText(currentLine.toString(), 0, y);
             y += FONT_SIZE + 5;
         }
@@ -254,7 +274,7 @@ public class CustomTextArea extends Canvas {
     // Moves the X position of the cursor to the right
     private void updateCursorIncrementX(double width) {
         if (cursorX + width > getWidth()) {
-            String lastChar = rope.peakLastCharsBeforeCursor(calculateIndexPosition());
+            String lastChar = wordBeforeCursor(calculateIndexPosition());
             cursorX = getTextWidth(lastChar);
             updateCursorIncrementY();
         } else {
@@ -262,6 +282,17 @@ public class CustomTextArea extends Canvas {
         }
     }
 
+    // Returns the word the cursor is in, up to and including the character at the cursor
+    private String wordBeforeCursor(int cursor) {
+        int end = Math.min(cursor + 1, buffer.length());
+        int start = end;
+        while (start > 0 && buffer.charAt(start - 1) != ' ' && buffer.charAt(start - 1) != '\n') {
+            start--;
+        }
+
+        return buffer.getText(start, end);
+    }
+
     // Moves the Y position of the cursor down one step
     private void updateCursorIncrementY() {
         cursorY += FONT_SIZE + 5;
@@ -300,31 +331,76 @@ public class CustomTextArea extends Canvas {
         return (int) (cursorX / getTextWidth("A"));
     }
 
-    // Returns the rope size
+    // Returns the offset in a row of the given column, counting one column per grapheme cluster
+    private static int columnToOffset(String row, int column) {
+        int offset = 0;
+        for (int i = 0; i < column && offset < row.length(); i++) {
+            offset = Graphemes.next(row, offset);
+        }
+        return offset;
+    }
+
+    // Returns the buffer size
     public int getStringSize() {
-        return rope.getStringSize();
+        return buffer.length();
+    }
+
+    /**
+     * Moves the cursor back to the start and redraws, after the whole buffer was replaced (e.g. a file was opened).
+     */
+    public void documentReplaced() {
+        commandManager.clearHistory();
+        cursorX = 0;
+        cursorY = 0;
+        renderContent();
+        notifyTextChanged();
     }
 
     private void notifyTextChanged() {
         if (textChangeListener != null) {
-            textChangeListener.onTextChanged(rope.getRopeData());
+            textChangeListener.onTextChanged(buffer);
         }
     }
 
     /**
-     * Adjusts the cursor position after a command (undo/redo).
+     * Adjusts the cursor position after a command (undo/redo). Merged commands can cover many characters,
+     * so the cursor is placed at the offset where the edit ends rather than moved by a fixed step.
      *
      * @param command The command that was undone or redone.
+     * @param undone Whether the command was undone rather than redone.
      */
-    private void updateCursorAfterUndoRedo(Command command) {
+    private void updateCursorAfterUndoRedo(Command command, boolean undone) {
+        int offset = caretAfter(command, undone);
+        if (offset >= 0) {
+            moveCursorTo(offset);
+        }
+    }
+
+    // Returns where the caret belongs after a command was undone or redone, or -1 if it is unknown
+    private static int caretAfter(Command command, boolean undone) {
         if (command instanceof DeleteCommand deleteCommand) {
-            String deletedText = deleteCommand.getDeletedText();
-            updateCursorIncrementX(getTextWidth(deletedText));
+            return undone ? deleteCommand.getStartPos() + deleteCommand.getDeletedText().length() : deleteCommand.getStartPos();
         } else if (command instanceof InsertCommand insertCommand) {
-            String insertedText = insertCommand.getInsertedText();
-            updateCursorDecrementX(getTextWidth(insertedText));
+            return undone ? insertCommand.getCursorPosition() : insertCommand.getCursorPosition() + insertCommand.getInsertedText().length();
+        } else if (command instanceof CompoundCommand compoundCommand && !compoundCommand.isEmpty()) {
+            // Undo ends with the first command of the step, redo with the last one
+            List<Command> commands = compoundCommand.getCommands();
+            return caretAfter(undone ? commands.get(0) : commands.get(commands.size() - 1), undone);
         }
+        return -1;
+    }
 
+    // Places the cursor at a buffer offset, on the visible row that contains it
+    private void moveCursorTo(int offset) {
+        for (int i = wrappedLines.size() - 1; i >= 0; i--) {
+            LineInfo line = wrappedLines.get(i);
+            if (line.startOffset <= offset) {
+                int column = Math.min(offset - line.startOffset, line.content.length());
+                cursorX = getTextWidth(line.content.substring(0, column));
+                cursorY = line.y - FONT_SIZE;
+                return;
+            }
+        }
     }
 
     private void updateCursorPosition(double clickX, double clickY) {
@@ -1,6 +1,7 @@
 package com.texteditor.ui;
 
-import com.texteditor.editor.Rope;
+import com.texteditor.editor.TextBuffer;
+import com.texteditor.editor.commands.EditJournal;
 import com.texteditor.editor.io.FileIO;
 import com.texteditor.editor.io.FileType;
 
@@ -16,22 +17,29 @@ import javafx.scene.layout.BackgroundFill;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.DirectoryChooser;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.geometry.Insets;
 
 import java.io.File;
+import java.nio.file.Path;
 
 public class Page {
     private static final int WINDOW_WIDTH = 800;
     private static final int WINDOW_HEIGHT = 600;
     private final Label characterCount;
 
-    Rope rope;
+    TextBuffer buffer;
 
     TextField documentTitle;
 
-    public Page(Rope rope, Stage primaryStage) {
-        this.rope = rope;
+    CustomTextArea textArea;
+
+    // Journal of the unsaved edits to the open document, or null while the document has no file
+    EditJournal journal;
+
+    public Page(TextBuffer buffer, Stage primaryStage) {
+        this.buffer = buffer;
         BorderPane root = new BorderPane();
 
         Image icon = new Image(getClass().getResource("/assets/icon.png").toExternalForm());
@@ -57,17 +65,18 @@ public class Page {
                         "-fx-background-color: transparent;" +
                         "-fx-padding: 0;"
         );
-        CustomTextArea textArea = new CustomTextArea(rope);
+        textArea = new CustomTextArea(buffer);
 
         BorderPane footer = new BorderPane();
         footer.setStyle("-fx-background-color: " + Constants.getCssColor(Constants.FOOTER_COLOR) + "; -fx-padding: 10px;");
 
-        characterCount = new Label(textArea.getStringSize() + " chars");
+        characterCount = new Label(documentStats(buffer));
         characterCount.setStyle("-fx-font-family: 'Geist'; -fx-font-size: 11px; -fx-text-fill: white;");
         footer.setRight(characterCount);
 
-        textArea.setTextChangeListener(newText ->
-                characterCount.setText(newText.length() + " chars")
+        // The buffer keeps these counts up to date as it is edited, so refreshing them does not scan the document
+        textArea.setTextChangeListener(text ->
+                characterCount.setText(documentStats(text))
         );
 
         body.getChildren().addAll(titleLabel, documentTitle, textArea);
@@ -79,11 +88,16 @@ public class Page {
         primaryStage.setScene(scene);
         primaryStage.setResizable(false);
         primaryStage.setTitle("Text Editor");
+        primaryStage.setOnCloseRequest(event -> closeJournal());
         primaryStage.show();
 
         textArea.requestFocus();
     }
 
+    private static String documentStats(TextBuffer text) {
+        return text.length() + " chars   " + text.wordCount() + " words   " + text.lineCount() + " lines";
+    }
+
     private MenuBar createMenuBar(Stage primaryStage) {
         MenuBar menuBar = new MenuBar();
         menuBar.setStyle("-fx-background-color: " + Constants.getCssColor(Constants.BACKGROUND_COLOR) + " !important ;");
@@ -91,10 +105,13 @@ public class Page {
         Menu fileMenu = new Menu("File");
         fileMenu.setStyle("-fx-font-family: 'Arial'; -fx-font-size: 12px; -fx-text-fill: white;");
 
+        MenuItem openItem = new MenuItem("Open");
+        openItem.setOnAction(event -> showFileChooser(primaryStage));
+
         MenuItem saveItem = new MenuItem("Save");
         saveItem.setOnAction(event -> showDirectoryChooser(primaryStage));
 
-        fileMenu.getItems().add(saveItem);
+        fileMenu.getItems().addAll(openItem, saveItem);
 
         menuBar.getMenus().add(fileMenu);
 
@@ -109,7 +126,47 @@ public class Page {
         File selectedDirectory = directoryChooser.showDialog(stage);
 
         if (selectedDirectory != null) {
-            FileIO.saveFile(selectedDirectory.getAbsolutePath(), rope, FileType.TXT, documentTitle.getText());
+            FileIO.saveFile(selectedDirectory.getAbsolutePath(), buffer, FileType.TXT, documentTitle.getText());
+
+            // The file now holds every edit, so the journal starts over from it
+            Path saved = selectedDirectory.toPath().resolve(documentTitle.getText() + ".txt");
+            if (journal != null && journal.getDocument().equals(saved)) {
+                journal.documentSaved();
+            } else {
+                closeJournal();
+                journal = EditJournal.create(saved, buffer);
+                textArea.commandManager.setCommandListener(journal);
+            }
+        }
+    }
+
+    private void showFileChooser(Stage stage) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Open File");
+        fileChooser.setInitialDirectory(new File(System.getProperty("user.home")));
+
+        File selectedFile = fileChooser.showOpenDialog(stage);
+
+        if (selectedFile != null) {
+            // The file is mapped rather than read, so opening is fast even for very large files
+            closeJournal();
+            buffer.restore(FileIO.openFile(selectedFile.toPath()));
+            // Edits that were not saved before the editor was closed or crashed are replayed from the journal
+            journal = EditJournal.open(selectedFile.toPath(), buffer);
+            textArea.commandManager.setCommandListener(journal);
+
+            String name = selectedFile.getName();
+            int extension = name.lastIndexOf('.');
+            documentTitle.setText(extension > 0 ? name.substring(0, extension) : name);
+            textArea.documentReplaced();
+        }
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            textArea.commandManager.setCommandListener(null);
+            journal.close();
+            journal = null;
         }
     }
 }
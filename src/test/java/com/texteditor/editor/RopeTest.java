@@ -0,0 +1,148 @@
+package com.texteditor.editor;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Types and backspaces through the gap buffer with tiny leaves, so every edit lands next to a leaf seam, and checks
+ * the counts the Rope derives from its caches against the same counts taken from a String.
+ */
+class RopeTest {
+    private static final String HIGH = "\uD83D";
+    private static final String LOW = "\uDE00";
+
+    @ParameterizedTest
+    @ValueSource(ints = {4, 16})
+    void typesAndBackspacesAcrossAWord(int maxLeafSize) {
+        Rope rope = rope("hello world\nsecond line\n", maxLeafSize);
+        StringBuilder model = new StringBuilder(rope.toString());
+
+        // Split "hello" in two, then join it back, one keystroke at a time
+        type(rope, model, 3, " ");
+        type(rope, model, 4, "X");
+        backspace(rope, model, 4);
+        backspace(rope, model, 3);
+        // Join "world" to the next line and split it again
+        backspace(rope, model, 12);
+        type(rope, model, 11, "\r\n");
+        type(rope, model, 0, "\n");
+        backspace(rope, model, 1);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {4, 16})
+    void typesAndBackspacesASurrogatePairOneHalfAtATime(int maxLeafSize) {
+        Rope rope = rope("ab cd ef gh", maxLeafSize);
+        StringBuilder model = new StringBuilder(rope.toString());
+
+        // Complete a pair across the gap, from either side
+        type(rope, model, 4, HIGH);
+        type(rope, model, 5, LOW);
+        type(rope, model, 2, LOW);
+        type(rope, model, 2, HIGH);
+        // Break them up again, half by half
+        backspace(rope, model, 6);
+        backspace(rope, model, 3);
+        backspace(rope, model, 4);
+        backspace(rope, model, 2);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {4, 16})
+    void typesAtLeafSeams(int maxLeafSize) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            text.append(i % 3 == 0 ? HIGH + LOW : "w").append(i % 5 == 0 ? "\n" : " ");
+        }
+        Rope rope = rope(text.toString(), maxLeafSize);
+        StringBuilder model = new StringBuilder(rope.toString());
+
+        for (int seam = maxLeafSize; seam < model.length(); seam += maxLeafSize) {
+            type(rope, model, seam, "x");
+            type(rope, model, seam + 1, " ");
+            backspace(rope, model, seam + 2);
+            backspace(rope, model, seam + 1);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {4, 16})
+    void randomTypingMatchesString(int maxLeafSize) {
+        String[] keys = {"a", "b", " ", "\n", "\r\n", HIGH, LOW, HIGH + LOW, "\t"};
+        Random random = new Random(maxLeafSize);
+        Rope rope = rope("the quick brown fox " + HIGH + LOW + " jumps\nover the lazy dog", maxLeafSize);
+        StringBuilder model = new StringBuilder(rope.toString());
+        int caret = model.length() / 2;
+
+        for (int i = 0; i < 3000; i++) {
+            int action = random.nextInt(10);
+            if (action < 2) {
+                // The caret moves, so the next keystroke opens a gap somewhere else
+                caret = random.nextInt(model.length() + 1);
+            } else if (action < 7) {
+                String key = keys[random.nextInt(keys.length)];
+                type(rope, model, caret, key);
+                caret += key.length();
+            } else if (action < 9 && caret > 0) {
+                backspace(rope, model, caret);
+                caret--;
+            } else if (action == 9) {
+                // A snapshot freezes the gap, the next keystroke opens a new one
+                assertEquals(model.toString(), rope.snapshot().toString());
+            }
+        }
+    }
+
+    private static Rope rope(String text, int maxLeafSize) {
+        return new Rope(text, new LeafPolicy(maxLeafSize / 4, maxLeafSize));
+    }
+
+    private static void type(Rope rope, StringBuilder model, int offset, String key) {
+        rope.insert(offset, key);
+        model.insert(offset, key);
+        assertMatches(model.toString(), rope);
+    }
+
+    private static void backspace(Rope rope, StringBuilder model, int caret) {
+        rope.backspace(caret);
+        model.deleteCharAt(caret - 1);
+        assertMatches(model.toString(), rope);
+    }
+
+    private static void assertMatches(String expected, Rope rope) {
+        assertEquals(expected.length(), rope.length());
+        assertEquals(wordCount(expected), rope.wordCount(), "wordCount of " + expected);
+        assertEquals(expected.codePointCount(0, expected.length()), rope.codePointCount(), "codePointCount of " + expected);
+        // String encodes an unpaired surrogate as '?', as the Rope counts it
+        assertEquals(expected.getBytes(StandardCharsets.UTF_8).length, rope.utf8Length(), "utf8Length of " + expected);
+
+        int line = 0;
+        for (int offset = 0; offset <= expected.length(); offset++) {
+            assertEquals(line, rope.lineOf(offset), "lineOf " + offset + " in " + expected);
+            if (offset < expected.length() && expected.charAt(offset) == '\n') {
+                line++;
+                assertEquals(offset + 1, rope.lineStartOffset(line), "lineStartOffset " + line + " in " + expected);
+            }
+        }
+        assertEquals(line + 1, rope.lineCount());
+        assertEquals(0, rope.lineStartOffset(0));
+    }
+
+    private static int wordCount(String text) {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            boolean wordChar = !Character.isWhitespace(text.charAt(i));
+            if (wordChar && !inWord) {
+                words++;
+            }
+            inWord = wordChar;
+        }
+        return words;
+    }
+}
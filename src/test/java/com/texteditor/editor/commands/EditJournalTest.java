@@ -0,0 +1,146 @@
+package com.texteditor.editor.commands;
+
+import com.texteditor.editor.Rope;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EditJournalTest {
+    private static final String SAVED = "The quick brown fox\njumps over the lazy dog\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysEditsUndosRedosAndJumps() throws IOException {
+        Path document = savedDocument();
+        Rope buffer = new Rope(SAVED);
+        CommandManager manager = new CommandManager(buffer, 0);
+
+        try (EditJournal journal = EditJournal.open(document, buffer)) {
+            manager.setCommandListener(journal);
+
+            manager.executeCommand(new InsertCommand(buffer, "very ", 4));
+            UndoTree.Node inserted = manager.getUndoTree().getCurrent();
+            manager.executeCommand(new DeleteCommand(buffer, 0, 4));
+            manager.executeCommand(new ReplaceAllCommand(buffer, new int[]{1, 20}, 1, "E"));
+            manager.undo();
+            manager.undo();
+            // A new branch next to the delete, then back to the first branch by a jump
+            manager.executeCommand(new MultiEditCommand(buffer, new int[]{0, 10, 30}, 1, "#"));
+            manager.jumpTo(inserted);
+            manager.redo();
+            manager.beginCompound();
+            manager.executeCommand(new InsertCommand(buffer, "A", 0));
+            manager.executeCommand(new DeleteCommand(buffer, 5, 9));
+            manager.endCompound();
+            manager.undo();
+            manager.redo();
+        }
+
+        Rope recovered = new Rope(SAVED);
+        try (EditJournal journal = EditJournal.open(document, recovered)) {
+            assertEquals(buffer.toString(), recovered.toString());
+            assertTrue(journal.getReplayedCount() > 0);
+        }
+    }
+
+    @Test
+    void dropsTornLastRecord() throws IOException {
+        Path document = savedDocument();
+        Rope buffer = new Rope(SAVED);
+        CommandManager manager = new CommandManager(buffer, 0);
+        String beforeLast;
+
+        try (EditJournal journal = EditJournal.open(document, buffer)) {
+            manager.setCommandListener(journal);
+            manager.executeCommand(new InsertCommand(buffer, "first ", 0));
+            manager.executeCommand(new DeleteCommand(buffer, 10, 15));
+            beforeLast = buffer.toString();
+            manager.executeCommand(new InsertCommand(buffer, "last", buffer.length()));
+        }
+
+        // Cut the last record in half, as a crash in the middle of a write would
+        Path file = EditJournal.journalOf(document);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        Rope recovered = new Rope(SAVED);
+        try (EditJournal journal = EditJournal.open(document, recovered)) {
+            assertEquals(beforeLast, recovered.toString());
+            assertEquals(2, journal.getReplayedCount());
+
+            // New records follow the last good one
+            CommandManager recoveredManager = new CommandManager(recovered, 0);
+            recoveredManager.setCommandListener(journal);
+            recoveredManager.executeCommand(new InsertCommand(recovered, "again", 0));
+        }
+
+        Rope reopened = new Rope(SAVED);
+        try (EditJournal journal = EditJournal.open(document, reopened)) {
+            assertEquals("again" + beforeLast, reopened.toString());
+            assertEquals(3, journal.getReplayedCount());
+        }
+    }
+
+    @Test
+    void ignoresJournalOfAnotherVersionOfTheDocument() throws IOException {
+        Path document = savedDocument();
+        Rope buffer = new Rope(SAVED);
+        CommandManager manager = new CommandManager(buffer, 0);
+
+        try (EditJournal journal = EditJournal.open(document, buffer)) {
+            manager.setCommandListener(journal);
+            manager.executeCommand(new InsertCommand(buffer, "unsaved ", 0));
+        }
+
+        // Same size, other modification time: the journal no longer applies
+        Files.setLastModifiedTime(document, FileTime.fromMillis(Files.getLastModifiedTime(document).toMillis() - 60_000));
+
+        Rope reopened = new Rope(SAVED);
+        try (EditJournal journal = EditJournal.open(document, reopened)) {
+            assertEquals(SAVED, reopened.toString());
+            assertEquals(0, journal.getReplayedCount());
+        }
+    }
+
+    @Test
+    void documentSavedEmptiesTheJournal() throws IOException {
+        Path document = savedDocument();
+        Rope buffer = new Rope(SAVED);
+        CommandManager manager = new CommandManager(buffer, 0);
+
+        try (EditJournal journal = EditJournal.open(document, buffer)) {
+            manager.setCommandListener(journal);
+            manager.executeCommand(new InsertCommand(buffer, "saved ", 0));
+            journal.flush();
+            assertTrue(Files.size(journal.getFile()) > 20);
+
+            Files.writeString(document, buffer.toString());
+            journal.documentSaved();
+            assertEquals(20, Files.size(journal.getFile()));
+        }
+
+        Rope reopened = new Rope(Files.readString(document));
+        try (EditJournal journal = EditJournal.open(document, reopened)) {
+            assertEquals("saved " + SAVED, reopened.toString());
+            assertEquals(0, journal.getReplayedCount());
+        }
+        assertFalse(Files.size(EditJournal.journalOf(document)) > 20);
+    }
+
+    private Path savedDocument() throws IOException {
+        return Files.writeString(directory.resolve("document.txt"), SAVED);
+    }
+}
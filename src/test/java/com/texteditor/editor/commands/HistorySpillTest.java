@@ -0,0 +1,175 @@
+package com.texteditor.editor.commands;
+
+import com.texteditor.editor.Rope;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistorySpillTest {
+    private static final String TEXT = "alpha beta gamma\ndelta 😀 epsilon\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void insertRoundTrip() {
+        Rope buffer = new Rope(TEXT);
+        InsertCommand read = roundTrip(new InsertCommand(buffer, "inserted é", 6));
+
+        assertEquals("inserted é", read.getInsertedText());
+        assertEquals(6, read.getCursorPosition());
+        assertUndoRedo(buffer, read);
+    }
+
+    @Test
+    void deleteRoundTrip() {
+        Rope buffer = new Rope(TEXT);
+        // Ends between the two halves of the emoji, so the spill has to keep a lone surrogate
+        DeleteCommand read = roundTrip(new DeleteCommand(buffer, 10, 24));
+
+        assertEquals(10, read.getStartPos());
+        assertEquals(TEXT.substring(10, 24), read.getDeletedText());
+        assertUndoRedo(buffer, read);
+    }
+
+    @Test
+    void replaceAllRoundTrip() {
+        Rope buffer = new Rope(TEXT);
+        ReplaceAllCommand read = roundTrip(new ReplaceAllCommand(buffer, new int[]{0, 6, 11}, 4, "X"));
+
+        assertEquals(3, read.getMatchCount());
+        assertArrayEquals(new int[]{0, 6, 11}, read.getMatchOffsets());
+        assertArrayEquals(new String[]{"alph", "beta", "gamm"}, read.getReplacedTexts());
+        assertUndoRedo(buffer, read);
+    }
+
+    @Test
+    void multiEditRoundTrip() {
+        Rope buffer = new Rope(TEXT);
+        MultiEditCommand read = roundTrip(new MultiEditCommand(buffer, new int[]{0, 5, 17, 30},
+                new int[]{0, 1, 2, 0}, new String[]{"[", "", "long text", "]"}));
+
+        assertEquals(4, read.getEditCount());
+        assertArrayEquals(new String[]{"", " ", "de", ""}, read.getDeletedTexts());
+        assertUndoRedo(buffer, read);
+    }
+
+    @Test
+    void compoundRoundTrip() {
+        Rope buffer = new Rope(TEXT);
+        CommandManager manager = new CommandManager(0);
+        manager.beginCompound();
+        manager.executeCommand(new InsertCommand(buffer, "start ", 0));
+        manager.executeCommand(new DeleteCommand(buffer, 10, 12));
+        manager.executeCommand(new ReplaceAllCommand(buffer, new int[]{0}, 5, "begin"));
+        manager.endCompound();
+        Command compound = manager.undo();
+        manager.redo();
+
+        CompoundCommand read = roundTrip(compound);
+
+        assertEquals(3, read.getCommands().size());
+        assertEquals(InsertCommand.class, read.getCommands().get(0).getClass());
+        assertEquals(DeleteCommand.class, read.getCommands().get(1).getClass());
+        assertEquals(ReplaceAllCommand.class, read.getCommands().get(2).getClass());
+        assertUndoRedo(buffer, read);
+    }
+
+    @Test
+    void batchesComeBackInReverseOrder() {
+        Rope buffer = new Rope(TEXT);
+        HistorySpill spill = new HistorySpill(directory, "undo-");
+        Command first = executed(new InsertCommand(buffer, "1", 0));
+        Command second = executed(new InsertCommand(buffer, "2", 0));
+        Command third = executed(new DeleteCommand(buffer, 0, 3));
+
+        spill.push(List.of(first, second));
+        spill.push(List.of(third));
+        assertEquals(3, spill.getCommandCount());
+
+        List<Command> last = spill.pop();
+        assertEquals(1, last.size());
+        assertEquals("21a", ((DeleteCommand) last.get(0)).getDeletedText());
+        List<Command> earlier = spill.pop();
+        assertEquals("1", ((InsertCommand) earlier.get(0)).getInsertedText());
+        assertEquals("2", ((InsertCommand) earlier.get(1)).getInsertedText());
+        assertTrue(spill.isEmpty());
+        assertEquals(0, spill.getBytesOnDisk());
+
+        spill.close();
+        assertEquals(0, fileCount());
+    }
+
+    @Test
+    void managerUndoesAndRedoesThroughTheSpillFile() {
+        Rope buffer = new Rope(TEXT);
+        CommandManager manager = new CommandManager(0, 4096, directory);
+        for (int i = 0; i < 200; i++) {
+            Command command = i % 3 == 2
+                    ? new DeleteCommand(buffer, i % buffer.length(), i % buffer.length() + 1)
+                    : new InsertCommand(buffer, "edit " + i, i % buffer.length());
+            manager.executeCommand(command);
+        }
+        String edited = buffer.toString();
+        assertTrue(manager.getSpilledCount() > 0);
+
+        while (manager.undo() != null) {
+        }
+        assertEquals(TEXT, buffer.toString());
+        while (manager.redo() != null) {
+        }
+        assertEquals(edited, buffer.toString());
+        assertTrue(manager.getMemoryBytes() <= manager.getMemoryBudgetBytes());
+
+        manager.close();
+        assertEquals(0, fileCount());
+    }
+
+    // Spills an executed command, reads it back, and checks that it comes back as the same kind of command
+    @SuppressWarnings("unchecked")
+    private <C extends Command> C roundTrip(Command command) {
+        if (!(command instanceof CompoundCommand)) {
+            executed(command);
+        }
+        HistorySpill spill = new HistorySpill(directory, "undo-");
+        spill.push(List.of(command));
+        List<Command> read = spill.pop();
+        spill.close();
+
+        assertEquals(1, read.size());
+        assertEquals(command.getClass(), read.get(0).getClass());
+        assertEquals(command.estimatedBytes(), read.get(0).estimatedBytes());
+        return (C) read.get(0);
+    }
+
+    private static Command executed(Command command) {
+        command.execute();
+        return command;
+    }
+
+    // The command read back must take the buffer back to the original text and forward again
+    private static void assertUndoRedo(Rope buffer, Command read) {
+        String edited = buffer.toString();
+        read.undo();
+        assertEquals(TEXT, buffer.toString());
+        read.execute();
+        assertEquals(edited, buffer.toString());
+    }
+
+    private long fileCount() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
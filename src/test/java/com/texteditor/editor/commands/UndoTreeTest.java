@@ -0,0 +1,176 @@
+package com.texteditor.editor.commands;
+
+import com.texteditor.editor.Rope;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UndoTreeTest {
+    private static final String TEXT = "one two three\nfour five six\n";
+
+    @Test
+    void jumpToTrimmedVersionRebuildsItsText() {
+        Rope buffer = new Rope(TEXT);
+        CommandManager manager = new CommandManager(buffer, 0);
+        UndoTree tree = manager.getUndoTree();
+        Map<UndoTree.Node, String> texts = new IdentityHashMap<>();
+        texts.put(tree.getRoot(), TEXT);
+
+        // A main line of edits, and a branch off its middle
+        for (int i = 0; i < 10; i++) {
+            manager.executeCommand(new InsertCommand(buffer, "[" + i + "]", i * 2));
+            texts.put(tree.getCurrent(), buffer.toString());
+        }
+        for (int i = 0; i < 5; i++) {
+            manager.undo();
+        }
+        manager.executeCommand(new DeleteCommand(buffer, 0, 6));
+        texts.put(tree.getCurrent(), buffer.toString());
+        manager.executeCommand(new ReplaceAllCommand(buffer, new int[]{3, 10}, 2, "__"));
+        texts.put(tree.getCurrent(), buffer.toString());
+
+        // Drops every snapshot, the current one included, but keeps every version
+        long withoutSnapshots = tree.getMemoryBytes() - tree.getSnapshotBytes();
+        tree.trim(withoutSnapshots);
+        assertEquals(0, tree.getSnapshotBytes());
+        assertEquals(13, tree.getNodeCount());
+
+        for (UndoTree.Node node : texts.keySet()) {
+            assertFalse(node.hasSnapshot());
+        }
+        List<UndoTree.Node> order = new ArrayList<>(texts.keySet());
+        Collections.shuffle(order, new Random(1));
+        for (UndoTree.Node node : order) {
+            manager.jumpTo(node);
+            assertEquals(texts.get(node), buffer.toString());
+            assertTrue(node.hasSnapshot());
+        }
+    }
+
+    @Test
+    void staysWithinBudgetAndPrunesOldVersions() {
+        long budget = 16 * 1024;
+        Rope buffer = new Rope(TEXT);
+        CommandManager manager = new CommandManager(buffer, 0, budget);
+        UndoTree tree = manager.getUndoTree();
+        Map<UndoTree.Node, String> texts = new IdentityHashMap<>();
+        texts.put(tree.getRoot(), TEXT);
+        Random random = new Random(7);
+
+        for (int i = 0; i < 2000; i++) {
+            int action = random.nextInt(10);
+            if (action < 6) {
+                int at = random.nextInt(buffer.length() + 1);
+                manager.executeCommand(action < 4 || at == buffer.length()
+                        ? new InsertCommand(buffer, "edit" + i, at)
+                        : new DeleteCommand(buffer, at, Math.min(buffer.length(), at + 3)));
+                texts.put(tree.getCurrent(), buffer.toString());
+            } else if (action < 8) {
+                manager.undo();
+            } else {
+                manager.redo();
+            }
+
+            assertTrue(manager.getMemoryBytes() <= budget);
+            assertEquals(texts.get(tree.getCurrent()), buffer.toString());
+        }
+
+        List<UndoTree.Node> pruned = new ArrayList<>();
+        List<UndoTree.Node> kept = new ArrayList<>();
+        for (UndoTree.Node node : texts.keySet()) {
+            (node.isPruned() ? pruned : kept).add(node);
+        }
+        assertFalse(pruned.isEmpty());
+        assertEquals(tree.getNodeCount(), kept.size());
+
+        UndoTree.Node gone = pruned.get(0);
+        assertThrows(IllegalArgumentException.class, () -> manager.jumpTo(gone));
+
+        for (UndoTree.Node node : kept) {
+            manager.jumpTo(node);
+            assertEquals(texts.get(node), buffer.toString());
+            assertTrue(manager.getMemoryBytes() <= budget);
+        }
+
+        // The oldest history is gone: undo stops at the new root, which has no command
+        while (manager.undo() != null) {
+        }
+        assertSame(tree.getRoot(), tree.getCurrent());
+        assertNull(tree.getRoot().getCommand());
+        assertEquals(0, tree.getRoot().getDepth());
+        assertEquals(texts.get(tree.getRoot()), buffer.toString());
+    }
+
+    @Test
+    void jumpToNodeOfAnotherTreeFails() {
+        Rope buffer = new Rope(TEXT);
+        CommandManager manager = new CommandManager(buffer, 0);
+        CommandManager other = new CommandManager(new Rope(TEXT), 0);
+
+        assertThrows(IllegalArgumentException.class, () -> manager.jumpTo(other.getUndoTree().getRoot()));
+    }
+
+    @Test
+    void versionAtFindsTheVersionCurrentAtATime() throws InterruptedException {
+        long beforeTree = System.currentTimeMillis() - 1;
+        Rope buffer = new Rope(TEXT);
+        CommandManager manager = new CommandManager(buffer, 0);
+        UndoTree tree = manager.getUndoTree();
+
+        List<UndoTree.Node> versions = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            // Separate the visits, so each one owns at least one millisecond
+            Thread.sleep(5);
+            manager.executeCommand(new InsertCommand(buffer, "v" + i, 0));
+            versions.add(tree.getCurrent());
+            times.add(System.currentTimeMillis());
+        }
+        Thread.sleep(5);
+        manager.undo();
+
+        assertSame(tree.getRoot(), tree.versionAt(Long.MIN_VALUE));
+        assertSame(tree.getRoot(), tree.versionAt(beforeTree));
+        for (int i = 0; i < versions.size(); i++) {
+            assertSame(versions.get(i), tree.versionAt(times.get(i)));
+        }
+        // The latest visit is the undo back to the second version
+        assertSame(versions.get(1), tree.versionAt(Long.MAX_VALUE));
+
+        assertSame(versions.get(0), manager.jumpToTime(times.get(0)));
+        assertEquals("v0" + TEXT, buffer.toString());
+    }
+
+    @Test
+    void versionAtBeforeTheTrimmedTimelineIsTheRoot() throws InterruptedException {
+        Rope buffer = new Rope(TEXT);
+        CommandManager manager = new CommandManager(buffer, 0);
+        UndoTree tree = manager.getUndoTree();
+
+        manager.executeCommand(new InsertCommand(buffer, "a", 0));
+        long firstEdit = System.currentTimeMillis();
+        Thread.sleep(5);
+        for (int i = 0; i < 100; i++) {
+            manager.undo();
+            manager.redo();
+        }
+
+        // Drop the snapshots and all but the latest visit, keeping both versions
+        tree.trim(tree.getMemoryBytes() - tree.getSnapshotBytes() - 200 * 32);
+        assertEquals(2, tree.getNodeCount());
+        assertSame(tree.getRoot(), tree.versionAt(firstEdit));
+        assertSame(tree.getCurrent(), tree.versionAt(Long.MAX_VALUE));
+    }
+}
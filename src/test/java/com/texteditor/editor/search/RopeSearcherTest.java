@@ -0,0 +1,103 @@
+package com.texteditor.editor.search;
+
+import com.texteditor.editor.LeafPolicy;
+import com.texteditor.editor.PieceTable;
+import com.texteditor.editor.Rope;
+import com.texteditor.editor.TextBuffer;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the same searches over a Rope and a PieceTable built by many small edits, so matches fall across leaf,
+ * piece and block seams, and checks them against a plain scan of the String.
+ */
+class RopeSearcherTest {
+    private static final String[] WORDS = {"needle", "Needle", "needles", "_needle", "hay", "stack", "ne", "edle"};
+    private static final String[] PATTERNS = {"needle", "NEEDLE", "ne", "e", "needle needle", "hay stack hay"};
+
+    @ParameterizedTest
+    @ValueSource(strings = {"rope", "piecetable"})
+    void findsWhatAStringScanFinds(String kind) {
+        String text = text(20_000);
+        TextBuffer buffer = buffer(kind, text);
+
+        for (String pattern : PATTERNS) {
+            for (SearchOptions options : new SearchOptions[]{SearchOptions.DEFAULT, new SearchOptions(true, false),
+                    new SearchOptions(false, true), new SearchOptions(true, true)}) {
+                RopeSearcher searcher = new RopeSearcher(pattern, options);
+                int[] expected = scan(text, pattern, options, 0);
+                String description = pattern + " in a " + kind + ", ignoreCase " + options.isIgnoreCase()
+                        + ", wholeWord " + options.isWholeWord();
+
+                assertArrayEquals(expected, searcher.findAll(buffer).toArray(), description);
+                assertArrayEquals(scan(text, pattern, options, 7777), searcher.findAll(buffer, 7777).toArray(), description);
+                assertEquals(expected.length == 0 ? -1 : expected[0], searcher.find(buffer, 0), description);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"rope", "piecetable"})
+    void findAllReadsASnapshot(String kind) {
+        TextBuffer buffer = buffer(kind, text(2_000));
+        RopeSearcher searcher = new RopeSearcher("needle");
+        int[] before = searcher.findAll(buffer).toArray();
+
+        MatchIterator matches = searcher.findAll(buffer);
+        buffer.insert(0, "needle ");
+        buffer.delete(buffer.length() / 2, buffer.length());
+
+        assertArrayEquals(before, matches.toArray());
+    }
+
+    // Random words, built as a chain of inserts so a PieceTable ends up with many short pieces
+    private static String text(int length) {
+        Random random = new Random(length);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(8) == 0 ? '\n' : ' ');
+        }
+        return text.toString();
+    }
+
+    private static TextBuffer buffer(String kind, String text) {
+        TextBuffer buffer = kind.equals("rope") ? new Rope("", new LeafPolicy(4, 16)) : new PieceTable("");
+        Random random = new Random(1);
+        int at = 0;
+        while (at < text.length()) {
+            int end = Math.min(text.length(), at + 1 + random.nextInt(12));
+            buffer.insert(at, text.substring(at, end));
+            at = end;
+        }
+        assertEquals(text, buffer.toString());
+        return buffer;
+    }
+
+    private static int[] scan(String text, String pattern, SearchOptions options, int fromIndex) {
+        int[] matches = new int[0];
+        int m = pattern.length();
+        for (int i = fromIndex; i + m <= text.length(); i++) {
+            if (!text.regionMatches(options.isIgnoreCase(), i, pattern, 0, m)) {
+                continue;
+            }
+            if (options.isWholeWord() && (i > 0 && isWordChar(text.charAt(i - 1))
+                    || i + m < text.length() && isWordChar(text.charAt(i + m)))) {
+                continue;
+            }
+            matches = Arrays.copyOf(matches, matches.length + 1);
+            matches[matches.length - 1] = i;
+            i += m - 1;
+        }
+        return matches;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}